@@ -1,24 +1,27 @@
 package better.jsonrpc.client;
 
 import better.jsonrpc.core.JsonRpcConnectedTransport;
+import better.jsonrpc.core.JsonRpcMessage;
 import better.jsonrpc.core.JsonRpcTransport;
 import better.jsonrpc.exceptions.DefaultExceptionResolver;
 import better.jsonrpc.exceptions.ExceptionResolver;
+import better.jsonrpc.util.ExecutorUtil;
+import better.jsonrpc.util.HashedWheelTimer;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
-import java.util.Collection;
-import java.util.Enumeration;
-import java.util.Hashtable;
-import java.util.Map;
-import java.util.Vector;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A JSON-RPC client
@@ -37,6 +40,9 @@ public class JsonRpcClient {
     /** Default request timeout (msecs) */
     public static final long DEFAULT_REQUEST_TIMEOUT = 15 * 1000;
 
+    /** Default maximum size of coalesced batches */
+    public static final int DEFAULT_COALESCING_LIMIT = 64;
+
     /** Global logger for clients */
 	private static final Logger LOG = LoggerFactory.getLogger(JsonRpcClient.class);
 
@@ -44,18 +50,43 @@ public class JsonRpcClient {
 	private static final String JSON_RPC_VERSION = "2.0";
 
 
+    /** Timer shared by all clients unless configured otherwise */
+    private static HashedWheelTimer sDefaultTimer;
+
+    /** Executor shared by all clients unless configured otherwise */
+    private static Executor sDefaultExecutor;
+
     /** Request timeout for this client (msecs) */
     private long mRequestTimeout = DEFAULT_REQUEST_TIMEOUT;
 
+    /** Timer for request timeouts */
+    private HashedWheelTimer mTimer = getDefaultTimer();
+
+    /** Executor for work handed off by the timer */
+    private volatile Executor mExecutor = getDefaultExecutor();
+
+    /** Window for coalescing requests into batches (msecs, 0 to disable) */
+    private volatile long mCoalescingWindow = 0;
+
+    /** Maximum size of coalesced batches */
+    private volatile int mCoalescingLimit = DEFAULT_COALESCING_LIMIT;
+
+    /** Coalescers, one per connection */
+    private final ConcurrentHashMap<JsonRpcTransport, JsonRpcClientCoalescer> mCoalescers =
+            new ConcurrentHashMap<JsonRpcTransport, JsonRpcClientCoalescer>();
+
     /** Generator for request IDs */
-	private AtomicInteger mIdGenerator;
+	private AtomicLong mIdGenerator;
+
+    /** True if requests should carry numeric ids */
+    private boolean mNumericIds;
 
     /** Exception converter */
 	private ExceptionResolver mExceptionResolver = DefaultExceptionResolver.INSTANCE;
 
-    /** Table of outstanding requests */
-    private Hashtable<String, JsonRpcClientRequest> mOutstandingRequests =
-            new Hashtable<String, JsonRpcClientRequest>();
+    /** Tables of outstanding requests by id, one per connection */
+    private final ConcurrentHashMap<JsonRpcTransport, JsonRpcClientRequestTable> mOutstandingRequests =
+            new ConcurrentHashMap<JsonRpcTransport, JsonRpcClientRequestTable>();
 
     /** Listener for connection state changes */
     private JsonRpcConnectedTransport.Listener mConnectionListener =
@@ -74,7 +105,7 @@ public class JsonRpcClient {
 	 * Creates a client
 	 */
 	public JsonRpcClient() {
-		this.mIdGenerator = new AtomicInteger(0);
+		this.mIdGenerator = new AtomicLong(0);
 	}
 
     /**
@@ -92,6 +123,66 @@ public class JsonRpcClient {
         this.mExceptionResolver = mExceptionResolver;
     }
 
+    /**
+     * Returns the timer shared by all clients by default
+     *
+     * Ticks every 10 msecs, which bounds the accuracy of timeouts.
+     */
+    public static synchronized HashedWheelTimer getDefaultTimer() {
+        if(sDefaultTimer == null) {
+            sDefaultTimer = new HashedWheelTimer("jsonrpc-client-timeouts", 10, TimeUnit.MILLISECONDS, 512);
+        }
+        return sDefaultTimer;
+    }
+
+    /**
+     * Returns the timer used for request timeouts
+     */
+    public HashedWheelTimer getTimer() {
+        return mTimer;
+    }
+
+    /**
+     * Set the timer used for request timeouts
+     * @param timer
+     */
+    public void setTimer(HashedWheelTimer timer) {
+        this.mTimer = timer;
+    }
+
+    /**
+     * Returns the executor shared by all clients by default
+     *
+     * Starts a thread per task, see {@link ExecutorUtil#newPerCallExecutor()}.
+     */
+    public static synchronized Executor getDefaultExecutor() {
+        if(sDefaultExecutor == null) {
+            sDefaultExecutor = ExecutorUtil.newPerCallExecutor("jsonrpc-client");
+        }
+        return sDefaultExecutor;
+    }
+
+    /**
+     * Returns the executor for work handed off by the timer
+     */
+    public Executor getExecutor() {
+        return mExecutor;
+    }
+
+    /**
+     * Set the executor for work handed off by the timer
+     *
+     * Coalesced batches are sent and futures of timed out requests
+     * are completed on this executor. Sending may block and
+     * continuations of futures may take long, so it should be
+     * neither a pool for computations nor the timer thread.
+     *
+     * @param executor
+     */
+    public void setExecutor(Executor executor) {
+        this.mExecutor = executor;
+    }
+
     /**
      * Get request timeout (in msecs)
      */
@@ -109,11 +200,92 @@ public class JsonRpcClient {
 
     
     /**
-     * Generate a new request id and return it
-     * @return
+     * Get the coalescing window (in msecs)
      */
-    private String generateId() {
-        return Integer.toHexString(mIdGenerator.incrementAndGet());
+    public long getCoalescingWindow() {
+        return mCoalescingWindow;
+    }
+
+    /**
+     * Set the coalescing window (in msecs)
+     *
+     * When positive, requests and notifications issued on a connection
+     * within this window are sent together as one batch, and responses
+     * are matched back to their callers by id. The window is only as
+     * accurate as the timer, see {@link #getDefaultTimer()}.
+     *
+     * @param coalescingWindow or 0 to send every request on its own
+     */
+    public void setCoalescingWindow(long coalescingWindow) {
+        this.mCoalescingWindow = coalescingWindow;
+        if(coalescingWindow <= 0) {
+            for(JsonRpcClientCoalescer coalescer: mCoalescers.values()) {
+                coalescer.flush();
+            }
+        }
+    }
+
+    /**
+     * Get the maximum size of coalesced batches
+     */
+    public int getCoalescingLimit() {
+        return mCoalescingLimit;
+    }
+
+    /**
+     * Set the maximum size of coalesced batches
+     *
+     * Batches are sent as soon as they reach this size.
+     *
+     * @param coalescingLimit
+     */
+    public void setCoalescingLimit(int coalescingLimit) {
+        this.mCoalescingLimit = coalescingLimit;
+    }
+
+    /**
+     * Returns true if requests carry numeric ids
+     */
+    public boolean isNumericIds() {
+        return mNumericIds;
+    }
+
+    /**
+     * Set whether requests should carry numeric ids
+     *
+     * Numeric ids are correlated without boxing or string hashing.
+     * By default ids are hexadecimal strings.
+     *
+     * @param numericIds
+     */
+    public void setNumericIds(boolean numericIds) {
+        this.mNumericIds = numericIds;
+    }
+
+    /**
+     * Create a request with a freshly generated id
+     * @param methodName
+     * @param arguments
+     * @param connection
+     * @param resultReader to convert results with (null to ignore results)
+     * @param async true to create an asynchronous request
+     * @return the request
+     */
+    JsonRpcClientRequest createClientRequest(String methodName, Object arguments, JsonRpcTransport connection,
+                                                     ObjectReader resultReader, boolean async) {
+        long id = mIdGenerator.incrementAndGet();
+        JsonRpcClientRequest request;
+        if (mNumericIds) {
+            request = async ? new JsonRpcClientRequest(id, null, connection, resultReader)
+                            : new JsonRpcClientRequest(id, null, connection);
+        } else {
+            String textId = Long.toHexString(id);
+            request = async ? new JsonRpcClientRequest(textId, null, connection, resultReader)
+                            : new JsonRpcClientRequest(textId, null, connection);
+        }
+        request.setCall(JSON_RPC_VERSION, methodName, arguments);
+        request.setResultReader(resultReader);
+        return request;
     }
 
 
@@ -121,6 +293,7 @@ public class JsonRpcClient {
      * Handle binding to a connection
      */
     public void bindConnection(JsonRpcTransport connection) {
+        getRequestTable(connection);
         if(connection instanceof JsonRpcConnectedTransport) {
             ((JsonRpcConnectedTransport)connection).addListener(mConnectionListener);
         }
@@ -133,6 +306,82 @@ public class JsonRpcClient {
         if(connection instanceof JsonRpcConnectedTransport) {
             ((JsonRpcConnectedTransport)connection).removeListener(mConnectionListener);
         }
+        // send whatever is still being coalesced
+        JsonRpcClientCoalescer coalescer = mCoalescers.remove(connection);
+        if(coalescer != null) {
+            coalescer.flush();
+        }
+        // fail whatever is still outstanding
+        failRequests(mOutstandingRequests.remove(connection));
+    }
+
+    /**
+     * Get the table of outstanding requests for the given connection
+     */
+    private JsonRpcClientRequestTable getRequestTable(JsonRpcTransport connection) {
+        JsonRpcClientRequestTable table = mOutstandingRequests.get(connection);
+        if(table == null) {
+            JsonRpcClientRequestTable created = new JsonRpcClientRequestTable();
+            table = mOutstandingRequests.putIfAbsent(connection, created);
+            if(table == null) {
+                table = created;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Add a request to the table of its connection
+     *
+     * Requests racing with a disconnect may end up in a table
+     * that has already been failed, so those are failed here.
+     */
+    private void addRequest(JsonRpcClientRequest request) {
+        JsonRpcTransport connection = request.getConnection();
+        JsonRpcClientRequestTable table = getRequestTable(connection);
+        table.put(request);
+        if(mOutstandingRequests.get(connection) != table) {
+            table.remove(request);
+            request.handleDisconnect();
+        }
+    }
+
+    /**
+     * Track an asynchronous request until it completes
+     */
+    void trackRequest(final JsonRpcClientRequest request) {
+        // add the request to client state
+        addRequest(request);
+        // arm the timeout
+        request.armTimeout(mTimer, mRequestTimeout, mExecutor);
+        // clean up when done
+        request.getFuture().whenComplete((result, error) -> {
+            removeRequest(request);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("[" + request.getId() + "] finished");
+            }
+        });
+    }
+
+    /**
+     * Remove a request from the table of its connection
+     */
+    private void removeRequest(JsonRpcClientRequest request) {
+        JsonRpcClientRequestTable table = mOutstandingRequests.get(request.getConnection());
+        if(table != null) {
+            table.remove(request);
+        }
+    }
+
+    /**
+     * Fail all requests in the given table with a disconnect
+     */
+    private void failRequests(JsonRpcClientRequestTable table) {
+        if(table != null) {
+            for(JsonRpcClientRequest req: table.getRequests()) {
+                req.handleDisconnect();
+            }
+        }
     }
 
     /**
@@ -144,7 +393,11 @@ public class JsonRpcClient {
             LOG.trace("[" + request.getId() + "] request " + request.getRequest());
         }
         // send it
-        connection.sendRequest(request);
+        if (mCoalescingWindow > 0) {
+            getCoalescer(connection).add(request);
+        } else {
+            connection.sendRequest(request);
+        }
     }
 
     /**
@@ -156,38 +409,54 @@ public class JsonRpcClient {
             LOG.trace("[" + notification.getId() + "] notification " + notification.getRequest());
         }
         // send it
-        connection.sendNotification(notification);
+        if (mCoalescingWindow > 0) {
+            getCoalescer(connection).add(notification);
+        } else {
+            connection.sendNotification(notification);
+        }
+    }
+
+    /**
+     * Send a batch of requests and notifications through the connection
+     *
+     * The requests should be tracked by the client already.
+     */
+    public void sendBatch(JsonRpcTransport connection, List<JsonRpcClientRequest> batch) throws IOException {
+        // log batch
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("[batch] sending " + batch.size() + " requests");
+        }
+        // send it
+        connection.sendBatch(batch);
+    }
+
+    /**
+     * Get the coalescer for the given connection
+     */
+    private JsonRpcClientCoalescer getCoalescer(JsonRpcTransport connection) {
+        JsonRpcClientCoalescer coalescer = mCoalescers.get(connection);
+        if(coalescer == null) {
+            JsonRpcClientCoalescer created = new JsonRpcClientCoalescer(this, connection);
+            coalescer = mCoalescers.putIfAbsent(connection, created);
+            if(coalescer == null) {
+                coalescer = created;
+            }
+        }
+        return coalescer;
     }
 
     /**
      * Handle a connection state change (connect/disconnect)
      *
-     * This will remove all requests associated with the connection indicated.
+     * This will fail all requests associated with the connection indicated.
+     * Their table is swapped for an empty one, so other connections
+     * are not affected and the cost is proportional to the number of
+     * requests that actually fail.
      *
      * @param connection
      */
     private void handleConnectionChange(JsonRpcTransport connection) {
-        synchronized (mOutstandingRequests) {
-            // vector to collect matched requests into
-            Vector<JsonRpcClientRequest> matches = new Vector<JsonRpcClientRequest>();
-            // for every outstanding request
-            Enumeration<JsonRpcClientRequest> reqs = mOutstandingRequests.elements();
-            while(reqs.hasMoreElements()) {
-                JsonRpcClientRequest req = reqs.nextElement();
-                // if the request belongs to the changed connection
-                if(req.getConnection() == connection) {
-                    // unblock the requestor
-                    req.handleDisconnect();
-                    // and remember the request
-                    matches.add(req);
-                }
-            }
-            // for all relevant requests
-            for(JsonRpcClientRequest req: matches) {
-                // remove request from table
-                mOutstandingRequests.remove(req.getId());
-            }
-        }
+        failRequests(mOutstandingRequests.put(connection, new JsonRpcClientRequestTable()));
     }
 
 
@@ -206,39 +475,54 @@ public class JsonRpcClient {
      */
 	public Object invokeMethod(String methodName, Object arguments, Type returnType, JsonRpcTransport connection)
 		    throws Throwable {
+        ObjectReader resultReader = null;
+        if(returnType != void.class && returnType != Void.class) {
+            ObjectMapper mapper = connection.getMapper();
+            resultReader = mapper.readerFor(mapper.getTypeFactory().constructType(returnType));
+        }
+        return invokeMethod(methodName, arguments, resultReader, connection);
+    }
+
+    /**
+     * Invoke the method specified via the given connection
+     *
+     * Like {@link #invokeMethod(String, Object, Type, JsonRpcTransport)},
+     * but converting results with a reader prepared by the caller.
+     *
+     * @param methodName
+     * @param arguments
+     * @param resultReader to convert results with (null to ignore results)
+     * @param connection
+     * @return remote return value
+     * @throws Throwable
+     */
+    public Object invokeMethod(String methodName, Object arguments, ObjectReader resultReader, JsonRpcTransport connection)
+            throws Throwable {
         Object result = null;
-        // generate request id
-        String id = generateId();
+        // construct the request state object
+        JsonRpcClientRequest request = createClientRequest(methodName, arguments, connection, resultReader, false);
+        String id = request.getId();
         // log about call
         if (LOG.isTraceEnabled()) {
             LOG.trace("[" + id + "] calling " + methodName);
         }
-        // construct the JSON request node
-        ObjectNode requestNode = createRequest(methodName, arguments, id, connection);
-        // construct the request state object
-        JsonRpcClientRequest request = new JsonRpcClientRequest(id, requestNode, connection);
         // add the request to client state
-        synchronized (mOutstandingRequests) {
-            mOutstandingRequests.put(id, request);
-        }
+        addRequest(request);
+        // arm the timeout
+        request.armTimeout(mTimer, mRequestTimeout, mExecutor);
         // send the request
         try {
             // send request
             sendRequest(connection, request);
             // wait for a response (or error)
             if(request.waitForCompletion()) {
-                request.processResponse(returnType);
+                request.processReceivedResponse(resultReader);
             }
         } catch (IOException ioe) {
             if (LOG.isTraceEnabled()) {
                 LOG.trace("[" + id + "] exception", ioe);
             }
             request.handleLocalException(ioe);
-        } catch (TimeoutException to) {
-            if (LOG.isTraceEnabled()) {
-                LOG.trace("[" + id + "] request timed out");
-            }
-            request.handleTimeout();
         } catch (InterruptedException i) {
             if (LOG.isTraceEnabled()) {
                 LOG.trace("[" + id + "] request interrupted");
@@ -246,9 +530,7 @@ public class JsonRpcClient {
             request.handleInterrupted();
         } finally {
             // remove request from client state
-            synchronized (mOutstandingRequests) {
-                mOutstandingRequests.remove(id);
-            }
+            removeRequest(request);
         }
         // log about return
         if (LOG.isTraceEnabled()) {
@@ -260,6 +542,64 @@ public class JsonRpcClient {
         return result;
 	}
 
+    /**
+     * Invoke the method specified via the given connection without blocking
+     *
+     * The returned future completes with the remote return value
+     * or exceptionally with the same exceptions that
+     * {@link #invokeMethod(String, Object, Type, JsonRpcTransport)}
+     * would throw. Requests are tracked by the client until they
+     * complete, and fail with a timeout like blocking ones.
+     *
+     * @param methodName
+     * @param arguments
+     * @param returnType
+     * @param connection
+     * @return future of the remote return value
+     */
+    public CompletableFuture<Object> invokeMethodAsync(String methodName, Object arguments, Type returnType, JsonRpcTransport connection) {
+        ObjectReader resultReader = null;
+        if(returnType != void.class && returnType != Void.class) {
+            ObjectMapper mapper = connection.getMapper();
+            resultReader = mapper.readerFor(mapper.getTypeFactory().constructType(returnType));
+        }
+        return invokeMethodAsync(methodName, arguments, resultReader, connection);
+    }
+
+    /**
+     * Invoke the method specified via the given connection without blocking
+     *
+     * Like {@link #invokeMethodAsync(String, Object, Type, JsonRpcTransport)},
+     * but converting results with a reader prepared by the caller.
+     *
+     * @param methodName
+     * @param arguments
+     * @param resultReader to convert results with (null to ignore results)
+     * @param connection
+     * @return future of the remote return value
+     */
+    public CompletableFuture<Object> invokeMethodAsync(String methodName, Object arguments, ObjectReader resultReader, JsonRpcTransport connection) {
+        // construct the request state object
+        final JsonRpcClientRequest request = createClientRequest(methodName, arguments, connection, resultReader, true);
+        // log about call
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("[" + request.getId() + "] calling " + methodName + " asynchronously");
+        }
+        CompletableFuture<Object> future = request.getFuture();
+        // track the request until done
+        trackRequest(request);
+        // send the request
+        try {
+            sendRequest(connection, request);
+        } catch (IOException ioe) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("[" + request.getId() + "] exception", ioe);
+            }
+            request.handleLocalException(ioe);
+        }
+        return future;
+    }
+
     /**
      * Invoke the method specified via the given connection
      *
@@ -275,10 +615,8 @@ public class JsonRpcClient {
         if (LOG.isTraceEnabled()) {
             LOG.trace("[notification] calling " + methodName);
         }
-        // create the JSON request object
-		ObjectNode requestNode = createRequest(methodName, arguments, null, connection);
         // create client request object
-        JsonRpcClientRequest request = new JsonRpcClientRequest(null, requestNode, connection);
+        JsonRpcClientRequest request = createNotificationRequest(methodName, arguments, connection);
         // execute the request
         try {
             // send request
@@ -295,6 +633,74 @@ public class JsonRpcClient {
         }
 	}
 
+    /**
+     * Create a notification request
+     * @param methodName
+     * @param arguments
+     * @param connection
+     * @return the request
+     */
+    JsonRpcClientRequest createNotificationRequest(String methodName, Object arguments, JsonRpcTransport connection) {
+        JsonRpcClientRequest request = new JsonRpcClientRequest(null, null, connection);
+        request.setCall(JSON_RPC_VERSION, methodName, arguments);
+        return request;
+    }
+
+    /**
+     * Create a batch of calls to be sent together through the connection
+     *
+     * @param connection to send the batch through
+     * @return the batch
+     */
+    public JsonRpcClientBatch createBatch(JsonRpcTransport connection) {
+        return new JsonRpcClientBatch(this, connection);
+    }
+
+    /**
+     * Returns the binding for results of responses arriving on the given connection
+     *
+     * Transports reading messages from a parser use this to bind
+     * results directly to the types expected by their callers.
+     *
+     * @param connection on which responses arrive
+     * @return the binding or null
+     */
+    public JsonRpcMessage.ResultBinding getResultBinding(JsonRpcTransport connection) {
+        return mOutstandingRequests.get(connection);
+    }
+
+    /**
+     * Handle an incoming response read from a parser
+     * @param response to process
+     * @param connection on which the response arrived
+     * @return true if the response was accepted
+     */
+    public boolean handleResponse(JsonRpcMessage response, JsonRpcTransport connection) {
+        // retrieve the request from the client table
+        JsonRpcClientRequest req = null;
+        JsonRpcClientRequestTable table = mOutstandingRequests.get(connection);
+        if(table != null) {
+            req = table.get(response.getId());
+        }
+        // if there was an actual request
+        if(req != null) {
+            // log response
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("[" + req.getId() + "] response with id " + response.getId());
+            }
+            // handle the response, unblocking the requestor
+            req.handleResponse(response);
+            // we have handled the request
+            return true;
+        }
+        // log response
+        if (LOG.isWarnEnabled()) {
+            LOG.warn("unidentified response with id " + response.getId());
+        }
+        // we have not handled the request
+        return false;
+    }
+
     /**
      * Handle an incoming JSON response
      * @param response to process
@@ -303,19 +709,23 @@ public class JsonRpcClient {
      */
 	public boolean handleResponse(ObjectNode response, JsonRpcTransport connection) {
 		JsonNode idNode = response.get("id");
-        // check the id, we only use strings
-		if(idNode != null && idNode.isTextual()) {
-			String id = idNode.asText();
+        // check the id, we only use strings and integers (like ProtocolUtils.parseId)
+		if(idNode != null && (idNode.isTextual() || idNode.isInt() || idNode.isLong())) {
             // retrieve the request from the client table
             JsonRpcClientRequest req = null;
-            synchronized (mOutstandingRequests) {
-                req = mOutstandingRequests.get(id);
+            JsonRpcClientRequestTable table = mOutstandingRequests.get(connection);
+            if(table != null) {
+                if(idNode.isTextual()) {
+                    req = table.get(idNode.textValue());
+                } else {
+                    req = table.get(idNode.longValue());
+                }
             }
             // if there was an actual request
-			if(req != null && req.getConnection() == connection) {
+			if(req != null) {
                 // log response
                 if (LOG.isTraceEnabled()) {
-                    LOG.trace("[" + id + "] response " + response);
+                    LOG.trace("[" + req.getId() + "] response " + response);
                 }
                 // handle the response, unblocking the requestor
 				req.handleResponse(response);
@@ -332,59 +742,4 @@ public class JsonRpcClient {
         return false;
 	}
 
-    /**
-     * Creates a JSON request node.
-     * @param methodName the method name
-     * @param arguments the arguments
-     * @param id the optional id
-     * @return the new request
-     */
-    private ObjectNode createRequest(
-            String methodName, Object arguments, String id, JsonRpcTransport connection) {
-
-        ObjectMapper mapper = connection.getMapper();
-
-        // create the request
-        ObjectNode request = mapper.createObjectNode();
-
-        // add id
-        if (id!=null) { request.put("id", id); }
-
-        // add protocol and method
-        request.put("jsonrpc", JSON_RPC_VERSION);
-        request.put("method", methodName);
-
-        // default empty arguments, will be replaced further down
-        request.put("params", mapper.valueToTree(EMPTY_PARAMS));
-
-        // object array args
-        if (arguments!=null && arguments.getClass().isArray()) {
-            Object[] args = Object[].class.cast(arguments);
-            if (args.length>0) {
-                request.put("params", mapper.valueToTree(Object[].class.cast(arguments)));
-            }
-
-            // collection args
-        } else if (arguments!=null && Collection.class.isInstance(arguments)) {
-            if (!Collection.class.cast(arguments).isEmpty()) {
-                request.put("params", mapper.valueToTree(arguments));
-            }
-
-            // map args
-        } else if (arguments!=null && Map.class.isInstance(arguments)) {
-            if (!Map.class.cast(arguments).isEmpty()) {
-                request.put("params", mapper.valueToTree(arguments));
-            }
-
-            // other args
-        } else if (arguments!=null) {
-            request.put("params", mapper.valueToTree(arguments));
-        }
-
-        // return the request
-        return request;
-    }
-
-    private static final Object[] EMPTY_PARAMS = new Object[0];
-
 }
@@ -0,0 +1,236 @@
+package better.jsonrpc.client;
+
+import better.jsonrpc.core.JsonRpcTransport;
+import better.jsonrpc.util.ProxyUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.ClassUtil;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Batch of calls to be sent together
+ *
+ * Calls are added either by name or through a batch proxy and
+ * each get a future of their own. Nothing is sent until
+ * {@link #send()} is called, which sends all calls as a single
+ * JSON-RPC batch. Calls fail individually, with remote errors
+ * mapped by the exception resolver of the client.
+ *
+ * <pre>
+ * JsonRpcClientBatch batch = client.createBatch(connection);
+ * IService service = batch.getProxy(IService.class);
+ * CompletableFuture&lt;Integer&gt; sum = batch.call(() -&gt; service.add(2, 3));
+ * CompletableFuture&lt;Void&gt; ping = batch.run(() -&gt; service.ping());
+ * batch.send();
+ * </pre>
+ *
+ * Batches are single-use.
+ */
+public class JsonRpcClientBatch {
+
+    private final JsonRpcClient mClient;
+
+    private final JsonRpcTransport mConnection;
+
+    /** Requests and notifications in order of addition */
+    private final List<JsonRpcClientRequest> mRequests = new ArrayList<JsonRpcClientRequest>();
+
+    /** Completed when the batch has been sent */
+    private final CompletableFuture<Void> mSent = new CompletableFuture<Void>();
+
+    /** True once sent */
+    private boolean mIsSent;
+
+    JsonRpcClientBatch(JsonRpcClient client, JsonRpcTransport connection) {
+        mClient = client;
+        mConnection = connection;
+    }
+
+    /** @return the number of calls in this batch */
+    public synchronized int size() {
+        return mRequests.size();
+    }
+
+    /**
+     * Add a call to the batch
+     * @param methodName
+     * @param arguments
+     * @param returnType to convert results to
+     * @return future of the remote return value
+     */
+    public CompletableFuture<Object> add(String methodName, Object arguments, Type returnType) {
+        ObjectReader resultReader = null;
+        if (returnType != void.class && returnType != Void.class) {
+            ObjectMapper mapper = mConnection.getMapper();
+            resultReader = mapper.readerFor(mapper.getTypeFactory().constructType(returnType));
+        }
+        return add(methodName, arguments, resultReader);
+    }
+
+    /**
+     * Add a call to the batch
+     * @param methodName
+     * @param arguments
+     * @param resultReader to convert results with (null to ignore results)
+     * @return future of the remote return value
+     */
+    public CompletableFuture<Object> add(String methodName, Object arguments, ObjectReader resultReader) {
+        JsonRpcClientRequest request = mClient.createClientRequest(methodName, arguments, mConnection, resultReader, true);
+        addRequest(request);
+        return request.getFuture();
+    }
+
+    /**
+     * Add a notification to the batch
+     * @param methodName
+     * @param arguments
+     */
+    public void addNotification(String methodName, Object arguments) {
+        addRequest(mClient.createNotificationRequest(methodName, arguments, mConnection));
+    }
+
+    private synchronized void addRequest(JsonRpcClientRequest request) {
+        if (mIsSent) {
+            throw new IllegalStateException("Batch has been sent already");
+        }
+        mRequests.add(request);
+    }
+
+    /**
+     * Create a proxy adding calls to this batch
+     *
+     * Methods of the proxy return immediately. Methods returning
+     * futures return the future of their call, all others return
+     * null or zero and should be wrapped with {@link #call(Supplier)}
+     * or {@link #run(Runnable)} to get hold of their future.
+     *
+     * @param proxyInterface to implement
+     * @return the proxy
+     */
+    public <T> T getProxy(Class<T> proxyInterface) {
+        return getProxy(proxyInterface, false);
+    }
+
+    /**
+     * Create a proxy adding calls to this batch
+     * @param proxyInterface to implement
+     * @param useNamedParams whether to send named parameters
+     * @return the proxy
+     * @see #getProxy(Class)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getProxy(final Class<T> proxyInterface, final boolean useNamedParams) {
+        final Map<Method, JsonRpcClientMethod> methods = JsonRpcClientMethod.describe(proxyInterface);
+        return (T) Proxy.newProxyInstance(
+                proxyInterface.getClassLoader(),
+                new Class<?>[] {proxyInterface},
+                (proxy, method, args) -> {
+                    JsonRpcClientMethod call = methods.get(method);
+                    if (call == null) {
+                        return ProxyUtil.invokeLocally(proxy, proxyInterface, method, args);
+                    }
+                    Object arguments = call.getParams(args, useNamedParams);
+                    if (call.isNotification()) {
+                        addNotification(call.getName(), arguments);
+                        return null;
+                    }
+                    CompletableFuture<Object> future =
+                            add(call.getName(), arguments, call.getTypes(mConnection.getMapper()).getResultReader());
+                    if (call.isReturningFuture()) {
+                        return future;
+                    }
+                    Class<?> returnClass = method.getReturnType();
+                    return (returnClass.isPrimitive() && returnClass != void.class)
+                            ? ClassUtil.defaultValue(returnClass) : null;
+                });
+    }
+
+    /**
+     * Add a call made through a batch proxy
+     * @param call invoking exactly one method of a batch proxy
+     * @return future of the remote return value
+     */
+    @SuppressWarnings("unchecked")
+    public <R> CompletableFuture<R> call(Supplier<R> call) {
+        final Object[] returned = new Object[1];
+        JsonRpcClientRequest request = record(() -> returned[0] = call.get());
+        if (!request.isAsync()) {
+            throw new IllegalArgumentException("Notifications have no result");
+        }
+        if (returned[0] == request.getFuture()) {
+            throw new IllegalArgumentException("Asynchronous methods return their future directly");
+        }
+        return (CompletableFuture<R>) request.getFuture();
+    }
+
+    /**
+     * Add a call or notification made through a batch proxy
+     *
+     * The future of a notification completes once it has been sent.
+     *
+     * @param call invoking exactly one method of a batch proxy
+     * @return future completing when the call is done
+     */
+    public CompletableFuture<Void> run(Runnable call) {
+        JsonRpcClientRequest request = record(call);
+        CompletableFuture<?> future = request.isAsync() ? request.getFuture() : mSent;
+        return future.thenApply(result -> null);
+    }
+
+    /** Run the given call and return the single request it added */
+    private synchronized JsonRpcClientRequest record(Runnable call) {
+        int before = mRequests.size();
+        call.run();
+        if (mRequests.size() != before + 1) {
+            throw new IllegalArgumentException("Call must invoke exactly one method of a batch proxy");
+        }
+        return mRequests.get(before);
+    }
+
+    /**
+     * Send the batch
+     *
+     * Failures to send fail all calls of the batch.
+     *
+     * @return future completing when all calls are done
+     */
+    public CompletableFuture<Void> send() {
+        List<JsonRpcClientRequest> requests;
+        synchronized (this) {
+            if (mIsSent) {
+                throw new IllegalStateException("Batch has been sent already");
+            }
+            mIsSent = true;
+            requests = new ArrayList<JsonRpcClientRequest>(mRequests);
+        }
+        List<CompletableFuture<?>> done = new ArrayList<CompletableFuture<?>>(requests.size());
+        for (JsonRpcClientRequest request : requests) {
+            if (request.isAsync()) {
+                mClient.trackRequest(request);
+                done.add(request.getFuture().handle((result, error) -> null));
+            }
+        }
+        try {
+            if (!requests.isEmpty()) {
+                mClient.sendBatch(mConnection, requests);
+            }
+            mSent.complete(null);
+        } catch (IOException e) {
+            for (JsonRpcClientRequest request : requests) {
+                request.handleLocalException(e);
+            }
+            mSent.completeExceptionally(e);
+        }
+        return CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[done.size()]));
+    }
+
+}
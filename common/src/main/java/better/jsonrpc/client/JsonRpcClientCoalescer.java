@@ -0,0 +1,94 @@
+package better.jsonrpc.client;
+
+import better.jsonrpc.core.JsonRpcTransport;
+import better.jsonrpc.util.HashedWheelTimer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers the requests of a client on one connection into batches
+ *
+ * The first request of a batch opens a window, everything issued
+ * before it closes goes out in the same batch. Batches that reach
+ * the size limit are sent immediately by the thread filling them.
+ */
+class JsonRpcClientCoalescer {
+
+    private final JsonRpcClient mClient;
+
+    private final JsonRpcTransport mConnection;
+
+    /** Requests waiting for the window to close (guarded by this) */
+    private List<JsonRpcClientRequest> mPending;
+
+    /** Timeout closing the current window (guarded by this) */
+    private HashedWheelTimer.Timeout mWindow;
+
+    JsonRpcClientCoalescer(JsonRpcClient client, JsonRpcTransport connection) {
+        mClient = client;
+        mConnection = connection;
+    }
+
+    /** Add a request or notification to the current batch */
+    void add(JsonRpcClientRequest request) {
+        List<JsonRpcClientRequest> full = null;
+        synchronized (this) {
+            if (mPending == null) {
+                mPending = new ArrayList<JsonRpcClientRequest>();
+                // flush off the timer thread, sending may block
+                mWindow = mClient.getTimer().newTimeout(
+                        () -> mClient.getExecutor().execute(this::flush),
+                        mClient.getCoalescingWindow(), TimeUnit.MILLISECONDS);
+            }
+            mPending.add(request);
+            if (mPending.size() >= mClient.getCoalescingLimit()) {
+                full = mPending;
+                mPending = null;
+                mWindow.cancel();
+                mWindow = null;
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+    }
+
+    /** Send the current batch now */
+    void flush() {
+        List<JsonRpcClientRequest> batch;
+        synchronized (this) {
+            batch = mPending;
+            mPending = null;
+            if (mWindow != null) {
+                mWindow.cancel();
+                mWindow = null;
+            }
+        }
+        if (batch != null) {
+            send(batch);
+        }
+    }
+
+    private void send(List<JsonRpcClientRequest> batch) {
+        try {
+            if (batch.size() == 1) {
+                JsonRpcClientRequest request = batch.get(0);
+                if (request.isNotification()) {
+                    mConnection.sendNotification(request);
+                } else {
+                    mConnection.sendRequest(request);
+                }
+            } else {
+                mConnection.sendBatch(batch);
+            }
+        } catch (IOException e) {
+            for (JsonRpcClientRequest request : batch) {
+                request.handleLocalException(e);
+            }
+        }
+    }
+
+}
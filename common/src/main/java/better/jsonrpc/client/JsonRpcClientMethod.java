@@ -0,0 +1,186 @@
+package better.jsonrpc.client;
+
+import better.jsonrpc.annotations.JsonRpcParam;
+import better.jsonrpc.core.JsonRpcMethodTypes;
+import better.jsonrpc.core.JsonRpcTransport;
+import better.jsonrpc.util.ProxyUtil;
+import better.jsonrpc.util.ReflectionUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Description of an interface method as called by client proxies
+ *
+ * Everything a proxy needs to know about a method is worked out
+ * once when the proxy is created, so calls do no reflection
+ * beyond invoking the proxy itself. Generated stubs describe
+ * their methods with constants instead.
+ *
+ * Instances are immutable.
+ */
+public final class JsonRpcClientMethod {
+
+    /** Name of the method on the wire */
+    private final String mName;
+
+    /** True if calls are sent as notifications */
+    private final boolean mNotification;
+
+    /** True if the future of the call is returned directly */
+    private final boolean mReturnsFuture;
+
+    /** Names of the parameters (null if not all of them are named) */
+    private final String[] mParamNames;
+
+    /** Resolved types, per mapper */
+    private final JsonRpcMethodTypes.Cache mTypes;
+
+    /**
+     * Describe the given method
+     * @param prefix of the interface
+     * @param method to describe
+     * @throws IllegalArgumentException if the method returns a future other than a {@link CompletableFuture}
+     */
+    public JsonRpcClientMethod(String prefix, Method method) {
+        mName = ProxyUtil.getMethodName(prefix, method);
+        mNotification = ReflectionUtil.isNotification(method);
+        mReturnsFuture = JsonRpcMethodTypes.isAsync(method);
+        if (mReturnsFuture && !method.getReturnType().isAssignableFrom(CompletableFuture.class)) {
+            throw new IllegalArgumentException(
+                    "Method " + method + " can not be called remotely, its future type is not"
+                    + " assignable from " + CompletableFuture.class.getName());
+        }
+        mParamNames = findParamNames(method);
+        mTypes = new JsonRpcMethodTypes.Cache(method);
+    }
+
+    /**
+     * Describe a method without reflection, for generated stubs
+     * @param name of the method on the wire
+     * @param notification true if calls are sent as notifications
+     * @param returnsFuture true if the method returns a {@link CompletableFuture}
+     * @param paramNames names of the parameters (null if not all of them are named)
+     * @param resolver constructing the types of the method
+     */
+    public JsonRpcClientMethod(String name, boolean notification, boolean returnsFuture,
+                               String[] paramNames, JsonRpcMethodTypes.Resolver resolver) {
+        mName = name;
+        mNotification = notification;
+        mReturnsFuture = returnsFuture;
+        mParamNames = paramNames;
+        mTypes = new JsonRpcMethodTypes.Cache(resolver);
+    }
+
+    /**
+     * Describe all methods of the given interface
+     * @param proxyInterface to describe
+     * @return descriptions by method
+     */
+    public static Map<Method, JsonRpcClientMethod> describe(Class<?> proxyInterface) {
+        String prefix = ProxyUtil.getMethodPrefix(proxyInterface);
+        Map<Method, JsonRpcClientMethod> methods = new HashMap<Method, JsonRpcClientMethod>();
+        for (Method method : proxyInterface.getMethods()) {
+            methods.put(method, new JsonRpcClientMethod(prefix, method));
+        }
+        return methods;
+    }
+
+    /** @return the name of the method on the wire */
+    public String getName() {
+        return mName;
+    }
+
+    /** @return true if calls are sent as notifications */
+    public boolean isNotification() {
+        return mNotification;
+    }
+
+    /** @return true if the method returns the future of its call */
+    public boolean isReturningFuture() {
+        return mReturnsFuture;
+    }
+
+    /**
+     * Get the types of the method as seen by the given mapper
+     * @param mapper to resolve with
+     * @return the resolved types
+     */
+    public JsonRpcMethodTypes getTypes(ObjectMapper mapper) {
+        return mTypes.get(mapper);
+    }
+
+    /**
+     * Call the method through the given connection
+     *
+     * Returns the future of the call for methods that return it,
+     * otherwise blocks until the call is done.
+     *
+     * @param connection to call through
+     * @param arguments of the call
+     * @param useNamedParams whether to send named parameters
+     * @return the result
+     * @throws Throwable as thrown by the remote method
+     */
+    public Object invoke(JsonRpcTransport connection, Object[] arguments, boolean useNamedParams) throws Throwable {
+        JsonRpcClient client = connection.getClient();
+        Object params = getParams(arguments, useNamedParams);
+        if (mNotification) {
+            client.invokeNotification(mName, params, connection);
+            return null;
+        }
+        ObjectReader resultReader = getTypes(connection.getMapper()).getResultReader();
+        // futures are returned without blocking
+        if (mReturnsFuture) {
+            return client.invokeMethodAsync(mName, params, resultReader, connection);
+        }
+        return client.invokeMethod(mName, params, resultReader, connection);
+    }
+
+    /**
+     * Turn the arguments of a call into params
+     * @param arguments of the call
+     * @param useNamedParams whether to send named parameters
+     * @return the params
+     */
+    public Object getParams(Object[] arguments, boolean useNamedParams) {
+        if (!useNamedParams) {
+            return arguments;
+        }
+        if (mParamNames == null) {
+            throw new RuntimeException(
+                    "useNamedParams is enabled and a JsonRpcParam annotation "
+                    + "was not found on all parameters of method " + mName);
+        }
+        Map<String, Object> params = new LinkedHashMap<String, Object>(mParamNames.length * 2);
+        for (int i = 0; i < mParamNames.length; i++) {
+            params.put(mParamNames[i], arguments[i]);
+        }
+        return params;
+    }
+
+    /** Collect the names given by {@link JsonRpcParam}, null if any is missing */
+    private static String[] findParamNames(Method method) {
+        Annotation[][] paramAnnotations = method.getParameterAnnotations();
+        String[] names = new String[paramAnnotations.length];
+        for (int i = 0; i < paramAnnotations.length; i++) {
+            for (Annotation annotation : paramAnnotations[i]) {
+                if (annotation instanceof JsonRpcParam) {
+                    names[i] = ((JsonRpcParam) annotation).value();
+                    break;
+                }
+            }
+            if (names[i] == null) {
+                return null;
+            }
+        }
+        return names;
+    }
+
+}
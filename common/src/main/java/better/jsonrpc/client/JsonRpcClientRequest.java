@@ -1,21 +1,31 @@
 package better.jsonrpc.client;
 
+import better.jsonrpc.core.JsonRpcMessage;
 import better.jsonrpc.core.JsonRpcTransport;
 import better.jsonrpc.exception.JsonRpcDisconnect;
 import better.jsonrpc.exception.JsonRpcInterrupted;
 import better.jsonrpc.exception.JsonRpcProtocolError;
 import better.jsonrpc.exception.JsonRpcTimeout;
 import better.jsonrpc.exceptions.DefaultExceptionResolver;
+import better.jsonrpc.util.HashedWheelTimer;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -39,18 +49,36 @@ public class JsonRpcClientRequest {
     Lock mLock;
     /** Condition on mLock */
     Condition mCondition;
-    /** Request id */
+    /** Request id (textual form, computed on demand for numeric ids) */
     String mId;
+    /** Numeric request id */
+    long mNumericId;
+    /** True if the request has a numeric id */
+    boolean mIsNumericId;
     /** Local exceptions */
     Throwable mLocalException;
     /** Remote exceptions (translated from error) */
     Throwable mRemoteException;
     /** The return value for the caller */
     Object mReturn;
-    /** JSON request */
+    /** JSON request (built on demand for calls) */
     ObjectNode mRequest;
+    /** Protocol version of the call */
+    String mVersion;
+    /** Method name of the call */
+    String mMethodName;
+    /** Arguments of the call */
+    Object mArguments;
     /** JSON response */
     ObjectNode mResponse;
+    /** Response read from a parser */
+    JsonRpcMessage mResponseMessage;
+    /** Future for asynchronous requests (null if the caller blocks) */
+    CompletableFuture<Object> mFuture;
+    /** Reader for results */
+    ObjectReader mResultReader;
+    /** Pending timeout (null if not armed) */
+    HashedWheelTimer.Timeout mTimeout;
 
     /** Constructs a client request */
     public JsonRpcClientRequest(String id, ObjectNode request, JsonRpcTransport connection) {
@@ -63,11 +91,57 @@ public class JsonRpcClientRequest {
         mClient = connection.getClient();
     }
 
-    /** Returns the request id of this request */
+    /** Constructs a client request with a numeric id */
+    public JsonRpcClientRequest(long id, ObjectNode request, JsonRpcTransport connection) {
+        this(null, request, connection);
+        mNumericId = id;
+        mIsNumericId = true;
+    }
+
+    /**
+     * Constructs an asynchronous client request
+     *
+     * The response of such a request is processed as soon as it
+     * arrives, completing the future of the request.
+     *
+     * @param resultReader to convert results with (null to ignore results)
+     */
+    public JsonRpcClientRequest(String id, ObjectNode request, JsonRpcTransport connection, ObjectReader resultReader) {
+        this(id, request, connection);
+        mFuture = new CompletableFuture<Object>();
+        mResultReader = resultReader;
+    }
+
+    /** Constructs an asynchronous client request with a numeric id */
+    public JsonRpcClientRequest(long id, ObjectNode request, JsonRpcTransport connection, ObjectReader resultReader) {
+        this(id, request, connection);
+        mFuture = new CompletableFuture<Object>();
+        mResultReader = resultReader;
+    }
+
+    /** Returns the request id of this request (in textual form for numeric ids) */
     public String getId() {
+        if (mId == null && mIsNumericId) {
+            mId = Long.toString(mNumericId);
+        }
         return mId;
     }
 
+    /** Returns true if this is a notification (a request without id) */
+    public boolean isNotification() {
+        return mId == null && !mIsNumericId;
+    }
+
+    /** Returns true if this request has a numeric id */
+    public boolean isNumericId() {
+        return mIsNumericId;
+    }
+
+    /** Returns the numeric id of this request */
+    public long getNumericId() {
+        return mNumericId;
+    }
+
     /** Returns the connection used */
     public JsonRpcTransport getConnection() {
         return mConnection;
@@ -78,18 +152,160 @@ public class JsonRpcClientRequest {
         return mClient;
     }
 
+    /** Returns true if this request completes a future instead of blocking */
+    public boolean isAsync() {
+        return mFuture != null;
+    }
+
+    /** Returns the future of an asynchronous request (null otherwise) */
+    public CompletableFuture<Object> getFuture() {
+        return mFuture;
+    }
+
     /** Returns true if this request is done */
     private boolean isDone() {
-        return mResponse != null || mLocalException != null;
+        return mResponse != null || mResponseMessage != null || mLocalException != null;
+    }
+
+    /**
+     * Set the call this request performs
+     *
+     * Requests created this way are written directly
+     * to transports without building a tree first.
+     *
+     * @param version the jsonrpc string
+     * @param methodName to call
+     * @param arguments as an array, collection, map or single object (may be null)
+     */
+    void setCall(String version, String methodName, Object arguments) {
+        mVersion = version;
+        mMethodName = methodName;
+        mArguments = arguments;
     }
 
-    /** Get the JSON request object */
+    /** @return the method called (null for requests given as a tree) */
+    public String getMethodName() {
+        return mMethodName;
+    }
+
+    /** @return the arguments of the call as given by the caller */
+    public Object getArguments() {
+        return mArguments;
+    }
+
+    /**
+     * Get the JSON request object
+     *
+     * For calls this builds a tree, so transports should
+     * prefer {@link #writeTo(JsonGenerator)}.
+     */
     public ObjectNode getRequest() {
+        if (mRequest == null && mMethodName != null) {
+            ObjectMapper mapper = mConnection.getMapper();
+            TokenBuffer buffer = new TokenBuffer(mapper, false);
+            try {
+                writeTo(buffer);
+                mRequest = mapper.readTree(buffer.asParser());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not convert request", e);
+            }
+        }
         return mRequest;
     }
 
-    /** Get the JSON response object */
+    /**
+     * Write the JSON request to the given generator
+     * @param generator to write to
+     * @throws IOException on write errors
+     */
+    public void writeTo(JsonGenerator generator) throws IOException {
+        ObjectMapper mapper = mConnection.getMapper();
+        if (mMethodName == null) {
+            mapper.writeTree(generator, mRequest);
+            return;
+        }
+        generator.writeStartObject();
+        if (mIsNumericId) {
+            generator.writeNumberField("id", mNumericId);
+        } else if (mId != null) {
+            generator.writeStringField("id", mId);
+        }
+        generator.writeStringField("jsonrpc", mVersion);
+        generator.writeStringField("method", mMethodName);
+        generator.writeFieldName("params");
+        writeParams(generator, mapper, mArguments);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Serialize the JSON request
+     * @return the encoded request
+     * @throws IOException on write errors
+     */
+    public byte[] toByteArray() throws IOException {
+        JsonFactory factory = mConnection.getMapper().getFactory();
+        ByteArrayBuilder buffer = new ByteArrayBuilder(factory._getBufferRecycler());
+        try {
+            JsonGenerator generator = factory.createGenerator(buffer);
+            try {
+                writeTo(generator);
+            } finally {
+                generator.close();
+            }
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /** Write arguments as params, empty ones as an empty array */
+    private static void writeParams(JsonGenerator generator, ObjectMapper mapper, Object arguments) throws IOException {
+        if (arguments == null) {
+            generator.writeStartArray();
+            generator.writeEndArray();
+        } else if (arguments instanceof Object[]) {
+            generator.writeStartArray();
+            for (Object argument : (Object[]) arguments) {
+                mapper.writeValue(generator, argument);
+            }
+            generator.writeEndArray();
+        } else if (arguments instanceof Collection) {
+            generator.writeStartArray();
+            for (Object argument : (Collection<?>) arguments) {
+                mapper.writeValue(generator, argument);
+            }
+            generator.writeEndArray();
+        } else if (arguments instanceof Map && ((Map<?, ?>) arguments).isEmpty()) {
+            generator.writeStartArray();
+            generator.writeEndArray();
+        } else {
+            mapper.writeValue(generator, arguments);
+        }
+    }
+
+    /** Returns the reader for results (null to ignore results) */
+    public ObjectReader getResultReader() {
+        return mResultReader;
+    }
+
+    /** Set the reader for results */
+    void setResultReader(ObjectReader resultReader) {
+        mResultReader = resultReader;
+    }
+
+    /**
+     * Get the JSON response object
+     *
+     * Responses read from a parser are converted on demand.
+     */
     public ObjectNode getResponse() {
+        if (mResponse == null && mResponseMessage != null) {
+            try {
+                mResponse = mResponseMessage.toResponseNode(mConnection.getMapper());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not convert response", e);
+            }
+        }
         return mResponse;
     }
 
@@ -110,70 +326,190 @@ public class JsonRpcClientRequest {
 
     /** Should be called on IO errors, timeouts and other such local abort causes */
     public void handleLocalException(Throwable exception) {
+        if (failLocally(exception) && mFuture != null) {
+            mFuture.completeExceptionally(exception);
+        }
+    }
+
+    /** Fail with the given exception unless done, returning true if it did */
+    private boolean failLocally(Throwable exception) {
         mLock.lock();
         try {
-            if (!isDone()) {
-                mLocalException = exception;
-                mCondition.signalAll();
+            if (isDone()) {
+                return false;
             }
+            mLocalException = exception;
+            mCondition.signalAll();
+            cancelTimeout();
+            return true;
         } finally {
             mLock.unlock();
         }
     }
 
+    /**
+     * Fail with a timeout, completing the future on the given executor
+     *
+     * The request is done as soon as this returns, but continuations
+     * of the future do not run on the thread of the timer.
+     */
+    private void expire(Executor executor) {
+        final JsonRpcTimeout timeout = new JsonRpcTimeout();
+        if (!failLocally(timeout) || mFuture == null) {
+            return;
+        }
+        try {
+            executor.execute(() -> mFuture.completeExceptionally(timeout));
+        } catch (RejectedExecutionException e) {
+            mFuture.completeExceptionally(timeout);
+        }
+    }
+
     /** Should be called when a matching response has been received */
     public void handleResponse(ObjectNode response) {
+        boolean done = false;
         mLock.lock();
         try {
             if (!isDone()) {
                 mResponse = response;
                 mCondition.signalAll();
+                cancelTimeout();
+                done = true;
+            }
+        } finally {
+            mLock.unlock();
+        }
+        if (done && mFuture != null) {
+            completeFuture();
+        }
+    }
+
+    /** Should be called when a matching response has been read from a parser */
+    public void handleResponse(JsonRpcMessage response) {
+        boolean done = false;
+        mLock.lock();
+        try {
+            if (!isDone()) {
+                mResponseMessage = response;
+                mCondition.signalAll();
+                cancelTimeout();
+                done = true;
             }
         } finally {
             mLock.unlock();
         }
+        if (done && mFuture != null) {
+            completeFuture();
+        }
+    }
+
+    /** Process the response of an asynchronous request and complete its future */
+    private void completeFuture() {
+        processReceivedResponse(mResultReader);
+        if (mLocalException != null) {
+            mFuture.completeExceptionally(mLocalException);
+        } else if (mRemoteException != null) {
+            mFuture.completeExceptionally(mRemoteException);
+        } else {
+            mFuture.complete(mReturn);
+        }
     }
 
     /**
-     * Wait for this request to finish and take appropriate action
+     * Process the received response, keeping conversion errors
      *
-     * This will throw exceptions as resolved by the error resolver.
+     * Errors are kept as the local exception, so that blocking and
+     * asynchronous callers see them the same way.
+     */
+    void processReceivedResponse(ObjectReader resultReader) {
+        try {
+            processResponse(resultReader);
+        } catch (IOException e) {
+            mLocalException = e;
+        }
+    }
+
+    /**
+     * Arm the timeout of this request
      *
-     * If none occur, the return value of the RPC call is returned.
+     * The request fails with a {@link JsonRpcTimeout} unless it
+     * is done before the timeout expires.
      *
-     * This call will block, limited by the request timeout.
+     * @param timer to schedule the timeout on
+     * @param timeout in milliseconds
+     * @param executor to complete the future on when the timeout expires
      */
-    public boolean waitForCompletion() throws InterruptedException, TimeoutException {
+    public void armTimeout(HashedWheelTimer timer, long timeout, final Executor executor) {
+        HashedWheelTimer.Timeout handle = timer.newTimeout(() -> expire(executor), timeout, TimeUnit.MILLISECONDS);
+        mLock.lock();
+        try {
+            mTimeout = handle;
+            if (isDone()) {
+                handle.cancel();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /** Cancel the timeout once done (called with the lock held) */
+    private void cancelTimeout() {
+        if (mTimeout != null) {
+            mTimeout.cancel();
+        }
+    }
+
+    /**
+     * Wait for this request to finish
+     *
+     * This call will block until a response arrives or
+     * the request fails, which includes its timeout expiring.
+     *
+     * @return true if a response has been received
+     */
+    public boolean waitForCompletion() throws InterruptedException {
         mLock.lock();
         try {
-            // wait until done or timeout is reached
-            long timeout = System.currentTimeMillis() + mClient.getRequestTimeout();
             while (!isDone()) {
-                // recompute time left
-                long timeLeft = timeout - System.currentTimeMillis();
-                // throw on timeout
-                if (timeLeft <= 0) {
-                    throw new TimeoutException();
-                }
-                // wait for state changes
-                mCondition.await(timeLeft, TimeUnit.MILLISECONDS);
+                mCondition.await();
             }
-            return mResponse != null;
+            return mResponse != null || mResponseMessage != null;
         } finally {
             mLock.unlock();
         }
     }
 
+    /**
+     * Process the response, converting results to the given type
+     * @param returnType to convert results to
+     * @throws IOException on conversion errors
+     */
     public void processResponse(Type returnType) throws IOException {
-        if (mResponse.has("result")) {
-            // get the object mapper for conversion
+        ObjectReader resultReader = null;
+        if (returnType != void.class && returnType != Void.class) {
             ObjectMapper mapper = mConnection.getMapper();
-            // create a parser for the result
-            JsonParser returnJsonParser = mapper.treeAsTokens(mResponse.get("result"));
-            // determine type to convert to
-            JavaType returnJavaType = TypeFactory.defaultInstance().constructType(returnType);
-            // parse, convert and return
-            mReturn = mapper.readValue(returnJsonParser, returnJavaType);
+            resultReader = mapper.readerFor(mapper.getTypeFactory().constructType(returnType));
+        }
+        processResponse(resultReader);
+    }
+
+    /**
+     * Process the response, converting results with the given reader
+     * @param resultReader to convert results with (null to ignore results)
+     * @throws IOException on conversion errors
+     */
+    public void processResponse(ObjectReader resultReader) throws IOException {
+        if (mResponseMessage != null) {
+            processMessage(mResponseMessage, resultReader);
+            return;
+        }
+        if (mResponse.has("result")) {
+            if (resultReader != null) {
+                // create a parser for the result
+                JsonParser returnJsonParser = mConnection.getMapper().treeAsTokens(mResponse.get("result"));
+                // parse, convert and return
+                mReturn = resultReader.readValue(returnJsonParser);
+            }
         } else if (mResponse.has("error")
                 && mResponse.get("error") != null
                 && !mResponse.get("error").isNull()) {
@@ -188,6 +524,40 @@ public class JsonRpcClientRequest {
         }
     }
 
+    /** Process a response read from a parser */
+    private void processMessage(JsonRpcMessage response, ObjectReader resultReader) throws IOException {
+        if (response.hasResult()) {
+            if (resultReader == null) {
+                return;
+            }
+            if (response.isResultBound() && response.getResultReader() == resultReader) {
+                // bound while reading
+                mReturn = response.getResultValue();
+            } else if (response.isResultBound()) {
+                // bound for someone else, unusual enough to go through a tree
+                mReturn = resultReader.readValue(mConnection.getMapper().<JsonNode>valueToTree(response.getResultValue()));
+            } else {
+                // replay the buffered tokens
+                JsonParser returnJsonParser = response.getResult().asParser(mConnection.getMapper());
+                try {
+                    mReturn = resultReader.readValue(returnJsonParser);
+                } finally {
+                    returnJsonParser.close();
+                }
+            }
+        } else if (response.getError() != null && !response.getError().isNull()) {
+            // resolve the exception
+            ObjectNode responseNode = getResponse();
+            if (mClient.getExceptionResolver() == null) {
+                mRemoteException = DefaultExceptionResolver.INSTANCE.resolveException(responseNode);
+            } else {
+                mRemoteException = mClient.getExceptionResolver().resolveException(responseNode);
+            }
+        } else {
+            mLocalException = new JsonRpcProtocolError("Invalid response (neither result nor error)");
+        }
+    }
+
     public Object throwOrReturn() throws Throwable {
         if (mLocalException != null) {
             throw mLocalException;
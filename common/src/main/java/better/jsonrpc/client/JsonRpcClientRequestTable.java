@@ -0,0 +1,114 @@
+package better.jsonrpc.client;
+
+import better.jsonrpc.core.JsonRpcMessage;
+import better.jsonrpc.util.LongObjectMap;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Outstanding requests of a client on one connection
+ *
+ * Textual ids live in a concurrent map, numeric ids in
+ * lock-striped primitive maps so that looking them up
+ * neither boxes nor hashes strings.
+ *
+ * Also tells the message reader how to bind results.
+ *
+ * Stripe monitors are only held for map operations, so
+ * virtual threads never park while holding one.
+ */
+class JsonRpcClientRequestTable implements JsonRpcMessage.ResultBinding {
+
+    /** Number of stripes for numeric ids (power of two) */
+    private static final int STRIPES = 16;
+
+    /** Requests with textual ids */
+    private final ConcurrentHashMap<String, JsonRpcClientRequest> mByText =
+            new ConcurrentHashMap<String, JsonRpcClientRequest>();
+
+    /** Requests with numeric ids, striped by id */
+    private final LongObjectMap<JsonRpcClientRequest>[] mByNumber;
+
+    JsonRpcClientRequestTable() {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        LongObjectMap<JsonRpcClientRequest>[] stripes = new LongObjectMap[STRIPES];
+        mByNumber = stripes;
+        for (int i = 0; i < STRIPES; i++) {
+            mByNumber[i] = new LongObjectMap<JsonRpcClientRequest>();
+        }
+    }
+
+    private LongObjectMap<JsonRpcClientRequest> stripe(long id) {
+        return mByNumber[(int) id & (STRIPES - 1)];
+    }
+
+    /** Add the given request */
+    void put(JsonRpcClientRequest request) {
+        if (request.isNumericId()) {
+            long id = request.getNumericId();
+            LongObjectMap<JsonRpcClientRequest> stripe = stripe(id);
+            synchronized (stripe) {
+                stripe.put(id, request);
+            }
+        } else {
+            mByText.put(request.getId(), request);
+        }
+    }
+
+    /** Remove the given request if present */
+    void remove(JsonRpcClientRequest request) {
+        if (request.isNumericId()) {
+            long id = request.getNumericId();
+            LongObjectMap<JsonRpcClientRequest> stripe = stripe(id);
+            synchronized (stripe) {
+                stripe.remove(id, request);
+            }
+        } else {
+            mByText.remove(request.getId(), request);
+        }
+    }
+
+    /** @return the request with the given textual id or null */
+    JsonRpcClientRequest get(String id) {
+        return mByText.get(id);
+    }
+
+    /** @return the request with the given numeric id or null */
+    JsonRpcClientRequest get(long id) {
+        LongObjectMap<JsonRpcClientRequest> stripe = stripe(id);
+        synchronized (stripe) {
+            return stripe.get(id);
+        }
+    }
+
+    /** @return the request with the given id as parsed by ProtocolUtils or null */
+    JsonRpcClientRequest get(Object id) {
+        if (id instanceof String) {
+            return get((String) id);
+        } else if (id instanceof Integer || id instanceof Long) {
+            return get(((Number) id).longValue());
+        }
+        return null;
+    }
+
+    @Override
+    public ObjectReader getResultReader(Object id) {
+        JsonRpcClientRequest request = get(id);
+        return (request == null) ? null : request.getResultReader();
+    }
+
+    /** @return a snapshot of all requests */
+    List<JsonRpcClientRequest> getRequests() {
+        List<JsonRpcClientRequest> requests = new ArrayList<JsonRpcClientRequest>(mByText.values());
+        for (LongObjectMap<JsonRpcClientRequest> stripe : mByNumber) {
+            synchronized (stripe) {
+                stripe.collectValues(requests);
+            }
+        }
+        return requests;
+    }
+
+}
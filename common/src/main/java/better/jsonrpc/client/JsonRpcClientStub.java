@@ -0,0 +1,99 @@
+package better.jsonrpc.client;
+
+import better.jsonrpc.core.JsonRpcTransport;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Optional;
+
+/**
+ * Base class of generated client stubs
+ *
+ * Stubs are generated at build time by the annotation processor
+ * for interfaces annotated with {@link better.jsonrpc.annotations.JsonRpcInterface}.
+ * They implement their interface with plain methods that call
+ * straight into a {@link JsonRpcClientMethod}, so calls involve
+ * neither a {@link java.lang.reflect.Proxy} nor boxing into
+ * reflective method objects.
+ *
+ * The method descriptions are constants of the stub class,
+ * built from what the processor found in the interface, so
+ * the interface is never reflected on.
+ *
+ * Methods of {@link Object} are not forwarded.
+ */
+public abstract class JsonRpcClientStub {
+
+    /** Appended to the binary name of an interface to get the name of its stub */
+    public static final String CLASS_SUFFIX = "_JsonRpcStub";
+
+    /** Stub constructors by interface */
+    private static final ClassValue<Optional<Constructor<?>>> STUBS = new ClassValue<Optional<Constructor<?>>>() {
+        @Override
+        protected Optional<Constructor<?>> computeValue(Class<?> type) {
+            try {
+                Class<?> stub = Class.forName(type.getName() + CLASS_SUFFIX, true, type.getClassLoader());
+                if (!type.isAssignableFrom(stub) || !JsonRpcClientStub.class.isAssignableFrom(stub)) {
+                    return Optional.empty();
+                }
+                return Optional.<Constructor<?>>of(stub.getConstructor(JsonRpcTransport.class, boolean.class));
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                return Optional.empty();
+            }
+        }
+    };
+
+    /** Connection calls go through */
+    private final JsonRpcTransport mConnection;
+
+    /** Whether to send named parameters */
+    private final boolean mUseNamedParams;
+
+    /**
+     * Create a stub
+     * @param connection to call through
+     * @param useNamedParams whether to send named parameters
+     */
+    protected JsonRpcClientStub(JsonRpcTransport connection, boolean useNamedParams) {
+        mConnection = connection;
+        mUseNamedParams = useNamedParams;
+    }
+
+    /** @return the connection calls go through */
+    public JsonRpcTransport getConnection() {
+        return mConnection;
+    }
+
+    /**
+     * Call a method of the stub interface
+     * @param method to call
+     * @param arguments of the call (null if there are none)
+     * @return the result
+     * @throws Throwable as thrown by the remote method
+     */
+    protected final Object callRemote(JsonRpcClientMethod method, Object[] arguments) throws Throwable {
+        return method.invoke(mConnection, arguments, mUseNamedParams);
+    }
+
+    /**
+     * Create the generated stub for the given interface
+     * @param stubInterface to implement
+     * @param connection to call through
+     * @param useNamedParams whether to send named parameters
+     * @return the stub or null if none has been generated
+     */
+    public static <T> T create(Class<T> stubInterface, JsonRpcTransport connection, boolean useNamedParams) {
+        Optional<Constructor<?>> constructor = STUBS.get(stubInterface);
+        if (!constructor.isPresent()) {
+            return null;
+        }
+        try {
+            return stubInterface.cast(constructor.get().newInstance(connection, useNamedParams));
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Could not create stub for " + stubInterface.getName(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create stub for " + stubInterface.getName(), e);
+        }
+    }
+
+}
@@ -1,14 +1,15 @@
 package better.jsonrpc.core;
 
 import better.jsonrpc.client.JsonRpcClientRequest;
+import better.jsonrpc.util.ExecutorUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 /**
  * In-process connections using executors
@@ -33,13 +34,14 @@ public class JsonRpcExecutorTransport extends JsonRpcTransport {
     /**
      * Create a local connected pair of connections
      *
-     * The connections can be used immediately.
+     * The connections can be used immediately. Work runs on a
+     * thread per call, virtual where the runtime supports it.
      *
      * @param mapper to be used for this connection
      * @return list containing exactly 2 connections
      */
     public static List<JsonRpcExecutorTransport> createExecutorConnectionPair(ObjectMapper mapper) {
-        return createExecutorConnectionPair(mapper, Executors.newCachedThreadPool());
+        return createExecutorConnectionPair(mapper, ExecutorUtil.newPerCallExecutor());
     }
 
     /**
@@ -108,6 +110,22 @@ public class JsonRpcExecutorTransport extends JsonRpcTransport {
                 mOtherConnection.handleNotification(notification.getRequest()));
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void sendBatch(List<JsonRpcClientRequest> requests) throws IOException {
+        final ArrayNode batch = getMapper().createArrayNode();
+        for(JsonRpcClientRequest request: requests) {
+            batch.add(request.getRequest());
+        }
+        mExecutor.execute(() -> {
+            try {
+                mOtherConnection.handleMessage(getMapper().treeAsTokens(batch));
+            } catch (IOException e) {
+                LOG.error("Exception handling batch", e);
+            }
+        });
+    }
+
     /** {@inheritDoc} */
     @Override
     public void sendResponse(final ObjectNode response) throws IOException {
@@ -0,0 +1,271 @@
+package better.jsonrpc.core;
+
+import better.jsonrpc.client.JsonRpcClient;
+import better.jsonrpc.client.JsonRpcClientRequest;
+import better.jsonrpc.server.JsonRpcHandlerBinding;
+import better.jsonrpc.server.JsonRpcServer;
+import better.jsonrpc.server.JsonRpcServerCall;
+import better.jsonrpc.server.JsonRpcServerMethod;
+import better.jsonrpc.util.ExecutorUtil;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.ClassUtil;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * In-process connections passing Java objects
+ *
+ * These come in pairs and perform their work on a provided
+ * executor, like {@link JsonRpcExecutorTransport}. Calls are
+ * resolved against the server of the other side using the
+ * Java types of their arguments, and arguments and results
+ * are handed over as objects without ever being serialized.
+ *
+ * Whether values are shared or copied is decided by a
+ * {@link CopyPolicy}. Copies are made through token buffers,
+ * so they never involve text either.
+ *
+ * Calls that can not be resolved this way, requests given
+ * as trees and all errors take the JSON path, so they behave
+ * exactly as with other transports.
+ */
+public class JsonRpcLocalTransport extends JsonRpcTransport {
+
+    /** Decides which values are copied on their way between the sides */
+    public interface CopyPolicy {
+        /**
+         * Determine whether the given value needs to be copied
+         * @param value to be handed over (never null)
+         * @return true to copy, false to share the value
+         */
+        boolean needsCopy(Object value);
+    }
+
+    /** Share all values, for peers that do not modify what they get */
+    public static final CopyPolicy SHARE = value -> false;
+
+    /** Copy all values except those of well-known immutable types */
+    public static final CopyPolicy COPY = value -> !isImmutable(value.getClass());
+
+    /** Protocol version of responses given to the client */
+    private static final String VERSION = "2.0";
+
+    /**
+     * Create a local connected pair of connections sharing values
+     *
+     * The connections can be used immediately.
+     *
+     * @return list containing exactly 2 connections
+     */
+    public static List<JsonRpcLocalTransport> createLocalConnectionPair() {
+        return createLocalConnectionPair(new ObjectMapper(), ExecutorUtil.newPerCallExecutor(), SHARE);
+    }
+
+    /**
+     * Create a local connected pair of connections
+     *
+     * The connections can be used immediately.
+     *
+     * @param mapper to be used for this connection
+     * @param executor to be used for decoupling the connections
+     * @param copyPolicy deciding which values to copy
+     * @return list containing exactly 2 connections
+     */
+    public static List<JsonRpcLocalTransport> createLocalConnectionPair(ObjectMapper mapper, Executor executor,
+                                                                        CopyPolicy copyPolicy) {
+        List<JsonRpcLocalTransport> res = new ArrayList<JsonRpcLocalTransport>(2);
+        JsonRpcLocalTransport a = new JsonRpcLocalTransport(mapper, executor, copyPolicy);
+        JsonRpcLocalTransport b = new JsonRpcLocalTransport(mapper, executor, copyPolicy);
+        a.mOtherConnection = b;
+        b.mOtherConnection = a;
+        res.add(0, a);
+        res.add(1, b);
+        return res;
+    }
+
+    /** Executor used to decouple the connection */
+    private final Executor mExecutor;
+
+    /** Policy for copying values */
+    private final CopyPolicy mCopyPolicy;
+
+    /** The partner connection of this connection */
+    private JsonRpcLocalTransport mOtherConnection;
+
+    private JsonRpcLocalTransport(ObjectMapper mapper, Executor executor, CopyPolicy copyPolicy) {
+        super(mapper);
+        mExecutor = executor;
+        mCopyPolicy = copyPolicy;
+    }
+
+    /** @return the executor used to decouple this connection */
+    public Executor getExecutor() {
+        return mExecutor;
+    }
+
+    /** @return the policy for copying values */
+    public CopyPolicy getCopyPolicy() {
+        return mCopyPolicy;
+    }
+
+    /** @return the partner connection of this connection */
+    public JsonRpcLocalTransport getOtherConnection() {
+        return mOtherConnection;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void sendRequest(final JsonRpcClientRequest request) throws IOException {
+        if (!dispatch(request)) {
+            final ObjectNode node = request.getRequest();
+            mExecutor.execute(() -> mOtherConnection.handleRequest(node));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void sendNotification(final JsonRpcClientRequest notification) throws IOException {
+        if (!dispatch(notification)) {
+            final ObjectNode node = notification.getRequest();
+            mExecutor.execute(() -> mOtherConnection.handleNotification(node));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void sendBatch(List<JsonRpcClientRequest> requests) throws IOException {
+        // batching buys nothing without a wire
+        for (JsonRpcClientRequest request : requests) {
+            if (request.isNotification()) {
+                sendNotification(request);
+            } else {
+                sendRequest(request);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void sendResponse(final ObjectNode response) throws IOException {
+        mExecutor.execute(() -> mOtherConnection.handleResponse(response));
+    }
+
+    /**
+     * Call the server of the other side directly
+     *
+     * Arguments are copied on the calling thread, so callers
+     * may modify them as soon as this returns.
+     *
+     * @return false if the call has to take the JSON path
+     */
+    private boolean dispatch(final JsonRpcClientRequest request) throws IOException {
+        final JsonRpcLocalTransport other = mOtherConnection;
+        String methodName = request.getMethodName();
+        if (methodName == null || !other.isServer()) {
+            return false;
+        }
+        final JsonRpcServer server = other.getServer();
+        JsonRpcServerCall resolved = server.resolveCall(methodName, request.getArguments());
+        if (resolved == null) {
+            return false;
+        }
+        final JsonRpcServerCall call = prepareArguments(resolved, other.getMapper());
+        final JsonRpcHandlerBinding binding = other.getServerBinding();
+        final Object id = request.isNotification() ? null
+                : (request.isNumericId() ? (Object) request.getNumericId() : request.getId());
+        mExecutor.execute(() ->
+                server.execute(binding, VERSION, id, call, other.getMapper())
+                        .thenAccept(response -> {
+                            if (response != null) {
+                                handleLocalResponse(request, call.getMethod(), response);
+                            }
+                        }));
+        return true;
+    }
+
+    /** Copy and convert arguments for the given call as required */
+    private JsonRpcServerCall prepareArguments(JsonRpcServerCall call, ObjectMapper mapper) throws IOException {
+        JsonRpcServerMethod method = call.getMethod();
+        Object[] arguments = call.getArguments();
+        JsonRpcMethodTypes types = null;
+        for (int i = 0; i < arguments.length; i++) {
+            Object argument = arguments[i];
+            if (argument == null) {
+                continue;
+            }
+            Class<?> clazz = method.getParameterClass(i);
+            boolean fits = (clazz.isPrimitive() ? ClassUtil.wrapperType(clazz) : clazz).isInstance(argument);
+            if (!fits || mCopyPolicy.needsCopy(argument)) {
+                if (types == null) {
+                    types = method.getTypes(mapper);
+                }
+                arguments[i] = copy(argument, types.getParameterReader(i), mapper);
+            }
+        }
+        return call;
+    }
+
+    /** Hand a response of the other side to our client */
+    private void handleLocalResponse(JsonRpcClientRequest request, JsonRpcServerMethod method, JsonRpcResponse response) {
+        if (!isClient()) {
+            return;
+        }
+        JsonRpcClient client = getClient();
+        ObjectMapper mapper = getMapper();
+        try {
+            if (response.isError()) {
+                handleResponse(response.toNode(mapper));
+                return;
+            }
+            ObjectReader reader = request.getResultReader();
+            Object result = response.getResult();
+            if (reader != null && result != null) {
+                JavaType returnType = method.getTypes(mOtherConnection.getMapper()).getReturnType();
+                // readers keep their identity for the type they were made for
+                boolean fits = returnType != null && reader.forType(returnType) == reader;
+                if (!fits || mCopyPolicy.needsCopy(result)) {
+                    result = copy(result, reader, mapper);
+                }
+            }
+            client.handleResponse(JsonRpcMessage.boundResult(VERSION, response.getId(), reader, result), this);
+        } catch (Throwable t) {
+            request.handleLocalException(t);
+        }
+    }
+
+    /** Copy the given value through a token buffer */
+    private static Object copy(Object value, ObjectReader reader, ObjectMapper mapper) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(mapper, false);
+        mapper.writeValue(buffer, value);
+        return reader.readValue(buffer.asParser(mapper));
+    }
+
+    /** Determine whether values of the given class are known to be immutable */
+    private static boolean isImmutable(Class<?> clazz) {
+        return clazz == String.class
+                || clazz == Boolean.class
+                || clazz == Character.class
+                || clazz == Byte.class
+                || clazz == Short.class
+                || clazz == Integer.class
+                || clazz == Long.class
+                || clazz == Float.class
+                || clazz == Double.class
+                || clazz == BigInteger.class
+                || clazz == BigDecimal.class
+                || clazz == UUID.class
+                || clazz.isEnum()
+                || clazz.getName().startsWith("java.time.");
+    }
+
+}
@@ -0,0 +1,397 @@
+package better.jsonrpc.core;
+
+import better.jsonrpc.exception.JsonRpcProtocolError;
+import better.jsonrpc.server.JsonRpcServer;
+import better.jsonrpc.server.JsonRpcServerCall;
+import better.jsonrpc.util.ProtocolUtils;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JSON-RPC message envelope read from a streaming parser
+ *
+ * Only the envelope is decoded eagerly. Request parameters are
+ * bound straight into the argument types of the target method
+ * when the method is known by the time they are reached, which
+ * is the case for all well-behaved peers since they send the
+ * method name first. Results of responses are bound the same way
+ * when their id has been read first and a {@link ResultBinding}
+ * knows the expected type. Otherwise parameters and results are
+ * kept as token buffers, which can be replayed without ever
+ * building a tree of nodes.
+ */
+public class JsonRpcMessage {
+
+    /** Source of result readers for binding responses while reading */
+    public interface ResultBinding {
+        /**
+         * Get the reader for the result of the given request
+         * @param id of the request
+         * @return the reader or null to buffer the result
+         */
+        ObjectReader getResultReader(Object id);
+    }
+
+    /** Protocol version (null if not given) */
+    private String mVersion;
+    /** True if a protocol version was given */
+    private boolean mHasVersion;
+
+    /** Request id (may be null) */
+    private Object mId;
+    /** True if an id member was present */
+    private boolean mHasId;
+
+    /** Method name for requests and notifications */
+    private String mMethod;
+
+    /** Buffered parameters (null if absent or bound directly) */
+    private TokenBuffer mParams;
+    /** Call bound directly from the parser (null if buffered) */
+    private JsonRpcServerCall mCall;
+    /** True if parameters were present but could not be bound */
+    private boolean mInvalidParams;
+
+    /** Buffered result of a response (null if bound directly) */
+    private TokenBuffer mResult;
+    /** True if a result member was present */
+    private boolean mHasResult;
+    /** Reader the result was bound with (null if buffered) */
+    private ObjectReader mResultReader;
+    /** Result bound while reading */
+    private Object mResultValue;
+    /** Error binding the result */
+    private IOException mResultError;
+
+    /** Error of a response */
+    private JsonNode mError;
+
+    /**
+     * Create a response with a result that is already bound
+     *
+     * Used by in-process transports to hand over results
+     * without serializing them.
+     *
+     * @param version of the protocol
+     * @param id of the request
+     * @param resultReader the result is meant for
+     * @param result value
+     * @return the message
+     */
+    public static JsonRpcMessage boundResult(String version, Object id, ObjectReader resultReader, Object result) {
+        JsonRpcMessage message = new JsonRpcMessage();
+        message.mVersion = version;
+        message.mHasVersion = version != null;
+        message.mId = id;
+        message.mHasId = true;
+        message.mHasResult = true;
+        message.mResultReader = resultReader;
+        message.mResultValue = result;
+        return message;
+    }
+
+    /**
+     * Read a message from the given parser
+     *
+     * The parser must be positioned on or just before the
+     * start of the message object. When the method has been
+     * read before the parameters and a server is given, the
+     * server will bind them directly.
+     *
+     * @param parser to read from
+     * @param server to bind parameters with (may be null)
+     * @param mapper to use for conversion
+     * @return the message
+     * @throws IOException on parse errors
+     */
+    public static JsonRpcMessage read(JsonParser parser, JsonRpcServer server, ObjectMapper mapper)
+            throws IOException {
+        return read(parser, server, null, mapper);
+    }
+
+    /**
+     * Read a message from the given parser
+     *
+     * Like {@link #read(JsonParser, JsonRpcServer, ObjectMapper)},
+     * additionally binding results of responses directly when
+     * their id comes first and the given binding has a reader.
+     *
+     * @param parser to read from
+     * @param server to bind parameters with (may be null)
+     * @param results to bind results with (may be null)
+     * @param mapper to use for conversion
+     * @return the message
+     * @throws IOException on parse errors
+     */
+    public static JsonRpcMessage read(JsonParser parser, JsonRpcServer server, ResultBinding results, ObjectMapper mapper)
+            throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == null) {
+            token = parser.nextToken();
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonRpcProtocolError("JSON-RPC message is not an object");
+        }
+        JsonRpcMessage message = new JsonRpcMessage();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            token = parser.nextToken();
+            switch (field) {
+                case "jsonrpc":
+                    message.mHasVersion = true;
+                    message.mVersion = (token == JsonToken.VALUE_NULL) ? null : parser.getValueAsString();
+                    break;
+                case "id":
+                    message.mHasId = true;
+                    message.mId = ProtocolUtils.parseId(parser);
+                    break;
+                case "method":
+                    message.mMethod = (token == JsonToken.VALUE_NULL) ? null : parser.getValueAsString();
+                    break;
+                case "params":
+                    message.readParams(parser, server, mapper);
+                    break;
+                case "result":
+                    message.mHasResult = true;
+                    message.readResult(parser, results);
+                    break;
+                case "error":
+                    message.mError = mapper.readTree(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Read a batch of messages from the given parser
+     *
+     * The parser must be positioned on the start of the batch
+     * array. Elements that are not objects are returned as empty
+     * messages, which are neither requests nor responses.
+     *
+     * @param parser to read from
+     * @param server to bind parameters with (may be null)
+     * @param mapper to use for conversion
+     * @return the messages in batch order
+     * @throws IOException on parse errors
+     */
+    public static List<JsonRpcMessage> readBatch(JsonParser parser, JsonRpcServer server, ObjectMapper mapper)
+            throws IOException {
+        return readBatch(parser, server, null, mapper);
+    }
+
+    /**
+     * Read a batch of messages from the given parser
+     * @param parser to read from
+     * @param server to bind parameters with (may be null)
+     * @param results to bind results with (may be null)
+     * @param mapper to use for conversion
+     * @return the messages in batch order
+     * @throws IOException on parse errors
+     * @see #readBatch(JsonParser, JsonRpcServer, ObjectMapper)
+     */
+    public static List<JsonRpcMessage> readBatch(JsonParser parser, JsonRpcServer server, ResultBinding results,
+                                                 ObjectMapper mapper)
+            throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            throw new JsonRpcProtocolError("JSON-RPC batch is not an array");
+        }
+        List<JsonRpcMessage> messages = new ArrayList<JsonRpcMessage>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token == JsonToken.START_OBJECT) {
+                messages.add(read(parser, server, results, mapper));
+            } else {
+                parser.skipChildren();
+                messages.add(new JsonRpcMessage());
+            }
+        }
+        return messages;
+    }
+
+    /** Read the parameters, binding them directly if possible */
+    private void readParams(JsonParser parser, JsonRpcServer server, ObjectMapper mapper) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return;
+        }
+        if (token != JsonToken.START_ARRAY && token != JsonToken.START_OBJECT) {
+            mInvalidParams = true;
+            return;
+        }
+        if (server != null && mMethod != null && server.canBindDirectly(mMethod)) {
+            mCall = server.bindParams(mMethod, parser, mapper);
+            mInvalidParams = (mCall == null);
+        } else {
+            mParams = buffer(parser);
+        }
+    }
+
+    /** Read the result, binding it directly if possible */
+    private void readResult(JsonParser parser, ResultBinding results) throws IOException {
+        ObjectReader reader = null;
+        if (results != null && mHasId) {
+            reader = results.getResultReader(mId);
+        }
+        if (reader == null) {
+            mResult = buffer(parser);
+            return;
+        }
+        mResultReader = reader;
+        JsonToken token = parser.getCurrentToken();
+        JsonStreamContext context = parser.getParsingContext();
+        try {
+            mResultValue = reader.readValue(parser);
+        } catch (JsonMappingException e) {
+            // keep the error for the caller and skip the rest of the value
+            mResultError = e;
+            if (token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT) {
+                JsonStreamContext parent = context.getParent();
+                while (parser.getParsingContext() != parent) {
+                    if (parser.nextToken() == null) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Copy the current value of the parser into a token buffer */
+    private static TokenBuffer buffer(JsonParser parser) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(parser);
+        buffer.copyCurrentStructure(parser);
+        return buffer;
+    }
+
+    /** @return true if this is a request or notification */
+    public boolean isRequest() {
+        return mMethod != null;
+    }
+
+    /** @return true if this is a response */
+    public boolean isResponse() {
+        return mMethod == null && (mHasResult || mError != null);
+    }
+
+    /** @return the protocol version (null if not given) */
+    public String getVersion() {
+        return mVersion;
+    }
+
+    /** @return true if a protocol version was given */
+    public boolean hasVersion() {
+        return mHasVersion;
+    }
+
+    /** @return the id (may be null) */
+    public Object getId() {
+        return mId;
+    }
+
+    /** @return true if an id member was present */
+    public boolean hasId() {
+        return mHasId;
+    }
+
+    /** @return the method name */
+    public String getMethod() {
+        return mMethod;
+    }
+
+    /** @return buffered parameters (null if absent or bound directly) */
+    public TokenBuffer getParams() {
+        return mParams;
+    }
+
+    /** @return the call bound while reading (null if not bound directly) */
+    public JsonRpcServerCall getCall() {
+        return mCall;
+    }
+
+    /** @return true if parameters were present but unusable */
+    public boolean hasInvalidParams() {
+        return mInvalidParams;
+    }
+
+    /** @return true if a result member was present */
+    public boolean hasResult() {
+        return mHasResult;
+    }
+
+    /** @return buffered result of a response (null if bound directly) */
+    public TokenBuffer getResult() {
+        return mResult;
+    }
+
+    /** @return true if the result was bound while reading */
+    public boolean isResultBound() {
+        return mResultReader != null;
+    }
+
+    /** @return the reader the result was bound with (null if buffered) */
+    public ObjectReader getResultReader() {
+        return mResultReader;
+    }
+
+    /**
+     * Get the result bound while reading
+     * @return the result value
+     * @throws IOException if the result could not be bound
+     */
+    public Object getResultValue() throws IOException {
+        if (mResultError != null) {
+            throw mResultError;
+        }
+        return mResultValue;
+    }
+
+    /** @return error of a response */
+    public JsonNode getError() {
+        return mError;
+    }
+
+    /**
+     * Convert a response message to a tree
+     * @param mapper to use for conversion
+     * @return the response as an object node
+     * @throws IOException on conversion errors
+     */
+    public ObjectNode toResponseNode(ObjectMapper mapper) throws IOException {
+        ObjectNode node = mapper.createObjectNode();
+        if (mHasVersion) {
+            node.put("jsonrpc", mVersion);
+        }
+        if (mHasId) {
+            node.set("id", mapper.valueToTree(mId));
+        }
+        if (mHasResult) {
+            if (mResult != null) {
+                JsonParser resultParser = mResult.asParser(mapper);
+                node.set("result", mapper.readTree(resultParser));
+                resultParser.close();
+            } else {
+                node.set("result", mapper.valueToTree(mResultValue));
+            }
+        }
+        if (mError != null) {
+            node.set("error", mError);
+        }
+        return node;
+    }
+
+}
@@ -0,0 +1,260 @@
+package better.jsonrpc.core;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Resolved types of a method for one object mapper
+ *
+ * Holds the parameter and return types of a method as resolved
+ * by the type factory of a specific mapper, together with readers
+ * and writers prepared for them.
+ *
+ * Instances are immutable and may be shared between threads.
+ * They are obtained through a {@link Cache}, which is meant to be
+ * owned by whatever describes the method (server dispatch tables,
+ * client proxies) so that nothing outlives its classes.
+ *
+ * Types come either from reflecting on a method or from a
+ * {@link Resolver}, which generated code implements by
+ * constructing them directly.
+ */
+public final class JsonRpcMethodTypes {
+
+    /** Source of the generic types of a method */
+    public interface Resolver {
+        /**
+         * Construct the types of the method
+         * @param typeFactory to construct them with
+         * @return the parameter types followed by the declared return type
+         */
+        JavaType[] resolve(TypeFactory typeFactory);
+    }
+
+    /** Mapper these types were resolved with */
+    private final ObjectMapper mMapper;
+
+    /** Resolved parameter types */
+    private final JavaType[] mParameterTypes;
+    /** Readers for the parameters */
+    private final ObjectReader[] mParameterReaders;
+
+    /** True if the method returns a {@link CompletionStage} */
+    private final boolean mAsync;
+
+    /** Resolved return type (null for void methods) */
+    private final JavaType mReturnType;
+    /** Reader for results (null for void methods) */
+    private final ObjectReader mResultReader;
+    /** Writer for results */
+    private final ObjectWriter mResultWriter;
+
+    /**
+     * Resolve the types of the given method
+     * @param method to resolve
+     * @param mapper to resolve with
+     */
+    public JsonRpcMethodTypes(Method method, ObjectMapper mapper) {
+        this(resolve(method, mapper.getTypeFactory()), mapper);
+    }
+
+    /**
+     * Resolve the types of a method
+     * @param resolver providing the types
+     * @param mapper to resolve with
+     */
+    public JsonRpcMethodTypes(Resolver resolver, ObjectMapper mapper) {
+        this(resolver.resolve(mapper.getTypeFactory()), mapper);
+    }
+
+    private JsonRpcMethodTypes(JavaType[] types, ObjectMapper mapper) {
+        TypeFactory typeFactory = mapper.getTypeFactory();
+
+        mMapper = mapper;
+
+        // prepare parameters
+        int numParams = types.length - 1;
+        mParameterTypes = Arrays.copyOf(types, numParams);
+        mParameterReaders = new ObjectReader[numParams];
+        for (int i = 0; i < numParams; i++) {
+            mParameterReaders[i] = mapper.readerFor(mParameterTypes[i]);
+        }
+
+        // prepare return type, looking through futures
+        JavaType returnType = types[numParams];
+        mAsync = CompletionStage.class.isAssignableFrom(returnType.getRawClass());
+        if (mAsync) {
+            JavaType[] typeParameters = typeFactory.findTypeParameters(returnType, CompletionStage.class);
+            returnType = (typeParameters.length == 1) ? typeParameters[0] : typeFactory.constructType(Object.class);
+        }
+        Class<?> returnClass = returnType.getRawClass();
+        if (returnClass == void.class || returnClass == Void.class) {
+            mReturnType = null;
+            mResultReader = null;
+            mResultWriter = mapper.writer();
+        } else {
+            mReturnType = returnType;
+            mResultReader = mapper.readerFor(mReturnType);
+            mResultWriter = isStaticallyTyped(mReturnType)
+                    ? mapper.writerFor(mReturnType) : mapper.writer();
+        }
+    }
+
+    /** @return the mapper these types were resolved with */
+    public ObjectMapper getMapper() {
+        return mMapper;
+    }
+
+    /** @return the resolved type of the given parameter */
+    public JavaType getParameterType(int index) {
+        return mParameterTypes[index];
+    }
+
+    /** @return a reader for the given parameter */
+    public ObjectReader getParameterReader(int index) {
+        return mParameterReaders[index];
+    }
+
+    /** @return true if the method returns a {@link CompletionStage} */
+    public boolean isAsync() {
+        return mAsync;
+    }
+
+    /**
+     * Return the resolved return type
+     *
+     * For asynchronous methods this is the type of the value
+     * the returned future completes with.
+     *
+     * @return the type or null for void methods
+     */
+    public JavaType getReturnType() {
+        return mReturnType;
+    }
+
+    /** @return a reader for results or null for void methods */
+    public ObjectReader getResultReader() {
+        return mResultReader;
+    }
+
+    /**
+     * Return a writer for results
+     *
+     * The writer is bound to the declared return type only where
+     * that can not lose information about subclasses, otherwise
+     * the runtime type of each result is used.
+     *
+     * @return the writer
+     */
+    public ObjectWriter getResultWriter() {
+        return mResultWriter;
+    }
+
+    /**
+     * Determine whether the given method is asynchronous
+     * @param method to check
+     * @return true if the method returns a {@link CompletionStage}
+     */
+    public static boolean isAsync(Method method) {
+        return CompletionStage.class.isAssignableFrom(method.getReturnType());
+    }
+
+    /** Construct the parameter and return types of the given method by reflection */
+    private static JavaType[] resolve(Method method, TypeFactory typeFactory) {
+        Type[] genericTypes = method.getGenericParameterTypes();
+        JavaType[] types = new JavaType[genericTypes.length + 1];
+        for (int i = 0; i < genericTypes.length; i++) {
+            types[i] = typeFactory.constructType(genericTypes[i]);
+        }
+        types[genericTypes.length] = typeFactory.constructType(method.getGenericReturnType());
+        return types;
+    }
+
+    /** Determine whether values of the given type can be written using the declared type */
+    private static boolean isStaticallyTyped(JavaType type) {
+        Class<?> raw = type.getRawClass();
+        return type.isPrimitive()
+                || type.isContainerType()
+                || (Modifier.isFinal(raw.getModifiers()) && !type.hasGenericTypes());
+    }
+
+    /**
+     * Cache of resolved types for one method
+     *
+     * Keeps the types for the few most recently used mappers,
+     * which in practice is almost always a single one. Lookups
+     * are lock-free, updates copy the small entry array.
+     *
+     * The cache holds only the resolver and its own entries, so it
+     * lives exactly as long as whoever owns it.
+     */
+    public static final class Cache {
+
+        /** Maximum number of mappers to remember */
+        private static final int MAX_ENTRIES = 4;
+
+        private static final JsonRpcMethodTypes[] NO_ENTRIES = new JsonRpcMethodTypes[0];
+
+        /** Source of the types */
+        private final Resolver mResolver;
+
+        /** Entries, most recent first */
+        private volatile JsonRpcMethodTypes[] mEntries = NO_ENTRIES;
+
+        /**
+         * Create a cache for the given method
+         * @param method to resolve
+         */
+        public Cache(Method method) {
+            this(typeFactory -> resolve(method, typeFactory));
+        }
+
+        /**
+         * Create a cache for the types provided by the given resolver
+         * @param resolver providing the types
+         */
+        public Cache(Resolver resolver) {
+            mResolver = resolver;
+        }
+
+        /**
+         * Get the types of the method as seen by the given mapper
+         * @param mapper to resolve with
+         * @return the resolved types
+         */
+        public JsonRpcMethodTypes get(ObjectMapper mapper) {
+            JsonRpcMethodTypes[] entries = mEntries;
+            for (JsonRpcMethodTypes entry : entries) {
+                if (entry.mMapper == mapper) {
+                    return entry;
+                }
+            }
+            JsonRpcMethodTypes types = new JsonRpcMethodTypes(mResolver, mapper);
+            synchronized (this) {
+                entries = mEntries;
+                for (JsonRpcMethodTypes entry : entries) {
+                    if (entry.mMapper == mapper) {
+                        return entry;
+                    }
+                }
+                int count = Math.min(entries.length, MAX_ENTRIES - 1);
+                JsonRpcMethodTypes[] updated = new JsonRpcMethodTypes[count + 1];
+                updated[0] = types;
+                System.arraycopy(entries, 0, updated, 1, count);
+                mEntries = updated;
+            }
+            return types;
+        }
+
+    }
+
+}
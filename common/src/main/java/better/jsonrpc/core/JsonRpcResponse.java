@@ -0,0 +1,141 @@
+package better.jsonrpc.core;
+
+import better.jsonrpc.util.ProtocolUtils;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+
+/**
+ * JSON-RPC response produced by the server
+ *
+ * Keeps the result as a plain Java object together with the
+ * writer for its type, so that transports can serialize the
+ * whole response in one go without building a tree first.
+ *
+ * Transports that can only deal with trees may use
+ * {@link #toNode(ObjectMapper)} instead.
+ */
+public class JsonRpcResponse {
+
+    /** Protocol version */
+    private final String mVersion;
+    /** Request id */
+    private final Object mId;
+
+    /** Result value (for success responses) */
+    private final Object mResult;
+    /** Writer for the result (for success responses) */
+    private final ObjectWriter mResultWriter;
+
+    /** True if this is an error response */
+    private final boolean mIsError;
+    /** Error code */
+    private final int mErrorCode;
+    /** Error message */
+    private final String mErrorMessage;
+    /** Error data (may be null) */
+    private final Object mErrorData;
+
+    private JsonRpcResponse(String version, Object id,
+                            Object result, ObjectWriter resultWriter,
+                            boolean isError, int errorCode, String errorMessage, Object errorData) {
+        mVersion = version;
+        mId = id;
+        mResult = result;
+        mResultWriter = resultWriter;
+        mIsError = isError;
+        mErrorCode = errorCode;
+        mErrorMessage = errorMessage;
+        mErrorData = errorData;
+    }
+
+    /**
+     * Create a success response
+     * @param version the jsonrpc string
+     * @param id the id
+     * @param result the result value
+     * @param resultWriter writer to serialize the result with
+     * @return the response
+     */
+    public static JsonRpcResponse success(String version, Object id, Object result, ObjectWriter resultWriter) {
+        return new JsonRpcResponse(version, id, result, resultWriter, false, 0, null, null);
+    }
+
+    /**
+     * Create an error response
+     * @param version the jsonrpc string
+     * @param id the id
+     * @param code the error code
+     * @param message the error message
+     * @param data the error data (if any)
+     * @return the response
+     */
+    public static JsonRpcResponse error(String version, Object id, int code, String message, Object data) {
+        return new JsonRpcResponse(version, id, null, null, true, code, message, data);
+    }
+
+    /** @return the protocol version */
+    public String getVersion() {
+        return mVersion;
+    }
+
+    /** @return the request id */
+    public Object getId() {
+        return mId;
+    }
+
+    /** @return true if this is an error response */
+    public boolean isError() {
+        return mIsError;
+    }
+
+    /** @return the result value */
+    public Object getResult() {
+        return mResult;
+    }
+
+    /**
+     * Write this response to the given generator
+     * @param generator to write to
+     * @param mapper used for error data
+     * @throws IOException on write errors
+     */
+    public void writeTo(JsonGenerator generator, ObjectMapper mapper) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("jsonrpc", mVersion);
+        ProtocolUtils.writeId(generator, mId);
+        if (mIsError) {
+            generator.writeObjectFieldStart("error");
+            generator.writeNumberField("code", mErrorCode);
+            generator.writeStringField("message", mErrorMessage);
+            if (mErrorData != null) {
+                generator.writeFieldName("data");
+                mapper.writeValue(generator, mErrorData);
+            }
+            generator.writeEndObject();
+        } else {
+            generator.writeFieldName("result");
+            mResultWriter.writeValue(generator, mResult);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Convert this response to a tree
+     * @param mapper to use for conversion
+     * @return the response as an object node
+     */
+    public ObjectNode toNode(ObjectMapper mapper) {
+        if (mIsError) {
+            return ProtocolUtils.createErrorResponse(
+                    mapper, mVersion, mId, mErrorCode, mErrorMessage, mErrorData);
+        } else {
+            return ProtocolUtils.createSuccessResponse(
+                    mapper, mVersion, mId, mapper.valueToTree(mResult));
+        }
+    }
+
+}
@@ -0,0 +1,598 @@
+package better.jsonrpc.core;
+
+import better.jsonrpc.client.JsonRpcClientRequest;
+import better.jsonrpc.util.ExecutorUtil;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Connection over a pair of byte streams
+ *
+ * Suits pipes to and from child processes as well as stdio.
+ * Messages are framed either by {@code Content-Length} headers
+ * as in the language server protocol or by newlines.
+ *
+ * A reader thread parses messages straight off the input into
+ * token buffers, which are handled on the dispatch executor.
+ * A writer thread writes queued messages and flushes once it
+ * runs out of them, so bursts cost a single flush.
+ *
+ * Both streams are closed on disconnect; wrap them in
+ * {@link better.jsonrpc.util.NoCloseInputStream} and
+ * {@link better.jsonrpc.util.NoCloseOutputStream} to keep
+ * them open, for example when using stdio.
+ */
+public class JsonRpcStreamTransport extends JsonRpcConnectedTransport {
+
+    /** Ways of delimiting messages */
+    public enum Framing {
+        /** {@code Content-Length} header, blank line, then the message */
+        CONTENT_LENGTH,
+        /** One message per line */
+        NEWLINE
+    }
+
+    private static final String CONTENT_LENGTH_HEADER = "content-length";
+
+    /** Limit for the length of header lines */
+    private static final int MAX_HEADER_LINE = 1024;
+
+    /** Queued to stop the writer */
+    private static final byte[] END_OF_OUTPUT = new byte[0];
+
+    /** Framing used in both directions */
+    private final Framing mFraming;
+
+    private final InputStream mInput;
+
+    private final OutputStream mOutput;
+
+    /** Executor handling received messages */
+    private final Executor mDispatcher;
+
+    /** Whether we created the dispatcher and shut it down */
+    private final boolean mOwnsDispatcher;
+
+    /** Messages waiting for the writer */
+    private final LinkedBlockingQueue<byte[]> mOutbound = new LinkedBlockingQueue<byte[]>();
+
+    private final AtomicBoolean mStarted = new AtomicBoolean();
+
+    private final AtomicBoolean mClosed = new AtomicBoolean();
+
+    /**
+     * Create a connection handling messages on a thread each
+     * @param mapper to be used for this connection
+     * @param input to read messages from
+     * @param output to write messages to
+     * @param framing of messages in both directions
+     */
+    public JsonRpcStreamTransport(ObjectMapper mapper, InputStream input, OutputStream output, Framing framing) {
+        this(mapper, input, output, framing, null);
+    }
+
+    /**
+     * Create a connection
+     *
+     * Passing {@code Runnable::run} as dispatcher handles messages
+     * on the reader thread in the order they arrive.
+     *
+     * @param mapper to be used for this connection
+     * @param input to read messages from
+     * @param output to write messages to
+     * @param framing of messages in both directions
+     * @param dispatcher executor handling received messages (null for a thread per message)
+     */
+    public JsonRpcStreamTransport(ObjectMapper mapper, InputStream input, OutputStream output, Framing framing,
+                                  Executor dispatcher) {
+        super(mapper, false);
+        mFraming = framing;
+        mInput = new BufferedInputStream(input);
+        mOutput = output;
+        mOwnsDispatcher = dispatcher == null;
+        mDispatcher = mOwnsDispatcher ? ExecutorUtil.newPerCallExecutor() : dispatcher;
+    }
+
+    public Framing getFraming() {
+        return mFraming;
+    }
+
+    public boolean isConnected() {
+        return mStarted.get() && !mClosed.get();
+    }
+
+    /**
+     * Start reading and writing
+     *
+     * Bind client and server before, so no message is missed.
+     */
+    public void start() {
+        if (!mStarted.compareAndSet(false, true)) {
+            throw new IllegalStateException("Connection has been started already");
+        }
+        Thread reader = new Thread(this::readLoop, "jsonrpc-stream-reader-" + mTransportId);
+        reader.setDaemon(true);
+        Thread writer = new Thread(this::writeLoop, "jsonrpc-stream-writer-" + mTransportId);
+        writer.setDaemon(true);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("[" + mTransportId + "] connection open");
+        }
+        onOpen();
+        writer.start();
+        reader.start();
+    }
+
+    /** Close the connection after writing what has been sent */
+    public void disconnect() {
+        close();
+    }
+
+    private void close() {
+        if (!mClosed.compareAndSet(false, true)) {
+            return;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("[" + mTransportId + "] connection close");
+        }
+        // the writer closes the output once it gets here
+        mOutbound.add(END_OF_OUTPUT);
+        try {
+            mInput.close();
+        } catch (IOException e) {
+            LOG.debug("Exception closing input", e);
+        }
+        if (mOwnsDispatcher) {
+            ((ExecutorService) mDispatcher).shutdown();
+        }
+        onClose();
+    }
+
+    /** Read messages until the input ends */
+    private void readLoop() {
+        try {
+            if (mFraming == Framing.CONTENT_LENGTH) {
+                readFramed();
+            } else {
+                readLines();
+            }
+        } catch (IOException e) {
+            if (!mClosed.get()) {
+                LOG.error("Exception reading from stream", e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /** Read messages preceded by headers */
+    private void readFramed() throws IOException {
+        JsonFactory factory = getMapper().getFactory();
+        long length;
+        while ((length = readHeaders()) >= 0) {
+            LimitedInputStream body = new LimitedInputStream(mInput, length);
+            try {
+                JsonParser parser = factory.createParser(body);
+                try {
+                    if (parser.nextToken() != null) {
+                        dispatch(parser);
+                    }
+                } finally {
+                    parser.close();
+                }
+            } catch (JsonProcessingException e) {
+                // the frame is lost, the stream is not
+                LOG.error("Exception parsing message", e);
+            }
+            body.skipRemaining();
+        }
+    }
+
+    /** Read messages separated by newlines */
+    private void readLines() throws IOException {
+        JsonFactory factory = getMapper().getFactory();
+        LineInputStream line;
+        do {
+            line = new LineInputStream(mInput);
+            try {
+                JsonParser parser = factory.createParser(line);
+                try {
+                    while (parser.nextToken() != null) {
+                        dispatch(parser);
+                    }
+                } finally {
+                    parser.close();
+                }
+            } catch (JsonProcessingException e) {
+                // the line is lost, the stream is not
+                LOG.error("Exception parsing message", e);
+            }
+            line.skipRemaining();
+        } while (!line.isEndOfInput());
+    }
+
+    /**
+     * Read headers up to the blank line
+     * @return the content length or -1 at the end of the input
+     */
+    private long readHeaders() throws IOException {
+        long length = -1;
+        boolean any = false;
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            line.setLength(0);
+            if (!readLine(line)) {
+                if (any) {
+                    throw new IOException("Input ended within headers");
+                }
+                return -1;
+            }
+            if (line.length() == 0) {
+                if (!any) {
+                    // tolerate blank lines between messages
+                    continue;
+                }
+                if (length < 0) {
+                    throw new IOException("Message without Content-Length header");
+                }
+                return length;
+            }
+            any = true;
+            int colon = line.indexOf(":");
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase(CONTENT_LENGTH_HEADER)) {
+                try {
+                    length = Long.parseLong(line.substring(colon + 1).trim());
+                } catch (NumberFormatException e) {
+                    length = -1;
+                }
+                if (length < 0) {
+                    throw new IOException("Invalid header \"" + line + "\"");
+                }
+            }
+        }
+    }
+
+    /** @return false if the input ended before the line started */
+    private boolean readLine(StringBuilder line) throws IOException {
+        int c;
+        while ((c = mInput.read()) != '\n') {
+            if (c < 0) {
+                if (line.length() == 0) {
+                    return false;
+                }
+                throw new IOException("Input ended within headers");
+            }
+            if (c != '\r') {
+                if (line.length() >= MAX_HEADER_LINE) {
+                    throw new IOException("Header line too long");
+                }
+                line.append((char) c);
+            }
+        }
+        return true;
+    }
+
+    /** Copy the message at the parser and hand it to the dispatcher */
+    private void dispatch(JsonParser parser) throws IOException {
+        final TokenBuffer message = new TokenBuffer(parser);
+        message.copyCurrentStructure(parser);
+        try {
+            mDispatcher.execute(() -> handleBuffered(message));
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Dropping message, dispatcher is shut down");
+        }
+    }
+
+    private void handleBuffered(TokenBuffer message) {
+        try {
+            JsonParser parser = message.asParser(getMapper());
+            try {
+                handleMessage(parser);
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            LOG.error("Exception handling message", e);
+        }
+    }
+
+    /** Write queued messages, flushing whenever the queue runs dry */
+    private void writeLoop() {
+        try {
+            while (true) {
+                byte[] data = mOutbound.take();
+                while (data != null && data != END_OF_OUTPUT) {
+                    mOutput.write(data);
+                    data = mOutbound.poll();
+                }
+                mOutput.flush();
+                if (data == END_OF_OUTPUT) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            if (!mClosed.get()) {
+                LOG.error("Exception writing to stream", e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                mOutput.close();
+            } catch (IOException e) {
+                LOG.debug("Exception closing output", e);
+            }
+            close();
+        }
+    }
+
+    @Override
+    public void sendRequest(final JsonRpcClientRequest request) throws IOException {
+        transmit(request::writeTo);
+    }
+
+    @Override
+    public void sendNotification(final JsonRpcClientRequest notification) throws IOException {
+        transmit(notification::writeTo);
+    }
+
+    @Override
+    public void sendBatch(final List<JsonRpcClientRequest> requests) throws IOException {
+        transmit(generator -> {
+            generator.writeStartArray();
+            for (JsonRpcClientRequest request : requests) {
+                request.writeTo(generator);
+            }
+            generator.writeEndArray();
+        });
+    }
+
+    @Override
+    public void sendResponse(final ObjectNode response) throws IOException {
+        transmit(generator -> getMapper().writeTree(generator, response));
+    }
+
+    @Override
+    public void sendResponse(final JsonRpcResponse response) throws IOException {
+        transmit(generator -> response.writeTo(generator, getMapper()));
+    }
+
+    @Override
+    public void sendBatchResponse(final List<JsonRpcResponse> responses) throws IOException {
+        transmit(generator -> {
+            generator.writeStartArray();
+            for (JsonRpcResponse response : responses) {
+                response.writeTo(generator, getMapper());
+            }
+            generator.writeEndArray();
+        });
+    }
+
+    /** Content written directly to a generator */
+    private interface Content {
+        void writeTo(JsonGenerator generator) throws IOException;
+    }
+
+    /** Serialize the given content into a frame and queue it for the writer */
+    private void transmit(Content content) throws IOException {
+        if (!isConnected()) {
+            throw new IOException("Trying to transmit data on a closed transport");
+        }
+        JsonFactory factory = getMapper().getFactory();
+        ByteArrayBuilder buffer = new ByteArrayBuilder(factory._getBufferRecycler());
+        JsonGenerator generator = factory.createGenerator(buffer);
+        try {
+            content.writeTo(generator);
+        } finally {
+            generator.close();
+        }
+        byte[] body = buffer.toByteArray();
+        buffer.release();
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("[" + mTransportId + "] transmitting " + body.length + " bytes");
+        }
+        byte[] frame;
+        if (mFraming == Framing.CONTENT_LENGTH) {
+            byte[] header = ("Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            frame = new byte[header.length + body.length];
+            System.arraycopy(header, 0, frame, 0, header.length);
+            System.arraycopy(body, 0, frame, header.length, body.length);
+        } else {
+            frame = new byte[body.length + 1];
+            System.arraycopy(body, 0, frame, 0, body.length);
+            frame[body.length] = '\n';
+        }
+        mOutbound.add(frame);
+    }
+
+    /** Stream ending after a given number of bytes of another */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long mRemaining;
+
+        LimitedInputStream(InputStream in, long length) {
+            super(in);
+            mRemaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int c = in.read();
+            if (c < 0) {
+                throw new IOException("Input ended within message");
+            }
+            mRemaining--;
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int count = in.read(b, off, (int) Math.min(len, mRemaining));
+            if (count < 0) {
+                throw new IOException("Input ended within message");
+            }
+            mRemaining -= count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, mRemaining));
+            mRemaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), mRemaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // the underlying stream carries on
+        }
+
+        /** Consume what the parser left of the message */
+        void skipRemaining() throws IOException {
+            byte[] scratch = null;
+            while (mRemaining > 0) {
+                if (scratch == null) {
+                    scratch = new byte[(int) Math.min(mRemaining, 4096)];
+                }
+                read(scratch, 0, (int) Math.min(scratch.length, mRemaining));
+            }
+        }
+    }
+
+    /** Stream ending at the next newline of a buffered stream, which it consumes */
+    private static final class LineInputStream extends FilterInputStream {
+        private boolean mEndOfLine;
+        private boolean mEndOfInput;
+
+        LineInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mEndOfLine) {
+                return -1;
+            }
+            int c = in.read();
+            if (c < 0) {
+                mEndOfInput = true;
+            }
+            if (c < 0 || c == '\n') {
+                mEndOfLine = true;
+                return -1;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (mEndOfLine) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            // read ahead, then put back what follows the newline
+            in.mark(len);
+            int count = in.read(b, off, len);
+            if (count < 0) {
+                mEndOfInput = true;
+                mEndOfLine = true;
+                return -1;
+            }
+            for (int i = 0; i < count; i++) {
+                if (b[off + i] == '\n') {
+                    in.reset();
+                    skipFully(i + 1);
+                    mEndOfLine = true;
+                    return i > 0 ? i : -1;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && read() >= 0) {
+                skipped++;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // the underlying stream carries on
+        }
+
+        /** @return true if the input ended instead of a newline */
+        boolean isEndOfInput() {
+            return mEndOfInput;
+        }
+
+        /** Consume what the parser left of the line */
+        void skipRemaining() throws IOException {
+            byte[] scratch = null;
+            while (!mEndOfLine) {
+                if (scratch == null) {
+                    scratch = new byte[4096];
+                }
+                read(scratch, 0, scratch.length);
+            }
+        }
+
+        private void skipFully(long n) throws IOException {
+            while (n > 0) {
+                long skipped = in.skip(n);
+                if (skipped <= 0) {
+                    throw new IOException("Input ended within line");
+                }
+                n -= skipped;
+            }
+        }
+    }
+
+}
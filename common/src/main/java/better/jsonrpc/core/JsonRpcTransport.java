@@ -2,14 +2,20 @@ package better.jsonrpc.core;
 
 import better.jsonrpc.client.JsonRpcClient;
 import better.jsonrpc.client.JsonRpcClientRequest;
+import better.jsonrpc.client.JsonRpcClientStub;
+import better.jsonrpc.server.JsonRpcHandlerBinding;
 import better.jsonrpc.server.JsonRpcServer;
 import better.jsonrpc.util.ProxyUtil;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -45,8 +51,8 @@ public abstract class JsonRpcTransport {
     /** Client instance attached to this transport */
     private JsonRpcClient mClient;
 
-    /** Handler instance for this transport */
-    private Object mServerHandler;
+    /** Handler binding for this transport */
+    private JsonRpcHandlerBinding mServerBinding;
 
 
     /** Main constructor */
@@ -92,8 +98,12 @@ public abstract class JsonRpcTransport {
         mClient.bindConnection(this);
     }
 
-    /** Create and return a client proxy */
+    /** Create and return a client proxy, preferring a generated stub */
     public <T> T makeProxy(Class<T> clazz) {
+        T stub = JsonRpcClientStub.create(clazz, this, false);
+        if (stub != null) {
+            return stub;
+        }
         return ProxyUtil.createClientProxy(clazz.getClassLoader(), clazz, this);
     }
 
@@ -121,8 +131,8 @@ public abstract class JsonRpcTransport {
             LOG.debug("[" + mTransportId + "] binding server");
         }
 
+        mServerBinding = server.bind(handler);
         mServer = server;
-        mServerHandler = handler;
     }
 
 
@@ -131,14 +141,114 @@ public abstract class JsonRpcTransport {
     /** Sends a notification through the connection */
 	abstract public void sendNotification(JsonRpcClientRequest request) throws IOException;
 
+    /**
+     * Sends a batch of requests and notifications through the connection
+     *
+     * The default implementation sends them one by one.
+     * Transports should override this to send a single array,
+     * the responses may then arrive as an array as well.
+     */
+    public void sendBatch(List<JsonRpcClientRequest> requests) throws IOException {
+        for(JsonRpcClientRequest request: requests) {
+            if(request.isNotification()) {
+                sendNotification(request);
+            } else {
+                sendRequest(request);
+            }
+        }
+    }
+
     /** Sends a response through the connection */
     abstract public void sendResponse(ObjectNode response) throws IOException;
 
+    /**
+     * Sends a server response through the connection
+     *
+     * The default implementation converts the response to a tree.
+     * Transports should override this to write it directly.
+     */
+    public void sendResponse(JsonRpcResponse response) throws IOException {
+        sendResponse(response.toNode(mMapper));
+    }
+
+    /**
+     * Sends the responses to a batch through the connection
+     *
+     * The default implementation sends them one by one, which
+     * only works for peers that match responses by id.
+     * Transports should override this to send a single array.
+     */
+    public void sendBatchResponse(List<JsonRpcResponse> responses) throws IOException {
+        for(JsonRpcResponse response: responses) {
+            sendResponse(response);
+        }
+    }
+
+    /** @return the binding of the server handler (null if there is no server) */
+    protected JsonRpcHandlerBinding getServerBinding() {
+        return mServerBinding;
+    }
+
+    /**
+     * Dispatch an incoming message read from a parser (for subclasses to call)
+     *
+     * Requests and notifications are handled while parsing so
+     * that their parameters can be bound without building a tree.
+     *
+     * @param parser positioned on or before the message
+     * @throws IOException on parse errors
+     */
+    protected void handleMessage(JsonParser parser) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if(token == null) {
+            token = parser.nextToken();
+        }
+        JsonRpcMessage.ResultBinding results = (mClient != null) ? mClient.getResultBinding(this) : null;
+        if(token == JsonToken.START_ARRAY) {
+            handleBatch(JsonRpcMessage.readBatch(parser, mServer, results, mMapper));
+            return;
+        }
+        JsonRpcMessage message = JsonRpcMessage.read(parser, mServer, results, mMapper);
+        if(message.isRequest()) {
+            if(mServer != null) {
+                try {
+                    mServer.handleRequest(mServerBinding, message, this);
+                } catch (Throwable throwable) {
+                    LOG.error("Exception handling request", throwable);
+                }
+            }
+        } else if(message.isResponse() && message.hasId()) {
+            handleResponse(message);
+        }
+    }
+
+    /** Dispatch the messages of an incoming batch */
+    private void handleBatch(List<JsonRpcMessage> messages) throws IOException {
+        List<JsonRpcMessage> requests = new ArrayList<JsonRpcMessage>(messages.size());
+        for(JsonRpcMessage message: messages) {
+            if(message.isResponse()) {
+                if(message.hasId()) {
+                    handleResponse(message);
+                }
+            } else {
+                requests.add(message);
+            }
+        }
+        // empty batches are answered by the server as well
+        if(mServer != null && (!requests.isEmpty() || messages.isEmpty())) {
+            try {
+                mServer.handleBatch(mServerBinding, requests, this);
+            } catch (Throwable throwable) {
+                LOG.error("Exception handling batch", throwable);
+            }
+        }
+    }
+
     /** Dispatch an incoming request (for subclasses to call) */
 	protected void handleRequest(ObjectNode request) {
 		if(mServer != null) {
             try {
-                mServer.handleRequest(mServerHandler, request, this);
+                mServer.handleRequest(mServerBinding, request, this);
             } catch (Throwable throwable) {
                 LOG.error("Exception handling request", throwable);
             }
@@ -156,11 +266,22 @@ public abstract class JsonRpcTransport {
 		}
 	}
 
+    /** Dispatch an incoming response read from a parser */
+    private void handleResponse(JsonRpcMessage response) {
+        if(mClient != null) {
+            try {
+                mClient.handleResponse(response, this);
+            } catch (Throwable throwable) {
+                LOG.error("Exception handling response", throwable);
+            }
+        }
+    }
+
     /** Dispatch an incoming notification (for subclasses to call) */
 	protected void handleNotification(ObjectNode notification) {
 		if(mServer != null) {
             try {
-                mServer.handleRequest(mServerHandler, notification, this);
+                mServer.handleRequest(mServerBinding, notification, this);
             } catch (Throwable throwable) {
                 LOG.error("Exception handling notification", throwable);
             }
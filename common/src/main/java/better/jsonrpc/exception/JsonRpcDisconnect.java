@@ -1,9 +1,16 @@
 package better.jsonrpc.exception;
 
+/**
+ * Thrown to callers whose request was aborted by a disconnect
+ *
+ * Carries no stack trace, since it is raised for many
+ * requests at once and the trace would only show the
+ * thread that noticed the disconnect.
+ */
 public class JsonRpcDisconnect extends JsonRpcException {
 
     public JsonRpcDisconnect() {
-        super("JSON-RPC request aborted due to disconnect");
+        super("JSON-RPC request aborted due to disconnect", false);
     }
 
 }
@@ -18,6 +18,21 @@ public class JsonRpcException extends RuntimeException {
         this.data = null;
     }
 
+    /**
+     * Creates an exception for local failures
+     *
+     * Without a stack trace these are cheap enough to be created
+     * in bulk, which matters when many requests fail at once.
+     *
+     * @param message the message
+     * @param writableStackTrace false to omit the stack trace
+     */
+    protected JsonRpcException(String message, boolean writableStackTrace) {
+        super(message, null, true, writableStackTrace);
+        this.code = -1;
+        this.data = null;
+    }
+
 	/**
 	 * Creates an exception
 	 * @param code the code from the server
@@ -1,9 +1,14 @@
 package better.jsonrpc.exception;
 
+/**
+ * Thrown to callers whose request timed out
+ *
+ * Raised on the timer thread, so there is no useful stack trace.
+ */
 public class JsonRpcTimeout extends JsonRpcException {
 
     public JsonRpcTimeout() {
-        super("JSON-RPC request timed out");
+        super("JSON-RPC request timed out", false);
     }
 
 }
@@ -16,6 +16,10 @@ public interface ErrorResolver {
 	 * the given {@code arguments}.  If the error can not
 	 * be resolved then null is returned.
 	 *
+	 * Arguments are bound without building nodes, so the
+	 * given {@code arguments} are converted back from the
+	 * bound Java objects when an error is resolved.
+	 *
 	 * @param t the {@link Throwable}
 	 * @param method the {@link Method} that threw the {@link Throwable}
 	 * @param arguments the {@code arguments} that were passed to the {@link Method}
@@ -0,0 +1,170 @@
+package better.jsonrpc.nio;
+
+import better.jsonrpc.util.UnixSocketUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Accepts NIO connections on a listening socket
+ *
+ * Each accepted connection is passed to the listener before
+ * it starts reading, so that the listener can bind a server
+ * or client to it without missing messages.
+ */
+public class JsonRpcNioAcceptor implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsonRpcNioAcceptor.class);
+
+    /** Interface of acceptor listeners */
+    public interface Listener {
+        void onAccept(JsonRpcNioTransport connection);
+    }
+
+    /** Pool for accepting and for the accepted connections */
+    private final JsonRpcNioSelectorPool mPool;
+
+    /** Mapper for accepted connections */
+    private final ObjectMapper mMapper;
+
+    /** Listener for accepted connections */
+    private final Listener mListener;
+
+    /** Loop accepting connections */
+    private final JsonRpcNioSelectorPool.Loop mLoop;
+
+    /** The listening channel (null until bound) */
+    private volatile ServerSocketChannel mChannel;
+
+    /** Socket file created by binding (null for other sockets) */
+    private volatile Path mSocketFile;
+
+    /**
+     * Create an unbound acceptor
+     * @param pool for accepting and for the accepted connections
+     * @param mapper for accepted connections
+     * @param listener for accepted connections
+     */
+    public JsonRpcNioAcceptor(JsonRpcNioSelectorPool pool, ObjectMapper mapper, Listener listener) {
+        mPool = pool;
+        mMapper = mapper;
+        mListener = listener;
+        mLoop = pool.nextLoop();
+    }
+
+    /**
+     * Start listening on the given address
+     *
+     * Unix domain socket addresses (see {@link UnixSocketUtil})
+     * are supported on Java 16 and later. Their socket file must
+     * not exist yet and is removed again by {@link #close()}.
+     *
+     * @param address to listen on, may have port 0
+     * @return the address actually listened on
+     * @throws IOException if binding fails
+     */
+    public SocketAddress bind(SocketAddress address) throws IOException {
+        if (mChannel != null) {
+            throw new IllegalStateException("Acceptor has been bound already");
+        }
+        boolean unix = UnixSocketUtil.isUnixAddress(address);
+        final ServerSocketChannel channel = unix ? UnixSocketUtil.openServerChannel() : ServerSocketChannel.open();
+        try {
+            channel.bind(address);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        mSocketFile = unix ? UnixSocketUtil.getPath(address) : null;
+        mChannel = channel;
+        mLoop.execute(() -> {
+            try {
+                channel.register(mLoop.getSelector(), SelectionKey.OP_ACCEPT, new Handler());
+            } catch (IOException e) {
+                LOG.error("Could not register acceptor", e);
+                close();
+            }
+        });
+        return channel.getLocalAddress();
+    }
+
+    /** @return the address listened on or null if not bound */
+    public SocketAddress getLocalAddress() {
+        ServerSocketChannel channel = mChannel;
+        try {
+            return (channel == null) ? null : channel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Stop listening, accepted connections stay open */
+    @Override
+    public void close() {
+        ServerSocketChannel channel = mChannel;
+        if (channel != null && channel.isOpen()) {
+            try {
+                channel.close();
+                if (mSocketFile != null) {
+                    Files.deleteIfExists(mSocketFile);
+                }
+            } catch (IOException e) {
+                LOG.debug("Exception closing acceptor", e);
+            }
+        }
+    }
+
+    /** Accept all pending connections (loop thread) */
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = mChannel.accept();
+            } catch (IOException e) {
+                LOG.error("Exception accepting connection", e);
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            JsonRpcNioTransport connection = new JsonRpcNioTransport(mMapper, mPool);
+            try {
+                mListener.onAccept(connection);
+                connection.open(channel);
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Exception opening accepted connection", e);
+                try {
+                    channel.close();
+                } catch (IOException ce) {
+                    LOG.debug("Exception closing channel", ce);
+                }
+            }
+        }
+    }
+
+    /** Attachment of the selection key */
+    private final class Handler implements JsonRpcNioSelectorPool.Handler {
+        @Override
+        public void handleReady(SelectionKey key) {
+            if (key.isAcceptable()) {
+                accept();
+            }
+        }
+
+        @Override
+        public void handleShutdown() {
+            close();
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package better.jsonrpc.nio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct buffers of a fixed size
+ *
+ * Direct buffers are expensive to allocate, so connections
+ * borrow one for reading while they are open. Outgoing
+ * frames stay on the heap and are copied by the channel
+ * as they are written.
+ */
+final class JsonRpcNioBufferPool {
+
+    /** Capacity of each buffer */
+    private final int mBufferSize;
+
+    /** Maximum number of idle buffers kept */
+    private final int mMaxIdle;
+
+    /** Idle buffers */
+    private final ConcurrentLinkedQueue<ByteBuffer> mIdle = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /** Number of idle buffers (approximate) */
+    private final AtomicInteger mIdleCount = new AtomicInteger();
+
+    JsonRpcNioBufferPool(int bufferSize, int maxIdle) {
+        mBufferSize = bufferSize;
+        mMaxIdle = maxIdle;
+    }
+
+    /** @return a cleared buffer */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = mIdle.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(mBufferSize);
+        }
+        mIdleCount.decrementAndGet();
+        return buffer;
+    }
+
+    /** Return a buffer obtained from {@link #acquire()} */
+    void release(ByteBuffer buffer) {
+        if (mIdleCount.incrementAndGet() <= mMaxIdle) {
+            buffer.clear();
+            mIdle.offer(buffer);
+        } else {
+            mIdleCount.decrementAndGet();
+        }
+    }
+
+}
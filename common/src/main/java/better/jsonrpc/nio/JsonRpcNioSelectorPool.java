@@ -0,0 +1,211 @@
+package better.jsonrpc.nio;
+
+import better.jsonrpc.util.ExecutorUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selector loops shared by NIO connections
+ *
+ * Each loop is a daemon thread multiplexing the sockets
+ * assigned to it, connections are spread over the loops
+ * round-robin. Loops only move bytes; decoded messages
+ * are handled on the dispatch executor so that handlers
+ * may block without stalling other connections.
+ *
+ * Also owns the pool of direct buffers its connections read into.
+ */
+public class JsonRpcNioSelectorPool implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsonRpcNioSelectorPool.class);
+
+    /** Default size of pooled buffers */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** Counter for naming loop threads */
+    private static final AtomicInteger sPoolCounter = new AtomicInteger();
+
+    /** The loops */
+    private final Loop[] mLoops;
+
+    /** Next loop to assign */
+    private final AtomicInteger mNextLoop = new AtomicInteger();
+
+    /** Executor handling decoded messages */
+    private final ExecutorService mDispatcher;
+
+    /** Direct buffers for connections */
+    private final JsonRpcNioBufferPool mBuffers;
+
+    /**
+     * Create a pool with a loop per core
+     * @throws IOException if selectors can not be opened
+     */
+    public JsonRpcNioSelectorPool() throws IOException {
+        this(Runtime.getRuntime().availableProcessors(), ExecutorUtil.newPerCallExecutor(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a pool
+     * @param loops number of selector loops
+     * @param dispatcher executor handling decoded messages, shut down with the pool
+     * @param bufferSize size of the pooled read buffers
+     * @throws IOException if selectors can not be opened
+     */
+    public JsonRpcNioSelectorPool(int loops, ExecutorService dispatcher, int bufferSize) throws IOException {
+        if (loops < 1) {
+            throw new IllegalArgumentException("Need at least one loop");
+        }
+        mDispatcher = dispatcher;
+        mBuffers = new JsonRpcNioBufferPool(bufferSize, loops * 64);
+        mLoops = new Loop[loops];
+        int pool = sPoolCounter.incrementAndGet();
+        try {
+            for (int i = 0; i < loops; i++) {
+                mLoops[i] = new Loop("jsonrpc-nio-" + pool + "-" + i);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /** @return the executor handling decoded messages */
+    public ExecutorService getDispatcher() {
+        return mDispatcher;
+    }
+
+    /** @return the number of loops */
+    public int getLoopCount() {
+        return mLoops.length;
+    }
+
+    /** Stop all loops, closing their channels */
+    @Override
+    public void close() {
+        for (Loop loop : mLoops) {
+            if (loop != null) {
+                loop.close();
+            }
+        }
+        mDispatcher.shutdown();
+    }
+
+    JsonRpcNioBufferPool getBuffers() {
+        return mBuffers;
+    }
+
+    /** @return the loop for the next channel */
+    Loop nextLoop() {
+        return mLoops[(mNextLoop.getAndIncrement() & Integer.MAX_VALUE) % mLoops.length];
+    }
+
+    /** Attachment of selection keys */
+    interface Handler {
+        /** Called on the loop thread when the key is ready */
+        void handleReady(SelectionKey key);
+        /** Called on the loop thread when the loop shuts down */
+        void handleShutdown();
+    }
+
+    /** A selector and the thread running it */
+    static final class Loop implements Runnable {
+
+        private final Selector mSelector;
+
+        private final Thread mThread;
+
+        /** Tasks to run on the loop thread */
+        private final ConcurrentLinkedQueue<Runnable> mTasks = new ConcurrentLinkedQueue<Runnable>();
+
+        private volatile boolean mRunning = true;
+
+        Loop(String name) throws IOException {
+            mSelector = Selector.open();
+            mThread = new Thread(this, name);
+            mThread.setDaemon(true);
+            mThread.start();
+        }
+
+        Selector getSelector() {
+            return mSelector;
+        }
+
+        /** @return true if called on the loop thread */
+        boolean inLoop() {
+            return Thread.currentThread() == mThread;
+        }
+
+        /** Run the given task on the loop thread */
+        void execute(Runnable task) {
+            if (inLoop()) {
+                task.run();
+            } else {
+                mTasks.add(task);
+                mSelector.wakeup();
+            }
+        }
+
+        void close() {
+            mRunning = false;
+            mSelector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (mRunning) {
+                    mSelector.select();
+                    Runnable task;
+                    while ((task = mTasks.poll()) != null) {
+                        runTask(task);
+                    }
+                    Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (key.isValid()) {
+                            ((Handler) key.attachment()).handleReady(key);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                LOG.error("Selector loop failed", e);
+            } finally {
+                shutdown();
+            }
+        }
+
+        private void runTask(Runnable task) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.error("Exception in selector loop task", e);
+            }
+        }
+
+        private void shutdown() {
+            try {
+                for (SelectionKey key : new ArrayList<SelectionKey>(mSelector.keys())) {
+                    ((Handler) key.attachment()).handleShutdown();
+                }
+                mSelector.close();
+            } catch (IOException | ClosedSelectorException e) {
+                LOG.debug("Exception closing selector", e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,463 @@
+package better.jsonrpc.nio;
+
+import better.jsonrpc.client.JsonRpcClientRequest;
+import better.jsonrpc.core.JsonRpcConnectedTransport;
+import better.jsonrpc.core.JsonRpcResponse;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Connection over a plain socket channel
+ *
+ * Works over TCP and, on Java 16 and later, over Unix domain
+ * sockets, which skip the network stack for peers on one host.
+ *
+ * Messages are framed by a 4 byte big-endian length
+ * followed by that many bytes of UTF-8 JSON. Frames
+ * of length zero are ignored and may serve as keep-alives.
+ *
+ * Reading happens on a loop of a {@link JsonRpcNioSelectorPool},
+ * decoded messages are handled on its dispatch executor unless
+ * another one is set. Senders write to the socket themselves
+ * as long as it accepts data and leave the rest to the loop.
+ *
+ * Connections are created unconnected and opened once, either
+ * by {@link #connect(SocketAddress)} or by a {@link JsonRpcNioAcceptor}.
+ */
+public class JsonRpcNioTransport extends JsonRpcConnectedTransport {
+
+    /** Default limit for the size of incoming and outgoing frames */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /** Size of the length prefix */
+    private static final int HEADER_SIZE = 4;
+
+    /** Placeholder for the length prefix */
+    private static final byte[] EMPTY_HEADER = new byte[HEADER_SIZE];
+
+    /** Maximum number of frames written in one go */
+    private static final int MAX_GATHER = 16;
+
+    /** Pool providing loop and buffers */
+    private final JsonRpcNioSelectorPool mPool;
+
+    /** Loop reading this connection */
+    private final JsonRpcNioSelectorPool.Loop mLoop;
+
+    /** Executor handling decoded messages */
+    private volatile Executor mDispatcher;
+
+    /** Limit for the size of frames */
+    private volatile int mMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+
+    /** The channel (null until opened) */
+    private volatile SocketChannel mChannel;
+
+    /** Set once the connection has been closed */
+    private final AtomicBoolean mClosed = new AtomicBoolean();
+
+    /** Frames waiting to be written */
+    private final ConcurrentLinkedQueue<ByteBuffer> mWriteQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /** Held by whoever is writing, be it a sender or the loop */
+    private final AtomicBoolean mWriting = new AtomicBoolean();
+
+    /** Scratch array for gathering writes (guarded by mWriting) */
+    private final ByteBuffer[] mGather = new ByteBuffer[MAX_GATHER];
+
+    /** Selection key (loop thread only) */
+    private SelectionKey mKey;
+
+    /** Buffer for reading (loop thread only) */
+    private ByteBuffer mReadBuffer;
+
+    /** Frame being read (loop thread only) */
+    private byte[] mFrame;
+
+    /** Bytes of the frame read so far (loop thread only) */
+    private int mFramePosition;
+
+    /**
+     * Create an unconnected connection
+     * @param mapper to be used for this connection
+     * @param pool providing the loop for this connection
+     */
+    public JsonRpcNioTransport(ObjectMapper mapper, JsonRpcNioSelectorPool pool) {
+        super(mapper, false);
+        mPool = pool;
+        mLoop = pool.nextLoop();
+        mDispatcher = pool.getDispatcher();
+    }
+
+    /** @return the executor handling decoded messages */
+    public Executor getDispatcher() {
+        return mDispatcher;
+    }
+
+    /**
+     * Set the executor handling decoded messages
+     *
+     * Messages are handled concurrently by default. Passing
+     * an executor running tasks in order, or {@code Runnable::run}
+     * to handle them on the loop, preserves their order.
+     *
+     * @param dispatcher to use
+     */
+    public void setDispatcher(Executor dispatcher) {
+        mDispatcher = dispatcher;
+    }
+
+    public int getMaxFrameSize() {
+        return mMaxFrameSize;
+    }
+
+    public void setMaxFrameSize(int maxFrameSize) {
+        mMaxFrameSize = maxFrameSize;
+    }
+
+    /** @return the address of the peer or null if not connected */
+    public SocketAddress getRemoteAddress() {
+        SocketChannel channel = mChannel;
+        try {
+            return (channel == null) ? null : channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public boolean isConnected() {
+        return mChannel != null && !mClosed.get();
+    }
+
+    /**
+     * Connect to the given address
+     *
+     * Blocks until the connection is established.
+     *
+     * @param address to connect to, either an internet address or
+     *                one from {@link better.jsonrpc.util.UnixSocketUtil#getAddress(java.nio.file.Path)}
+     * @throws IOException if the connection fails
+     */
+    public void connect(SocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        try {
+            open(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Close the connection */
+    public void disconnect() {
+        close();
+    }
+
+    /**
+     * Start using the given connected channel
+     * @param channel to use
+     * @throws IOException if the channel can not be configured
+     */
+    void open(final SocketChannel channel) throws IOException {
+        if (mChannel != null) {
+            throw new IllegalStateException("Connection has been opened already");
+        }
+        channel.configureBlocking(false);
+        if (channel.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        mChannel = channel;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("[" + mTransportId + "] connection open");
+        }
+        // queued before anything listeners send, so the key exists
+        // by the time the loop is asked to wait for writability
+        mLoop.execute(() -> {
+            if (mClosed.get()) {
+                return;
+            }
+            try {
+                mReadBuffer = mPool.getBuffers().acquire();
+                mKey = channel.register(mLoop.getSelector(), SelectionKey.OP_READ, new Handler());
+            } catch (IOException e) {
+                LOG.error("Could not register connection", e);
+                close();
+            }
+        });
+        onOpen();
+    }
+
+    /** Close the channel and notify listeners, once */
+    private void close() {
+        SocketChannel channel = mChannel;
+        if (channel == null || !mClosed.compareAndSet(false, true)) {
+            return;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("[" + mTransportId + "] connection close");
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.debug("Exception closing channel", e);
+        }
+        // queued frames may still be in the hands of a writer
+        mWriteQueue.clear();
+        mLoop.execute(() -> {
+            if (mReadBuffer != null) {
+                mPool.getBuffers().release(mReadBuffer);
+                mReadBuffer = null;
+            }
+            mFrame = null;
+        });
+        onClose();
+    }
+
+    @Override
+    public void sendRequest(final JsonRpcClientRequest request) throws IOException {
+        transmit(request::writeTo);
+    }
+
+    @Override
+    public void sendNotification(final JsonRpcClientRequest notification) throws IOException {
+        transmit(notification::writeTo);
+    }
+
+    @Override
+    public void sendBatch(final List<JsonRpcClientRequest> requests) throws IOException {
+        transmit(generator -> {
+            generator.writeStartArray();
+            for (JsonRpcClientRequest request : requests) {
+                request.writeTo(generator);
+            }
+            generator.writeEndArray();
+        });
+    }
+
+    @Override
+    public void sendResponse(final ObjectNode response) throws IOException {
+        transmit(generator -> getMapper().writeTree(generator, response));
+    }
+
+    @Override
+    public void sendResponse(final JsonRpcResponse response) throws IOException {
+        transmit(generator -> response.writeTo(generator, getMapper()));
+    }
+
+    @Override
+    public void sendBatchResponse(final List<JsonRpcResponse> responses) throws IOException {
+        transmit(generator -> {
+            generator.writeStartArray();
+            for (JsonRpcResponse response : responses) {
+                response.writeTo(generator, getMapper());
+            }
+            generator.writeEndArray();
+        });
+    }
+
+    /** Content written directly to a generator */
+    private interface Content {
+        void writeTo(JsonGenerator generator) throws IOException;
+    }
+
+    /** Serialize the given content into a frame and queue it */
+    private void transmit(Content content) throws IOException {
+        if (!isConnected()) {
+            throw new IOException("Trying to transmit data on a closed transport");
+        }
+        JsonFactory factory = getMapper().getFactory();
+        ByteArrayBuilder buffer = new ByteArrayBuilder(factory._getBufferRecycler());
+        // room for the length, filled in below
+        buffer.write(EMPTY_HEADER);
+        JsonGenerator generator = factory.createGenerator(buffer);
+        try {
+            content.writeTo(generator);
+        } finally {
+            generator.close();
+        }
+        byte[] data = buffer.toByteArray();
+        buffer.release();
+        int length = data.length - HEADER_SIZE;
+        if (length > mMaxFrameSize) {
+            throw new IOException("Message of " + length + " bytes exceeds the frame size limit");
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("[" + mTransportId + "] transmitting " + length + " bytes");
+        }
+        // stays on the heap while queued, the channel copies what it writes
+        ByteBuffer frame = ByteBuffer.wrap(data);
+        frame.putInt(0, length);
+        mWriteQueue.add(frame);
+        flush();
+    }
+
+    /**
+     * Write queued frames unless someone else is doing so
+     *
+     * Hands over to the loop when the socket is full.
+     */
+    private void flush() {
+        while (mWriting.compareAndSet(false, true)) {
+            boolean drained;
+            try {
+                drained = writeQueued();
+            } catch (IOException e) {
+                LOG.debug("Exception writing to channel", e);
+                close();
+                return;
+            }
+            if (!drained) {
+                // keep mWriting, the loop releases it once writable
+                mLoop.execute(this::awaitWritable);
+                return;
+            }
+            mWriting.set(false);
+            // frames queued while we were finishing are ours to write
+            if (mWriteQueue.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    /** @return true if the queue has been drained */
+    private boolean writeQueued() throws IOException {
+        ByteBuffer[] gather = mGather;
+        while (true) {
+            int count = 0;
+            for (ByteBuffer frame : mWriteQueue) {
+                gather[count++] = frame;
+                if (count == MAX_GATHER) {
+                    break;
+                }
+            }
+            if (count == 0) {
+                return true;
+            }
+            mChannel.write(gather, 0, count);
+            boolean complete = true;
+            for (int i = 0; i < count; i++) {
+                ByteBuffer frame = gather[i];
+                gather[i] = null;
+                if (complete && frame.hasRemaining()) {
+                    complete = false;
+                }
+                if (complete) {
+                    mWriteQueue.poll();
+                }
+            }
+            if (!complete) {
+                return false;
+            }
+        }
+    }
+
+    /** Ask the loop to resume writing (loop thread) */
+    private void awaitWritable() {
+        if (mKey != null && mKey.isValid()) {
+            mKey.interestOps(mKey.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /** Read what is available and decode frames (loop thread) */
+    private void read() {
+        try {
+            if (mChannel.read(mReadBuffer) < 0) {
+                close();
+                return;
+            }
+            mReadBuffer.flip();
+            while (decodeFrame()) {
+                // keep going
+            }
+            mReadBuffer.compact();
+        } catch (IOException e) {
+            LOG.debug("Exception reading from channel", e);
+            close();
+        }
+    }
+
+    /** @return true if a frame has been completed */
+    private boolean decodeFrame() throws IOException {
+        if (mFrame == null) {
+            if (mReadBuffer.remaining() < HEADER_SIZE) {
+                return false;
+            }
+            int length = mReadBuffer.getInt();
+            if (length < 0 || length > mMaxFrameSize) {
+                throw new IOException("Received invalid frame length " + length);
+            }
+            mFrame = new byte[length];
+            mFramePosition = 0;
+        }
+        int count = Math.min(mReadBuffer.remaining(), mFrame.length - mFramePosition);
+        mReadBuffer.get(mFrame, mFramePosition, count);
+        mFramePosition += count;
+        if (mFramePosition < mFrame.length) {
+            return false;
+        }
+        final byte[] frame = mFrame;
+        mFrame = null;
+        if (frame.length > 0) {
+            try {
+                mDispatcher.execute(() -> handleFrame(frame));
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Dropping message, dispatcher is shut down");
+            }
+        }
+        return true;
+    }
+
+    /** Handle a received frame */
+    private void handleFrame(byte[] frame) {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("[" + mTransportId + "] received " + frame.length + " bytes");
+        }
+        try {
+            JsonParser parser = getMapper().getFactory().createParser(frame);
+            try {
+                handleMessage(parser);
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            LOG.error("Exception handling message", e);
+        }
+    }
+
+    /** Attachment of the selection key */
+    private final class Handler implements JsonRpcNioSelectorPool.Handler {
+        @Override
+        public void handleReady(SelectionKey key) {
+            if (key.isReadable()) {
+                read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                mWriting.set(false);
+                flush();
+            }
+        }
+
+        @Override
+        public void handleShutdown() {
+            close();
+        }
+    }
+
+}
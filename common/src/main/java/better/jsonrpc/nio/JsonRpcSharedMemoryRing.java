@@ -0,0 +1,318 @@
+package better.jsonrpc.nio;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer single-consumer ring of frames in a mapped file
+ *
+ * The file starts with a header holding the capacity and the
+ * positions of both sides, each on a cache line of its own,
+ * followed by the data area. Positions count bytes ever written
+ * or read, so the ring is empty when they are equal.
+ *
+ * Frames are a 4 byte length followed by the payload, padded
+ * to a multiple of 4 bytes so lengths never wrap around.
+ *
+ * Positions are published with release fences and read with
+ * acquire fences so that the other process sees complete frames.
+ *
+ * The reader counts up a heartbeat while it waits for frames.
+ * A writer waiting for space gives up once neither the read
+ * position nor the heartbeat have moved for a while, so that
+ * a crashed reader does not block it forever.
+ */
+final class JsonRpcSharedMemoryRing {
+
+    /** Marks an initialized ring ("JRPC") */
+    private static final int MAGIC = 0x4A525043;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int WRITE_OFFSET = 64;
+    private static final int READ_OFFSET = 128;
+    /** Written by the reader only, next to its position */
+    private static final int HEARTBEAT_OFFSET = 136;
+    private static final int CLOSED_OFFSET = 192;
+    private static final int DATA_OFFSET = 256;
+
+    /** Size of the length prefix */
+    private static final int HEADER_SIZE = 4;
+
+    /** Busy-wait rounds before yielding */
+    private static final int SPIN_ROUNDS = 1000;
+
+    /** Yielding rounds before parking */
+    private static final int YIELD_ROUNDS = 100;
+
+    /** Longest park while waiting, bounding the latency of an idle side */
+    private static final long MAX_PARK_NANOS = 100_000;
+
+    private static final MethodHandle RELEASE_FENCE = findFence("releaseFence");
+    private static final MethodHandle ACQUIRE_FENCE = findFence("acquireFence");
+
+    /** Written by the fallback fence */
+    private static volatile int sFence;
+
+    /** The mapped file */
+    private final MappedByteBuffer mBuffer;
+
+    /** View for bulk transfers of the side using this ring */
+    private final ByteBuffer mData;
+
+    /** Capacity of the data area (power of two) */
+    private final int mCapacity;
+
+    private JsonRpcSharedMemoryRing(MappedByteBuffer buffer, int capacity) {
+        mBuffer = buffer;
+        mCapacity = capacity;
+        mData = buffer.duplicate();
+    }
+
+    /**
+     * Create a ring, replacing an existing file
+     * @param file to map
+     * @param capacity of the data area, a power of two
+     * @return the ring
+     * @throws IOException if the file can not be mapped
+     */
+    static JsonRpcSharedMemoryRing create(Path file, int capacity) throws IOException {
+        if (capacity < 1024 || Integer.bitCount(capacity) != 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be a power of two of at least 1024");
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, DATA_OFFSET + capacity);
+        }
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putLong(WRITE_OFFSET, 0);
+        buffer.putLong(READ_OFFSET, 0);
+        buffer.putLong(HEARTBEAT_OFFSET, 0);
+        buffer.putInt(CLOSED_OFFSET, 0);
+        releaseFence();
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        return new JsonRpcSharedMemoryRing(buffer, capacity);
+    }
+
+    /**
+     * Open a ring created by {@link #create(Path, int)}
+     * @param file to map
+     * @return the ring
+     * @throws IOException if the file can not be mapped or is not a ring
+     */
+    static JsonRpcSharedMemoryRing open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size < DATA_OFFSET) {
+                throw new IOException("Not a ring: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        int magic = buffer.getInt(MAGIC_OFFSET);
+        acquireFence();
+        int capacity = buffer.getInt(CAPACITY_OFFSET);
+        if (magic != MAGIC || DATA_OFFSET + (long) capacity != buffer.capacity()) {
+            throw new IOException("Not an initialized ring: " + file);
+        }
+        return new JsonRpcSharedMemoryRing(buffer, capacity);
+    }
+
+    /** @return the largest payload that fits */
+    int getMaxPayload() {
+        return mCapacity - HEADER_SIZE;
+    }
+
+    /** @return true if either side has closed the ring */
+    boolean isClosed() {
+        return mBuffer.getInt(CLOSED_OFFSET) != 0;
+    }
+
+    /** Close the ring, waking up the other side */
+    void close() {
+        releaseFence();
+        mBuffer.putInt(CLOSED_OFFSET, 1);
+    }
+
+    /**
+     * Append a frame, waiting for space
+     *
+     * Must only be called by one thread at a time.
+     *
+     * @param payload of the frame
+     * @param readerTimeout in nanoseconds after which a reader that
+     *                      shows no sign of life is given up on
+     * @return false if the ring has been closed, which it is
+     *         after giving up on the reader
+     * @throws IOException if the payload does not fit into the ring
+     */
+    boolean write(byte[] payload, long readerTimeout) throws IOException {
+        int size = frameSize(payload.length);
+        if (payload.length > getMaxPayload()) {
+            throw new IOException("Message of " + payload.length + " bytes exceeds the ring capacity");
+        }
+        long write = mBuffer.getLong(WRITE_OFFSET);
+        long lastRead = -1;
+        long lastBeat = -1;
+        long lastSign = 0;
+        int round = 0;
+        while (true) {
+            long read = mBuffer.getLong(READ_OFFSET);
+            acquireFence();
+            if (mCapacity - (write - read) >= size) {
+                break;
+            }
+            if (isClosed()) {
+                return false;
+            }
+            if (round >= SPIN_ROUNDS) {
+                long beat = mBuffer.getLong(HEARTBEAT_OFFSET);
+                long now = System.nanoTime();
+                if (read != lastRead || beat != lastBeat) {
+                    lastRead = read;
+                    lastBeat = beat;
+                    lastSign = now;
+                } else if (now - lastSign > readerTimeout) {
+                    close();
+                    return false;
+                }
+            }
+            idle(round++);
+        }
+        int index = index(write);
+        mBuffer.putInt(DATA_OFFSET + index, payload.length);
+        copyIn(index + HEADER_SIZE, payload);
+        releaseFence();
+        mBuffer.putLong(WRITE_OFFSET, write + size);
+        return true;
+    }
+
+    /**
+     * Take the next frame, waiting for one
+     *
+     * Must only be called by one thread at a time.
+     *
+     * A frame with an impossible length closes the ring, as
+     * nothing written by the other side can be trusted then.
+     *
+     * @return the payload or null if the ring has been closed and drained
+     */
+    byte[] read() {
+        long read = mBuffer.getLong(READ_OFFSET);
+        long write;
+        int round = 0;
+        while (true) {
+            write = mBuffer.getLong(WRITE_OFFSET);
+            acquireFence();
+            if (write != read) {
+                break;
+            }
+            if (isClosed()) {
+                return null;
+            }
+            mBuffer.putLong(HEARTBEAT_OFFSET, mBuffer.getLong(HEARTBEAT_OFFSET) + 1);
+            idle(round++);
+        }
+        int index = index(read);
+        int length = mBuffer.getInt(DATA_OFFSET + index);
+        if (length < 0 || length > getMaxPayload() || frameSize(length) > write - read) {
+            close();
+            return null;
+        }
+        byte[] payload = new byte[length];
+        copyOut(index + HEADER_SIZE, payload);
+        releaseFence();
+        mBuffer.putLong(READ_OFFSET, read + frameSize(length));
+        return payload;
+    }
+
+    private int index(long position) {
+        return (int) position & (mCapacity - 1);
+    }
+
+    private static int frameSize(int length) {
+        return (HEADER_SIZE + length + 3) & ~3;
+    }
+
+    /** Copy into the data area, wrapping around */
+    private void copyIn(int index, byte[] payload) {
+        index &= mCapacity - 1;
+        int first = Math.min(payload.length, mCapacity - index);
+        mData.position(DATA_OFFSET + index);
+        mData.put(payload, 0, first);
+        if (first < payload.length) {
+            mData.position(DATA_OFFSET);
+            mData.put(payload, first, payload.length - first);
+        }
+    }
+
+    /** Copy out of the data area, wrapping around */
+    private void copyOut(int index, byte[] payload) {
+        index &= mCapacity - 1;
+        int first = Math.min(payload.length, mCapacity - index);
+        mData.position(DATA_OFFSET + index);
+        mData.get(payload, 0, first);
+        if (first < payload.length) {
+            mData.position(DATA_OFFSET);
+            mData.get(payload, first, payload.length - first);
+        }
+    }
+
+    /** Spin, then yield, then park for increasing times */
+    private static void idle(int round) {
+        if (round < SPIN_ROUNDS) {
+            return;
+        }
+        if (round < SPIN_ROUNDS + YIELD_ROUNDS) {
+            Thread.yield();
+            return;
+        }
+        int shift = Math.min(round - SPIN_ROUNDS - YIELD_ROUNDS, 20);
+        LockSupport.parkNanos(Math.min(1000L << shift, MAX_PARK_NANOS));
+    }
+
+    private static void releaseFence() {
+        try {
+            RELEASE_FENCE.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static void acquireFence() {
+        try {
+            ACQUIRE_FENCE.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /** Fallback for Java 8, a volatile write fences everything on the JVMs we know */
+    private static void volatileFence() {
+        sFence = 0;
+    }
+
+    /** Find a fence of VarHandle (Java 9 and later) or fall back */
+    private static MethodHandle findFence(String name) {
+        MethodType type = MethodType.methodType(void.class);
+        try {
+            return MethodHandles.publicLookup().findStatic(Class.forName("java.lang.invoke.VarHandle"), name, type);
+        } catch (ReflectiveOperationException e) {
+            try {
+                return MethodHandles.lookup().findStatic(JsonRpcSharedMemoryRing.class, "volatileFence", type);
+            } catch (ReflectiveOperationException fe) {
+                throw new ExceptionInInitializerError(fe);
+            }
+        }
+    }
+
+}
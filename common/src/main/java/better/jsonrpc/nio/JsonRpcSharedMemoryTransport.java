@@ -0,0 +1,320 @@
+package better.jsonrpc.nio;
+
+import better.jsonrpc.client.JsonRpcClientRequest;
+import better.jsonrpc.core.JsonRpcConnectedTransport;
+import better.jsonrpc.core.JsonRpcResponse;
+import better.jsonrpc.util.ExecutorUtil;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connection between two processes on one host through shared memory
+ *
+ * The connection consists of two files in a directory, each
+ * mapped by both sides as a ring of frames flowing in one
+ * direction. One side creates the files, the other attaches
+ * to them. Putting the directory on a tmpfs such as /dev/shm
+ * keeps the rings out of the page cache writeback.
+ *
+ * A reader thread takes frames off the inbound ring, spinning
+ * briefly before parking when it is empty, and hands them to
+ * the dispatch executor. Senders take turns writing to the
+ * outbound ring and wait in the same way when it is full.
+ * A sender gives up and closes the connection when the other
+ * side has not been reading for the peer timeout, which is
+ * how a crashed process is noticed.
+ *
+ * Connections read nothing until {@link #start()} is called.
+ */
+public class JsonRpcSharedMemoryTransport extends JsonRpcConnectedTransport {
+
+    /** Default capacity of each ring */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    /** Default time after which a side that stopped reading is given up on (msecs) */
+    public static final long DEFAULT_PEER_TIMEOUT = 10 * 1000;
+
+    /** Ring written by the creating side */
+    private static final String CREATOR_RING = "creator.ring";
+
+    /** Ring written by the attaching side */
+    private static final String ATTACHER_RING = "attacher.ring";
+
+    /**
+     * Create the rings in the given directory and connect to them
+     * @param directory to create the rings in
+     * @param mapper to be used for this connection
+     * @return the connection
+     * @throws IOException if the rings can not be created
+     */
+    public static JsonRpcSharedMemoryTransport create(Path directory, ObjectMapper mapper) throws IOException {
+        return create(directory, DEFAULT_CAPACITY, mapper, null);
+    }
+
+    /**
+     * Create the rings in the given directory and connect to them
+     * @param directory to create the rings in
+     * @param capacity of each ring, a power of two
+     * @param mapper to be used for this connection
+     * @param dispatcher executor handling received messages (null for a thread per message)
+     * @return the connection
+     * @throws IOException if the rings can not be created
+     */
+    public static JsonRpcSharedMemoryTransport create(Path directory, int capacity, ObjectMapper mapper,
+                                                      Executor dispatcher) throws IOException {
+        JsonRpcSharedMemoryRing outbound = JsonRpcSharedMemoryRing.create(directory.resolve(CREATOR_RING), capacity);
+        JsonRpcSharedMemoryRing inbound = JsonRpcSharedMemoryRing.create(directory.resolve(ATTACHER_RING), capacity);
+        return new JsonRpcSharedMemoryTransport(mapper, outbound, inbound, dispatcher);
+    }
+
+    /**
+     * Attach to rings created by the other side
+     * @param directory containing the rings
+     * @param mapper to be used for this connection
+     * @return the connection
+     * @throws IOException if the rings can not be opened
+     */
+    public static JsonRpcSharedMemoryTransport attach(Path directory, ObjectMapper mapper) throws IOException {
+        return attach(directory, mapper, null);
+    }
+
+    /**
+     * Attach to rings created by the other side
+     * @param directory containing the rings
+     * @param mapper to be used for this connection
+     * @param dispatcher executor handling received messages (null for a thread per message)
+     * @return the connection
+     * @throws IOException if the rings can not be opened
+     */
+    public static JsonRpcSharedMemoryTransport attach(Path directory, ObjectMapper mapper,
+                                                      Executor dispatcher) throws IOException {
+        JsonRpcSharedMemoryRing outbound = JsonRpcSharedMemoryRing.open(directory.resolve(ATTACHER_RING));
+        JsonRpcSharedMemoryRing inbound = JsonRpcSharedMemoryRing.open(directory.resolve(CREATOR_RING));
+        return new JsonRpcSharedMemoryTransport(mapper, outbound, inbound, dispatcher);
+    }
+
+    /** Ring we write to */
+    private final JsonRpcSharedMemoryRing mOutbound;
+
+    /** Ring we read from */
+    private final JsonRpcSharedMemoryRing mInbound;
+
+    /** Executor handling received messages */
+    private final Executor mDispatcher;
+
+    /** Whether we created the dispatcher and shut it down */
+    private final boolean mOwnsDispatcher;
+
+    /** Lets senders take turns on the outbound ring */
+    private final Lock mSendLock = new ReentrantLock();
+
+    /** Time after which a side that stopped reading is given up on (msecs) */
+    private volatile long mPeerTimeout = DEFAULT_PEER_TIMEOUT;
+
+    /** Set once the connection has been started */
+    private final AtomicBoolean mStarted = new AtomicBoolean();
+
+    /** Set once the connection has been closed */
+    private final AtomicBoolean mClosed = new AtomicBoolean();
+
+    private JsonRpcSharedMemoryTransport(ObjectMapper mapper, JsonRpcSharedMemoryRing outbound,
+                                         JsonRpcSharedMemoryRing inbound, Executor dispatcher) {
+        super(mapper, false);
+        mOutbound = outbound;
+        mInbound = inbound;
+        mOwnsDispatcher = dispatcher == null;
+        mDispatcher = mOwnsDispatcher ? ExecutorUtil.newPerCallExecutor() : dispatcher;
+    }
+
+    public boolean isConnected() {
+        return mStarted.get() && !mClosed.get();
+    }
+
+    /**
+     * Start reading
+     *
+     * Bind client and server before, so no message is missed.
+     * Frames the other side writes earlier wait in the ring.
+     */
+    public void start() {
+        if (!mStarted.compareAndSet(false, true)) {
+            throw new IllegalStateException("Connection has been started already");
+        }
+        Thread reader = new Thread(this::readLoop, "jsonrpc-shm-" + mTransportId);
+        reader.setDaemon(true);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("[" + mTransportId + "] connection open");
+        }
+        onOpen();
+        reader.start();
+    }
+
+    /** @return the time after which a side that stopped reading is given up on (msecs) */
+    public long getPeerTimeout() {
+        return mPeerTimeout;
+    }
+
+    /**
+     * Set the time after which a side that stopped reading is given up on
+     *
+     * Senders finding the outbound ring full wait this long for the
+     * other side to show signs of life before closing the connection.
+     * This includes the time until the other side is started.
+     *
+     * @param peerTimeout in msecs
+     */
+    public void setPeerTimeout(long peerTimeout) {
+        mPeerTimeout = peerTimeout;
+    }
+
+    /** Close the connection, the other side notices shortly */
+    public void disconnect() {
+        close();
+    }
+
+    private void close() {
+        if (!mClosed.compareAndSet(false, true)) {
+            return;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("[" + mTransportId + "] connection close");
+        }
+        mOutbound.close();
+        mInbound.close();
+        if (mOwnsDispatcher) {
+            ((ExecutorService) mDispatcher).shutdown();
+        }
+        onClose();
+    }
+
+    /** Take frames off the inbound ring until it is closed */
+    private void readLoop() {
+        try {
+            byte[] payload;
+            while ((payload = mInbound.read()) != null) {
+                if (payload.length == 0) {
+                    continue;
+                }
+                final byte[] frame = payload;
+                try {
+                    mDispatcher.execute(() -> handleFrame(frame));
+                } catch (RejectedExecutionException e) {
+                    LOG.debug("Dropping message, dispatcher is shut down");
+                }
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /** Handle a received frame */
+    private void handleFrame(byte[] frame) {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("[" + mTransportId + "] received " + frame.length + " bytes");
+        }
+        try {
+            JsonParser parser = getMapper().getFactory().createParser(frame);
+            try {
+                handleMessage(parser);
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            LOG.error("Exception handling message", e);
+        }
+    }
+
+    @Override
+    public void sendRequest(final JsonRpcClientRequest request) throws IOException {
+        transmit(request::writeTo);
+    }
+
+    @Override
+    public void sendNotification(final JsonRpcClientRequest notification) throws IOException {
+        transmit(notification::writeTo);
+    }
+
+    @Override
+    public void sendBatch(final List<JsonRpcClientRequest> requests) throws IOException {
+        transmit(generator -> {
+            generator.writeStartArray();
+            for (JsonRpcClientRequest request : requests) {
+                request.writeTo(generator);
+            }
+            generator.writeEndArray();
+        });
+    }
+
+    @Override
+    public void sendResponse(final ObjectNode response) throws IOException {
+        transmit(generator -> getMapper().writeTree(generator, response));
+    }
+
+    @Override
+    public void sendResponse(final JsonRpcResponse response) throws IOException {
+        transmit(generator -> response.writeTo(generator, getMapper()));
+    }
+
+    @Override
+    public void sendBatchResponse(final List<JsonRpcResponse> responses) throws IOException {
+        transmit(generator -> {
+            generator.writeStartArray();
+            for (JsonRpcResponse response : responses) {
+                response.writeTo(generator, getMapper());
+            }
+            generator.writeEndArray();
+        });
+    }
+
+    /** Content written directly to a generator */
+    private interface Content {
+        void writeTo(JsonGenerator generator) throws IOException;
+    }
+
+    /** Serialize the given content and append it to the outbound ring */
+    private void transmit(Content content) throws IOException {
+        if (!isConnected()) {
+            throw new IOException("Trying to transmit data on a closed transport");
+        }
+        JsonFactory factory = getMapper().getFactory();
+        ByteArrayBuilder buffer = new ByteArrayBuilder(factory._getBufferRecycler());
+        JsonGenerator generator = factory.createGenerator(buffer);
+        try {
+            content.writeTo(generator);
+        } finally {
+            generator.close();
+        }
+        byte[] data = buffer.toByteArray();
+        buffer.release();
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("[" + mTransportId + "] transmitting " + data.length + " bytes");
+        }
+        boolean written;
+        mSendLock.lock();
+        try {
+            written = mOutbound.write(data, TimeUnit.MILLISECONDS.toNanos(mPeerTimeout));
+        } finally {
+            mSendLock.unlock();
+        }
+        if (!written) {
+            close();
+            throw new IOException("Trying to transmit data on a closed transport");
+        }
+    }
+
+}
@@ -0,0 +1,211 @@
+package better.jsonrpc.server;
+
+import better.jsonrpc.annotations.JsonRpcInterface;
+import better.jsonrpc.annotations.JsonRpcMethod;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Dispatch table of a JSON-RPC server
+ *
+ * Maps method names as seen on the wire to the set of
+ * overload candidates for that name.
+ *
+ * Interfaces with a generated {@link JsonRpcDispatcher} are
+ * described by it, others by reflection. When all of them have
+ * one, names are looked up through the switches of the
+ * dispatchers instead of a map.
+ *
+ * The table is built once from the protocol interfaces
+ * and never modified afterwards, so lookups are plain
+ * reads that need neither locking nor allocation.
+ */
+public class JsonRpcDispatchTable {
+
+    /** Generated dispatchers by protocol interface */
+    private static final ClassValue<Optional<JsonRpcDispatcher>> DISPATCHERS = new ClassValue<Optional<JsonRpcDispatcher>>() {
+        @Override
+        protected Optional<JsonRpcDispatcher> computeValue(Class<?> type) {
+            try {
+                Class<?> dispatcher = Class.forName(
+                        type.getName() + JsonRpcDispatcher.CLASS_SUFFIX, true, type.getClassLoader());
+                if (!JsonRpcDispatcher.class.isAssignableFrom(dispatcher)) {
+                    return Optional.empty();
+                }
+                return Optional.of((JsonRpcDispatcher) dispatcher.getConstructor().newInstance());
+            } catch (ClassNotFoundException e) {
+                return Optional.empty();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create dispatcher for " + type.getName(), e);
+            }
+        }
+    };
+
+    /** Candidates by wire name (null if all interfaces have dispatchers) */
+    private final Map<String, JsonRpcServerMethod[]> mMethods;
+
+    /** Dispatchers of all interfaces (null if some have none) */
+    private final JsonRpcDispatcher[] mDispatchers;
+
+    /** Candidates by dispatcher and index of the first method of their name */
+    private final JsonRpcServerMethod[][][] mSlots;
+
+    /** All methods in the table */
+    private final JsonRpcServerMethod[] mAllMethods;
+
+    /**
+     * Build a dispatch table for the given protocol interfaces
+     * @param interfaces representing the protocols
+     */
+    public JsonRpcDispatchTable(Class<?>[] interfaces) {
+        JsonRpcDispatcher[] dispatchers = new JsonRpcDispatcher[interfaces.length];
+        boolean generated = true;
+        for (int i = 0; i < interfaces.length; i++) {
+            dispatchers[i] = DISPATCHERS.get(interfaces[i]).orElse(null);
+            generated &= dispatchers[i] != null;
+        }
+
+        // collect candidates in a stable order
+        Map<String, List<JsonRpcServerMethod>> collected =
+                new LinkedHashMap<String, List<JsonRpcServerMethod>>();
+        List<JsonRpcServerMethod> all = new ArrayList<JsonRpcServerMethod>();
+        Set<List<Object>> seen = new HashSet<List<Object>>();
+        for (int i = 0; i < interfaces.length; i++) {
+            Class<?> clazz = interfaces[i];
+            JsonRpcDispatcher dispatcher = dispatchers[i];
+            if (dispatcher != null) {
+                JsonRpcServerMethod[] described = dispatcher.getMethods();
+                for (int j = 0; j < described.length; j++) {
+                    JsonRpcServerMethod method = described[j];
+                    // interfaces may share methods through inheritance
+                    if (seen.add(getKey(method.getDeclaringClass(), method.getJavaName(), getParameterClasses(method)))) {
+                        add(collected, all, new JsonRpcServerMethod(all.size(), method, dispatcher, j));
+                    }
+                }
+            } else {
+                String prefix = getPrefix(clazz);
+                for (Method method : clazz.getMethods()) {
+                    if (seen.add(getKey(method.getDeclaringClass(), method.getName(), method.getParameterTypes()))) {
+                        add(collected, all, new JsonRpcServerMethod(all.size(), prefix + getName(method), clazz, method));
+                    }
+                }
+            }
+        }
+
+        // freeze into arrays
+        mAllMethods = all.toArray(new JsonRpcServerMethod[all.size()]);
+        Map<String, JsonRpcServerMethod[]> methods = new HashMap<String, JsonRpcServerMethod[]>(collected.size() * 2);
+        for (Map.Entry<String, List<JsonRpcServerMethod>> entry : collected.entrySet()) {
+            List<JsonRpcServerMethod> candidates = entry.getValue();
+            methods.put(entry.getKey(), candidates.toArray(new JsonRpcServerMethod[candidates.size()]));
+        }
+        if (generated) {
+            // each dispatcher finds the candidates of all interfaces for its names
+            mMethods = null;
+            mDispatchers = dispatchers;
+            mSlots = new JsonRpcServerMethod[dispatchers.length][][];
+            for (int i = 0; i < dispatchers.length; i++) {
+                JsonRpcServerMethod[] described = dispatchers[i].getMethods();
+                mSlots[i] = new JsonRpcServerMethod[described.length][];
+                for (int j = 0; j < described.length; j++) {
+                    String name = described[j].getName();
+                    if (dispatchers[i].find(name) == j) {
+                        mSlots[i][j] = methods.get(name);
+                    }
+                }
+            }
+        } else {
+            mMethods = methods;
+            mDispatchers = null;
+            mSlots = null;
+        }
+    }
+
+    /**
+     * Look up the candidates for the given wire name
+     *
+     * The returned array is shared and must not be modified.
+     *
+     * @param name of the method on the wire
+     * @return candidates or null if there are none
+     */
+    public JsonRpcServerMethod[] lookup(String name) {
+        if (name == null) {
+            return null;
+        }
+        JsonRpcDispatcher[] dispatchers = mDispatchers;
+        if (dispatchers == null) {
+            return mMethods.get(name);
+        }
+        for (int i = 0; i < dispatchers.length; i++) {
+            int index = dispatchers[i].find(name);
+            if (index >= 0 && mSlots[i][index] != null) {
+                return mSlots[i][index];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return all methods in the table, indexed by their index
+     *
+     * The returned array is shared and must not be modified.
+     *
+     * @return all methods
+     */
+    public JsonRpcServerMethod[] getAllMethods() {
+        return mAllMethods;
+    }
+
+    private static void add(Map<String, List<JsonRpcServerMethod>> collected,
+                            List<JsonRpcServerMethod> all, JsonRpcServerMethod method) {
+        List<JsonRpcServerMethod> candidates = collected.get(method.getName());
+        if (candidates == null) {
+            candidates = new ArrayList<JsonRpcServerMethod>(1);
+            collected.put(method.getName(), candidates);
+        }
+        candidates.add(method);
+        all.add(method);
+    }
+
+    /** Identify a method independent of the interface it was found through */
+    private static List<Object> getKey(Class<?> declaringClass, String name, Class<?>[] parameterClasses) {
+        return Arrays.<Object>asList(declaringClass, name, Arrays.asList(parameterClasses));
+    }
+
+    private static Class<?>[] getParameterClasses(JsonRpcServerMethod method) {
+        Class<?>[] classes = new Class<?>[method.getParameterCount()];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = method.getParameterClass(i);
+        }
+        return classes;
+    }
+
+    /** Determine the method prefix of the given interface */
+    private static String getPrefix(Class<?> clazz) {
+        JsonRpcInterface annotation = clazz.getAnnotation(JsonRpcInterface.class);
+        if (annotation != null && !annotation.prefix().isEmpty()) {
+            return annotation.prefix();
+        }
+        return "";
+    }
+
+    /** Determine the unprefixed wire name of the given method */
+    private static String getName(Method method) {
+        JsonRpcMethod annotation = method.getAnnotation(JsonRpcMethod.class);
+        if (annotation != null && !annotation.name().isEmpty()) {
+            return annotation.name();
+        }
+        return method.getName();
+    }
+
+}
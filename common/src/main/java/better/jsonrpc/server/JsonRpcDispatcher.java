@@ -0,0 +1,47 @@
+package better.jsonrpc.server;
+
+/**
+ * Generated dispatcher for a protocol interface
+ *
+ * Dispatchers are generated at build time by the annotation
+ * processor for interfaces annotated with
+ * {@link better.jsonrpc.annotations.JsonRpcInterface}. They
+ * describe the methods of the interface with constants, find
+ * them by wire name with a switch, and provide invokers that
+ * cast their arguments to the parameter types and call the
+ * handler directly.
+ *
+ * {@link JsonRpcDispatchTable} and {@link JsonRpcHandlerBinding}
+ * use them automatically when they are present, so serving such
+ * an interface needs no reflection on its methods.
+ */
+public interface JsonRpcDispatcher {
+
+    /** Appended to the binary name of an interface to get the name of its dispatcher */
+    String CLASS_SUFFIX = "_JsonRpcDispatcher";
+
+    /**
+     * Describe the methods of the interface
+     *
+     * The returned array is shared and must not be modified.
+     *
+     * @return the methods, not part of any dispatch table
+     */
+    JsonRpcServerMethod[] getMethods();
+
+    /**
+     * Find the first method with the given wire name
+     * @param name of the method on the wire
+     * @return its index in {@link #getMethods()} or -1 if there is none
+     */
+    int find(String name);
+
+    /**
+     * Create an invoker for the given method of the given handler
+     * @param handler implementing the interface of this dispatcher
+     * @param index of the method in {@link #getMethods()}
+     * @return the invoker or null if the index is unknown
+     */
+    JsonRpcInvoker getInvoker(Object handler, int index);
+
+}
@@ -0,0 +1,117 @@
+package better.jsonrpc.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * Binding of a handler object to a server
+ *
+ * Holds one {@link JsonRpcInvoker} per method in the dispatch
+ * table of the server, each bound to the handler once. Invokers
+ * come from the generated {@link JsonRpcDispatcher} describing the
+ * method where there is one. Otherwise a class calling the method
+ * directly is defined at runtime, see {@link JsonRpcInvokerFactory}.
+ * Methods such a class can not access are called through method
+ * handles, which still avoid the access checks and argument
+ * copying of {@link Method#invoke}.
+ *
+ * Bindings are immutable and may be shared between threads.
+ */
+public class JsonRpcHandlerBinding {
+
+    /** Generic type of all bound method handles */
+    private static final MethodType INVOKER_TYPE =
+            MethodType.methodType(Object.class, Object[].class);
+
+    /** The bound handler */
+    private final Object mHandler;
+
+    /** Invokers indexed by method index */
+    private final JsonRpcInvoker[] mInvokers;
+
+    /**
+     * Bind the given handler to all methods in the given table
+     * @param table of the server
+     * @param handler to bind
+     * @throws IllegalArgumentException if the handler does not implement a method
+     */
+    public JsonRpcHandlerBinding(JsonRpcDispatchTable table, Object handler) {
+        JsonRpcServerMethod[] methods = table.getAllMethods();
+        mHandler = handler;
+        mInvokers = new JsonRpcInvoker[methods.length];
+        for (JsonRpcServerMethod method : methods) {
+            if (!method.getDeclaringClass().isInstance(handler)) {
+                throw new IllegalArgumentException(
+                        "Handler " + handler.getClass().getName()
+                        + " does not implement " + method.getDeclaringClass().getName());
+            }
+            JsonRpcInvoker invoker = createGeneratedInvoker(method, handler);
+            if (invoker == null) {
+                invoker = JsonRpcInvokerFactory.create(method.getMethod(), handler);
+            }
+            if (invoker == null) {
+                invoker = new MethodHandleInvoker(
+                        createHandle(method.getMethod(), handler, method.getParameterCount()));
+            }
+            mInvokers[method.getIndex()] = invoker;
+        }
+    }
+
+    /** @return the bound handler */
+    public Object getHandler() {
+        return mHandler;
+    }
+
+    /**
+     * Return the invoker for the given method
+     * @param method from the dispatch table of the server
+     * @return invoker bound to the handler
+     */
+    public JsonRpcInvoker getInvoker(JsonRpcServerMethod method) {
+        return mInvokers[method.getIndex()];
+    }
+
+    /** Get an invoker from the generated dispatcher describing the method, if any */
+    private static JsonRpcInvoker createGeneratedInvoker(JsonRpcServerMethod method, Object handler) {
+        JsonRpcDispatcher dispatcher = method.getDispatcher();
+        if (dispatcher == null || !method.getInterface().isInstance(handler)) {
+            return null;
+        }
+        return dispatcher.getInvoker(handler, method.getDispatcherIndex());
+    }
+
+    /** Create a method handle of type (Object[])Object for the given method */
+    private static MethodHandle createHandle(Method method, Object handler, int numParams) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            // non-public protocol interfaces need an accessible method
+            method.setAccessible(true);
+            try {
+                handle = MethodHandles.lookup().unreflect(method);
+            } catch (IllegalAccessException e2) {
+                throw new IllegalArgumentException("Can not access method " + method, e2);
+            }
+        }
+        return handle
+                .bindTo(handler)
+                .asSpreader(Object[].class, numParams)
+                .asType(INVOKER_TYPE);
+    }
+
+    /** Invoker backed by a bound method handle */
+    private static final class MethodHandleInvoker implements JsonRpcInvoker {
+        private final MethodHandle mHandle;
+        MethodHandleInvoker(MethodHandle handle) {
+            mHandle = handle;
+        }
+        @Override
+        public Object invoke(Object[] arguments) throws Throwable {
+            return mHandle.invokeExact(arguments);
+        }
+    }
+
+}
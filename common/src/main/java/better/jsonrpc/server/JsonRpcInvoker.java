@@ -0,0 +1,23 @@
+package better.jsonrpc.server;
+
+/**
+ * Invoker for a single handler method
+ *
+ * Invokers are created once per handler method when
+ * a handler is bound and are then called directly for
+ * each request, replacing reflective invocation.
+ *
+ * Exceptions thrown by the method are passed through
+ * unchanged instead of being wrapped.
+ */
+public interface JsonRpcInvoker {
+
+    /**
+     * Invoke the method with the given arguments
+     * @param arguments already converted to their Java types
+     * @return the return value of the method (null for void)
+     * @throws Throwable as thrown by the method
+     */
+    Object invoke(Object[] arguments) throws Throwable;
+
+}
@@ -0,0 +1,441 @@
+package better.jsonrpc.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory of invokers compiled for a single method each
+ *
+ * For every handler method a small class implementing
+ * {@link JsonRpcInvoker} is defined at runtime, which unpacks
+ * the arguments and calls the method with a plain interface
+ * call. Each method thus gets an invoker class of its own
+ * whose call into the handler the JIT can inline, which a
+ * method handle kept in an instance field does not allow.
+ *
+ * Classes are defined in a loader below the one of the
+ * protocol interface and are created once per method.
+ * Methods whose types are not public can not be called
+ * from such a class, for those null is returned.
+ */
+final class JsonRpcInvokerFactory {
+
+    /** Name prefix of the generated classes */
+    private static final String CLASS_PREFIX = "better/jsonrpc/server/JsonRpcCompiledInvoker$";
+
+    private static final String INVOKER_NAME = JsonRpcInvoker.class.getName().replace('.', '/');
+
+    /** Names for generated classes */
+    private static final AtomicInteger sCounter = new AtomicInteger();
+
+    /** Loaders and invoker constructors by protocol interface */
+    private static final ClassValue<InvokerLoader> LOADERS = new ClassValue<InvokerLoader>() {
+        @Override
+        protected InvokerLoader computeValue(Class<?> type) {
+            return new InvokerLoader(type.getClassLoader());
+        }
+    };
+
+    private JsonRpcInvokerFactory() {
+    }
+
+    /**
+     * Create an invoker calling the given method on the given handler
+     * @param method to call
+     * @param handler to call it on
+     * @return the invoker or null if the method can not be called directly
+     */
+    static JsonRpcInvoker create(Method method, Object handler) {
+        if (!isCallable(method)) {
+            return null;
+        }
+        Constructor<?> constructor = LOADERS.get(method.getDeclaringClass()).getConstructor(method);
+        if (constructor == null) {
+            return null;
+        }
+        try {
+            return (JsonRpcInvoker) constructor.newInstance(handler);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create invoker for " + method, e);
+        }
+    }
+
+    /** Determine whether a class in another loader can call the given method */
+    private static boolean isCallable(Method method) {
+        if (!Modifier.isPublic(method.getModifiers()) || Modifier.isStatic(method.getModifiers())) {
+            return false;
+        }
+        if (!isPublic(method.getDeclaringClass()) || !isPublic(method.getReturnType())) {
+            return false;
+        }
+        for (Class<?> parameter : method.getParameterTypes()) {
+            if (!isPublic(parameter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPublic(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+            if (!c.isPrimitive() && !Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Loader holding the invoker classes for the methods of one interface */
+    private static final class InvokerLoader extends ClassLoader {
+
+        /** Constructors by method, absent if the class could not be defined */
+        private final Map<Method, Constructor<?>> mConstructors = new ConcurrentHashMap<Method, Constructor<?>>();
+
+        InvokerLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            // the interface loader may not see the library
+            if (name.equals(JsonRpcInvoker.class.getName())) {
+                return JsonRpcInvoker.class;
+            }
+            return super.loadClass(name, resolve);
+        }
+
+        Constructor<?> getConstructor(Method method) {
+            Constructor<?> constructor = mConstructors.get(method);
+            if (constructor != null) {
+                return constructor;
+            }
+            synchronized (this) {
+                constructor = mConstructors.get(method);
+                if (constructor == null) {
+                    String name = CLASS_PREFIX + sCounter.incrementAndGet();
+                    try {
+                        byte[] bytes = new InvokerClassWriter(name, method).toByteArray();
+                        Class<?> invoker = defineClass(name.replace('/', '.'), bytes, 0, bytes.length);
+                        // verify now rather than on first use
+                        Class.forName(invoker.getName(), true, this);
+                        constructor = invoker.getConstructor(method.getDeclaringClass());
+                    } catch (IOException | LinkageError | ReflectiveOperationException e) {
+                        return null;
+                    }
+                    mConstructors.put(method, constructor);
+                }
+                return constructor;
+            }
+        }
+
+    }
+
+    /**
+     * Writer of the class file of an invoker
+     *
+     * The class holds the handler in a final field and
+     * has straight-line code only, so it needs no stack
+     * map frames.
+     */
+    private static final class InvokerClassWriter {
+
+        private static final int ACC_PUBLIC = 0x0001;
+        private static final int ACC_PRIVATE = 0x0002;
+        private static final int ACC_FINAL = 0x0010;
+        private static final int ACC_SUPER = 0x0020;
+
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_FIELDREF = 9;
+        private static final int CONSTANT_METHODREF = 10;
+        private static final int CONSTANT_INTERFACE_METHODREF = 11;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+        private static final int ACONST_NULL = 0x01;
+        private static final int ICONST_0 = 0x03;
+        private static final int BIPUSH = 0x10;
+        private static final int SIPUSH = 0x11;
+        private static final int ALOAD_0 = 0x2a;
+        private static final int ALOAD_1 = 0x2b;
+        private static final int AALOAD = 0x32;
+        private static final int ARETURN = 0xb0;
+        private static final int RETURN = 0xb1;
+        private static final int GETFIELD = 0xb4;
+        private static final int PUTFIELD = 0xb5;
+        private static final int INVOKEVIRTUAL = 0xb6;
+        private static final int INVOKESPECIAL = 0xb7;
+        private static final int INVOKESTATIC = 0xb8;
+        private static final int INVOKEINTERFACE = 0xb9;
+        private static final int CHECKCAST = 0xc0;
+
+        private final String mName;
+        private final Method mMethod;
+
+        /** Constant pool entries by their encoding */
+        private final Map<String, Integer> mConstantIndexes = new HashMap<String, Integer>();
+        private final ByteArrayOutputStream mConstantBytes = new ByteArrayOutputStream();
+        private final DataOutputStream mConstants = new DataOutputStream(mConstantBytes);
+        private int mConstantCount = 1;
+
+        InvokerClassWriter(String name, Method method) {
+            mName = name;
+            mMethod = method;
+        }
+
+        byte[] toByteArray() throws IOException {
+            Class<?> owner = mMethod.getDeclaringClass();
+            String ownerName = internalName(owner);
+            String handlerDescriptor = descriptor(owner);
+
+            int thisClass = classConstant(mName);
+            int superClass = classConstant("java/lang/Object");
+            int invokerClass = classConstant(INVOKER_NAME);
+            int handlerName = utf8Constant("handler");
+            int handlerType = utf8Constant(handlerDescriptor);
+            int handlerField = memberConstant(CONSTANT_FIELDREF, thisClass, "handler", handlerDescriptor);
+            int objectInit = memberConstant(CONSTANT_METHODREF, superClass, "<init>", "()V");
+            int initName = utf8Constant("<init>");
+            int initType = utf8Constant("(" + handlerDescriptor + ")V");
+            int invokeName = utf8Constant("invoke");
+            int invokeType = utf8Constant("([Ljava/lang/Object;)Ljava/lang/Object;");
+            int codeName = utf8Constant("Code");
+
+            // constructor storing the handler
+            ByteArrayOutputStream initCode = new ByteArrayOutputStream();
+            DataOutputStream init = new DataOutputStream(initCode);
+            init.writeByte(ALOAD_0);
+            init.writeByte(INVOKESPECIAL);
+            init.writeShort(objectInit);
+            init.writeByte(ALOAD_0);
+            init.writeByte(ALOAD_1);
+            init.writeByte(PUTFIELD);
+            init.writeShort(handlerField);
+            init.writeByte(RETURN);
+
+            // invoke unpacking the arguments
+            ByteArrayOutputStream invokeCode = new ByteArrayOutputStream();
+            DataOutputStream invoke = new DataOutputStream(invokeCode);
+            invoke.writeByte(ALOAD_0);
+            invoke.writeByte(GETFIELD);
+            invoke.writeShort(handlerField);
+            Class<?>[] parameters = mMethod.getParameterTypes();
+            int slots = 0;
+            for (int i = 0; i < parameters.length; i++) {
+                Class<?> parameter = parameters[i];
+                invoke.writeByte(ALOAD_1);
+                if (i <= 5) {
+                    invoke.writeByte(ICONST_0 + i);
+                } else if (i <= Byte.MAX_VALUE) {
+                    invoke.writeByte(BIPUSH);
+                    invoke.writeByte(i);
+                } else {
+                    invoke.writeByte(SIPUSH);
+                    invoke.writeShort(i);
+                }
+                invoke.writeByte(AALOAD);
+                if (parameter.isPrimitive()) {
+                    String box = internalName(box(parameter));
+                    invoke.writeByte(CHECKCAST);
+                    invoke.writeShort(classConstant(box));
+                    invoke.writeByte(INVOKEVIRTUAL);
+                    invoke.writeShort(memberConstant(CONSTANT_METHODREF, classConstant(box),
+                            parameter.getName() + "Value", "()" + descriptor(parameter)));
+                } else if (parameter != Object.class) {
+                    invoke.writeByte(CHECKCAST);
+                    invoke.writeShort(classConstant(parameter.isArray()
+                            ? descriptor(parameter) : internalName(parameter)));
+                }
+                slots += (parameter == long.class || parameter == double.class) ? 2 : 1;
+            }
+            String methodDescriptor = methodDescriptor(mMethod);
+            if (owner.isInterface()) {
+                invoke.writeByte(INVOKEINTERFACE);
+                invoke.writeShort(memberConstant(CONSTANT_INTERFACE_METHODREF, classConstant(ownerName),
+                        mMethod.getName(), methodDescriptor));
+                invoke.writeByte(1 + slots);
+                invoke.writeByte(0);
+            } else {
+                invoke.writeByte(INVOKEVIRTUAL);
+                invoke.writeShort(memberConstant(CONSTANT_METHODREF, classConstant(ownerName),
+                        mMethod.getName(), methodDescriptor));
+            }
+            Class<?> returnType = mMethod.getReturnType();
+            if (returnType == void.class) {
+                invoke.writeByte(ACONST_NULL);
+            } else if (returnType.isPrimitive()) {
+                String box = internalName(box(returnType));
+                invoke.writeByte(INVOKESTATIC);
+                invoke.writeShort(memberConstant(CONSTANT_METHODREF, classConstant(box),
+                        "valueOf", "(" + descriptor(returnType) + ")L" + box + ";"));
+            }
+            invoke.writeByte(ARETURN);
+            // handler, arguments so far, then array and index or a wide result
+            int maxStack = Math.max(1 + slots + 2, 2);
+
+            ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(classBytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(52);
+            out.writeShort(mConstantCount);
+            mConstants.flush();
+            mConstantBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(invokerClass);
+            // fields
+            out.writeShort(1);
+            out.writeShort(ACC_PRIVATE | ACC_FINAL);
+            out.writeShort(handlerName);
+            out.writeShort(handlerType);
+            out.writeShort(0);
+            // methods
+            out.writeShort(2);
+            writeMethod(out, initName, initType, codeName, 2, 2, initCode.toByteArray());
+            writeMethod(out, invokeName, invokeType, codeName, maxStack, 2, invokeCode.toByteArray());
+            // attributes
+            out.writeShort(0);
+            out.flush();
+            return classBytes.toByteArray();
+        }
+
+        private static void writeMethod(DataOutputStream out, int name, int type, int codeName,
+                                        int maxStack, int maxLocals, byte[] code) throws IOException {
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(name);
+            out.writeShort(type);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + code.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+        private int utf8Constant(String value) throws IOException {
+            String key = "U" + value;
+            Integer index = mConstantIndexes.get(key);
+            if (index == null) {
+                mConstants.writeByte(CONSTANT_UTF8);
+                mConstants.writeUTF(value);
+                index = addConstant(key);
+            }
+            return index;
+        }
+
+        private int classConstant(String internalName) throws IOException {
+            String key = "C" + internalName;
+            Integer index = mConstantIndexes.get(key);
+            if (index == null) {
+                int name = utf8Constant(internalName);
+                mConstants.writeByte(CONSTANT_CLASS);
+                mConstants.writeShort(name);
+                index = addConstant(key);
+            }
+            return index;
+        }
+
+        private int memberConstant(int tag, int owner, String name, String descriptor) throws IOException {
+            String key = tag + ":" + owner + "." + name + descriptor;
+            Integer index = mConstantIndexes.get(key);
+            if (index == null) {
+                int nameIndex = utf8Constant(name);
+                int descriptorIndex = utf8Constant(descriptor);
+                String nameAndTypeKey = "N" + name + descriptor;
+                Integer nameAndType = mConstantIndexes.get(nameAndTypeKey);
+                if (nameAndType == null) {
+                    mConstants.writeByte(CONSTANT_NAME_AND_TYPE);
+                    mConstants.writeShort(nameIndex);
+                    mConstants.writeShort(descriptorIndex);
+                    nameAndType = addConstant(nameAndTypeKey);
+                }
+                mConstants.writeByte(tag);
+                mConstants.writeShort(owner);
+                mConstants.writeShort(nameAndType);
+                index = addConstant(key);
+            }
+            return index;
+        }
+
+        private int addConstant(String key) {
+            int index = mConstantCount++;
+            mConstantIndexes.put(key, index);
+            return index;
+        }
+
+        private static String internalName(Class<?> type) {
+            return type.getName().replace('.', '/');
+        }
+
+        private static String methodDescriptor(Method method) {
+            StringBuilder descriptor = new StringBuilder("(");
+            for (Class<?> parameter : method.getParameterTypes()) {
+                descriptor.append(descriptor(parameter));
+            }
+            return descriptor.append(')').append(descriptor(method.getReturnType())).toString();
+        }
+
+        private static String descriptor(Class<?> type) {
+            if (type.isArray()) {
+                return type.getName().replace('.', '/');
+            }
+            if (type == void.class) {
+                return "V";
+            } else if (type == boolean.class) {
+                return "Z";
+            } else if (type == byte.class) {
+                return "B";
+            } else if (type == char.class) {
+                return "C";
+            } else if (type == short.class) {
+                return "S";
+            } else if (type == int.class) {
+                return "I";
+            } else if (type == long.class) {
+                return "J";
+            } else if (type == float.class) {
+                return "F";
+            } else if (type == double.class) {
+                return "D";
+            }
+            return "L" + internalName(type) + ";";
+        }
+
+        private static Class<?> box(Class<?> primitive) {
+            if (primitive == boolean.class) {
+                return Boolean.class;
+            } else if (primitive == byte.class) {
+                return Byte.class;
+            } else if (primitive == char.class) {
+                return Character.class;
+            } else if (primitive == short.class) {
+                return Short.class;
+            } else if (primitive == int.class) {
+                return Integer.class;
+            } else if (primitive == long.class) {
+                return Long.class;
+            } else if (primitive == float.class) {
+                return Float.class;
+            }
+            return Double.class;
+        }
+
+    }
+
+}
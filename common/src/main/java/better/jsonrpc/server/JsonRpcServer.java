@@ -1,35 +1,41 @@
 package better.jsonrpc.server;
 
-import better.jsonrpc.annotations.JsonRpcParam;
+import better.jsonrpc.core.JsonRpcMessage;
+import better.jsonrpc.core.JsonRpcMethodTypes;
+import better.jsonrpc.core.JsonRpcResponse;
 import better.jsonrpc.core.JsonRpcTransport;
 import better.jsonrpc.exceptions.AnnotationsErrorResolver;
 import better.jsonrpc.exceptions.DefaultErrorResolver;
 import better.jsonrpc.exceptions.ErrorResolver;
 import better.jsonrpc.exceptions.JsonError;
 import better.jsonrpc.exceptions.MultipleErrorResolver;
-import better.jsonrpc.util.ProtocolUtils;
-import better.jsonrpc.util.ReflectionUtil;
+import better.jsonrpc.util.ExecutorUtil;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.util.ClassUtil;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 /**
  * A JSON-RPC server
@@ -47,12 +53,36 @@ public class JsonRpcServer {
 	public static final ErrorResolver DEFAULT_ERRROR_RESOLVER
 		= new MultipleErrorResolver(AnnotationsErrorResolver.INSTANCE, DefaultErrorResolver.INSTANCE);
 
+    /** Default executor for the elements of batch requests, shared by all servers */
+    private static final Executor DEFAULT_BATCH_EXECUTOR = ExecutorUtil.newPerCallExecutor("jsonrpc-batch");
+
     /** Protocol interfaces for this server */
     private Class<?>[] mRemoteInterfaces;
 
+    /** Dispatch table built from the protocol interfaces */
+    private final JsonRpcDispatchTable mDispatchTable;
+
+    /** Maximum number of remembered bindings for unbound handlers */
+    private static final int MAX_BINDINGS = 8;
+
+    private static final JsonRpcHandlerBinding[] NO_BINDINGS = new JsonRpcHandlerBinding[0];
+
+    /** Recently used bindings for unbound handlers, most recent first */
+    private volatile JsonRpcHandlerBinding[] mBindings = NO_BINDINGS;
+
     /** Error resolver to be used */
     private ErrorResolver mErrorResolver = null;
 
+    /** Maximum number of remembered overload resolutions */
+    private static final int MAX_RESOLUTIONS = 1024;
+
+    /** Overload resolutions by parameter shape */
+    private final ConcurrentHashMap<ParamsShape, Resolution> mResolutions =
+            new ConcurrentHashMap<ParamsShape, Resolution>();
+
+    /** Executor for the elements of batch requests */
+    private Executor mBatchExecutor = DEFAULT_BATCH_EXECUTOR;
+
     /** Accept pre-JSON-RPC-2.0 requests */
     private boolean mBackwardsCompatible = true;
     /** Accept and ignore unknown parameters */
@@ -66,6 +96,7 @@ public class JsonRpcServer {
      */
 	public JsonRpcServer(Class<?>[] remoteInterfaces) {
 		this.mRemoteInterfaces = remoteInterfaces;
+		this.mDispatchTable = new JsonRpcDispatchTable(remoteInterfaces);
 	}
 
     /**
@@ -77,128 +108,401 @@ public class JsonRpcServer {
 	}
 
 	/**
-	 * Returns the handler's class or interfaces.
+	 * Returns the dispatch table of this server.
 	 *
-	 * @return the class
+	 * @return the dispatch table
 	 */
-	private Class<?>[] getHandlerInterfaces() {
-		return mRemoteInterfaces;
+	public JsonRpcDispatchTable getDispatchTable() {
+		return mDispatchTable;
 	}
-	
+
+	/**
+	 * Binds the given handler to the methods of this server.
+	 *
+	 * The binding should be created once and then be used
+	 * for all requests to the handler.
+	 *
+	 * @param handler implementing the protocol interfaces
+	 * @return the binding
+	 * @throws IllegalArgumentException if the handler does not implement the protocols
+	 */
+	public JsonRpcHandlerBinding bind(Object handler) {
+		return new JsonRpcHandlerBinding(mDispatchTable, handler);
+	}
+
+	/**
+	 * Returns a binding for the given handler, reusing
+	 * one of the recently used ones if it is for the same handler.
+	 *
+	 * Lookups are lock-free, updates copy the small binding array.
+	 */
+	private JsonRpcHandlerBinding getBinding(Object handler) {
+		JsonRpcHandlerBinding[] bindings = mBindings;
+		for (JsonRpcHandlerBinding binding : bindings) {
+			if (binding.getHandler() == handler) {
+				return binding;
+			}
+		}
+		JsonRpcHandlerBinding binding = bind(handler);
+		synchronized (this) {
+			bindings = mBindings;
+			for (JsonRpcHandlerBinding other : bindings) {
+				if (other.getHandler() == handler) {
+					return other;
+				}
+			}
+			int count = Math.min(bindings.length, MAX_BINDINGS - 1);
+			JsonRpcHandlerBinding[] updated = new JsonRpcHandlerBinding[count + 1];
+			updated[0] = binding;
+			System.arraycopy(bindings, 0, updated, 1, count);
+			mBindings = updated;
+		}
+		return binding;
+	}
+
 	/**
 	 * Handles the given {@link ObjectNode}.
 	 *
+	 * Prefer binding the handler once using {@link #bind(Object)}.
+	 *
 	 * @param node the {@link JsonNode}
+	 * @return future completing once the response has been sent
 	 * @throws IOException on error
 	 */
-	public void handleRequest(Object handler, ObjectNode node, JsonRpcTransport connection) throws IOException {
-        ObjectMapper mapper = connection.getMapper();
+	public CompletableFuture<Void> handleRequest(Object handler, ObjectNode node, JsonRpcTransport connection) throws IOException {
+		return handleRequest(getBinding(handler), node, connection);
+	}
 
-		if (LOG.isTraceEnabled()) {
-			LOG.trace("request " + node.toString());
+	/**
+	 * Handles the given {@link ObjectNode}.
+	 *
+	 * The tree is replayed as tokens, so this shares
+	 * all processing with the streaming variant.
+	 *
+	 * @param binding of the handler
+	 * @param node the {@link JsonNode}
+	 * @return future completing once the response has been sent
+	 * @throws IOException on error
+	 */
+	public CompletableFuture<Void> handleRequest(JsonRpcHandlerBinding binding, ObjectNode node, JsonRpcTransport connection) throws IOException {
+		JsonParser parser = connection.getMapper().treeAsTokens(node);
+		try {
+			return handleRequest(binding, parser, connection);
+		} finally {
+			parser.close();
 		}
+	}
 
-		// validate request
-		if ((!mBackwardsCompatible && !node.has("jsonrpc")) || !node.has("method")) {
+	/**
+	 * Handles a request read from the given parser.
+	 *
+	 * Prefer binding the handler once using {@link #bind(Object)}.
+	 *
+	 * @param parser positioned on or before the request object
+	 * @return future completing once the response has been sent
+	 * @throws IOException on error
+	 */
+	public CompletableFuture<Void> handleRequest(Object handler, JsonParser parser, JsonRpcTransport connection) throws IOException {
+		return handleRequest(getBinding(handler), parser, connection);
+	}
+
+	/**
+	 * Handles a request read from the given parser.
+	 *
+	 * Parameters are bound directly from the parser where
+	 * possible, without building an intermediate tree.
+	 *
+	 * The request is read completely before this returns,
+	 * but the response may be sent later on if the handler
+	 * is asynchronous.
+	 *
+	 * @param binding of the handler
+	 * @param parser positioned on or before the request object
+	 * @return future completing once the response has been sent
+	 * @throws IOException on error
+	 */
+	public CompletableFuture<Void> handleRequest(JsonRpcHandlerBinding binding, JsonParser parser, JsonRpcTransport connection) throws IOException {
+		ObjectMapper mapper = connection.getMapper();
+		JsonToken token = parser.getCurrentToken();
+		if (token == null) {
+			token = parser.nextToken();
+		}
+		if (token == JsonToken.START_ARRAY) {
+			return handleBatch(binding, JsonRpcMessage.readBatch(parser, this, mapper), connection);
+		} else {
+			return handleRequest(binding, JsonRpcMessage.read(parser, this, mapper), connection);
+		}
+	}
+
+	/**
+	 * Handles the given request message.
+	 *
+	 * Responses available right away are sent before this returns.
+	 * Those of asynchronous handlers are sent when they complete.
+	 *
+	 * @param binding of the handler
+	 * @param message the request
+	 * @return future completing once the response has been sent
+	 * @throws IOException on error
+	 */
+	public CompletableFuture<Void> handleRequest(JsonRpcHandlerBinding binding, JsonRpcMessage message, final JsonRpcTransport connection) throws IOException {
+		return sendWhenDone(execute(binding, message, connection.getMapper()),
+			response -> connection.sendResponse(response));
+	}
+
+	/**
+	 * Handles the given batch of request messages.
+	 *
+	 * All but the last element are executed on the batch executor,
+	 * the last one on the calling thread. Responses are sent as one
+	 * array once all elements are done, leaving out notifications.
+	 * Nothing is sent if the batch consists of notifications only.
+	 *
+	 * @param binding of the handler
+	 * @param messages the requests in batch order
+	 * @return future completing once the responses have been sent
+	 * @throws IOException on error
+	 */
+	public CompletableFuture<Void> handleBatch(final JsonRpcHandlerBinding binding, List<JsonRpcMessage> messages, final JsonRpcTransport connection) throws IOException {
+		final ObjectMapper mapper = connection.getMapper();
+
+		// empty batches are invalid
+		final int count = messages.size();
+		if (count == 0) {
 			connection.sendResponse(
-				ProtocolUtils.createErrorResponse(mapper,
-					"2.0", "null", -32600, "Invalid Request", null));
-			return;
+				JsonRpcResponse.error("2.0", "null", -32600, "Invalid Request", null));
+			return CompletableFuture.completedFuture(null);
 		}
 
-		// get nodes
-		JsonNode jsonRpcNode	= node.get("jsonrpc");
-		JsonNode methodNode		= node.get("method");
-		JsonNode idNode 		= node.get("id");
-		JsonNode paramsNode		= node.get("params");
+		if (LOG.isTraceEnabled()) {
+			LOG.trace("batch of " + count);
+		}
 
-		// get node values
-		String version		= (jsonRpcNode!=null && !jsonRpcNode.isNull()) ? jsonRpcNode.asText() : "2.0";
-		String methodName	= (methodNode!=null && !methodNode.isNull()) ? methodNode.asText() : null;
-		Object id			= ProtocolUtils.parseId(idNode);
-		
-		// find methods
-		Set<Method> methods = new HashSet<Method>();
-		methods.addAll(ReflectionUtil.findMethods(getHandlerInterfaces(), methodName));
-		if (methods.isEmpty()) {
-			if(id != null) {
-				connection.sendResponse(
-					ProtocolUtils.createErrorResponse(
-						mapper, version, id, -32601, "Method not found", null));
+		// start all but the last element
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		final CompletableFuture<JsonRpcResponse>[] futures = new CompletableFuture[count];
+		for (int i=0; i<count-1; i++) {
+			final JsonRpcMessage message = messages.get(i);
+			futures[i] = CompletableFuture.supplyAsync(
+				() -> executeBatchElement(binding, message, mapper), mBatchExecutor)
+				.thenCompose(future -> future);
+		}
+
+		// run the last one ourselves
+		futures[count - 1] = executeBatchElement(binding, messages.get(count - 1), mapper);
+
+		// collect responses in batch order
+		CompletableFuture<List<JsonRpcResponse>> all = CompletableFuture.allOf(futures).thenApply(v -> {
+			List<JsonRpcResponse> responses = new ArrayList<JsonRpcResponse>(count);
+			for (CompletableFuture<JsonRpcResponse> future : futures) {
+				JsonRpcResponse response = future.join();
+				if (response != null) {
+					responses.add(response);
+				}
+			}
+			return responses;
+		});
+
+		return sendWhenDone(all, responses -> {
+			if (!responses.isEmpty()) {
+				connection.sendBatchResponse(responses);
+			}
+		});
+	}
+
+	/** Executes one element of a batch, turning failures into error responses */
+	private CompletableFuture<JsonRpcResponse> executeBatchElement(JsonRpcHandlerBinding binding, JsonRpcMessage message, ObjectMapper mapper) {
+		try {
+			return execute(binding, message, mapper);
+		} catch (Throwable t) {
+			LOG.error("Exception handling batch element", t);
+			Object id = message.getId();
+			if (id == null) {
+				return CompletableFuture.completedFuture(null);
 			}
-			return;
+			String version = (message.getVersion() != null) ? message.getVersion() : "2.0";
+			return CompletableFuture.completedFuture(
+				JsonRpcResponse.error(version, id, -32603, "Internal error", null));
 		}
-		
-		// choose a method
-		MethodAndArgs methodArgs = findBestMethodByParamsNode(methods, paramsNode);
-		if (methodArgs==null) {
-			if(id != null) {
-				connection.sendResponse(
-					ProtocolUtils.createErrorResponse(
-						mapper, version, id, -32602, "Invalid method parameters", null));
+	}
+
+	/** Sends responses, directly if they are available already */
+	private interface ResponseSender<T> {
+		void send(T response) throws IOException;
+	}
+
+	/**
+	 * Sends the value of the given future once it is available.
+	 *
+	 * If it is available already it is sent right away,
+	 * letting errors propagate to the caller. Otherwise
+	 * errors are logged when they occur.
+	 */
+	private static <T> CompletableFuture<Void> sendWhenDone(CompletableFuture<T> future, final ResponseSender<T> sender)
+		throws IOException {
+		if (future.isDone()) {
+			T response = future.join();
+			if (response != null) {
+				sender.send(response);
 			}
-			return;
+			return CompletableFuture.completedFuture(null);
+		}
+		return future.thenAccept(response -> {
+			if (response != null) {
+				try {
+					sender.send(response);
+				} catch (IOException e) {
+					LOG.error("Exception sending response", e);
+					throw new CompletionException(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Executes the given request message.
+	 *
+	 * The returned future completes with the response once the
+	 * handler is done, which is right away for synchronous
+	 * handlers. It never completes exceptionally.
+	 *
+	 * @param binding of the handler
+	 * @param message the request
+	 * @param mapper to use for conversion
+	 * @return future of the response, which is null for notifications
+	 * @throws IOException on error
+	 */
+	public CompletableFuture<JsonRpcResponse> execute(JsonRpcHandlerBinding binding, JsonRpcMessage message, final ObjectMapper mapper) throws IOException {
+		if (LOG.isTraceEnabled()) {
+			LOG.trace("request [" + message.getId() + "] " + message.getMethod());
 		}
+
+		// validate request
+		if ((!mBackwardsCompatible && !message.hasVersion()) || message.getMethod() == null) {
+			return CompletableFuture.completedFuture(
+				JsonRpcResponse.error("2.0", "null", -32600, "Invalid Request", null));
+		}
+
+		// get values
+		final String version	= (message.getVersion() != null) ? message.getVersion() : "2.0";
+		final String methodName	= message.getMethod();
+		final Object id			= message.getId();
 		
-		// invoke the method
-		JsonNode result = null;
-		Throwable thrown = null;
-		try {
-			result = invoke(handler, methodArgs.method, methodArgs.arguments, mapper);
-		} catch (Throwable e) {
-			thrown = e;
+		// find methods
+		JsonRpcServerMethod[] methods = mDispatchTable.lookup(methodName);
+		if (methods == null) {
+			return CompletableFuture.completedFuture((id != null)
+				? JsonRpcResponse.error(version, id, -32601, "Method not found", null)
+				: null);
 		}
 		
+		// choose a method, unless already bound while parsing
+		JsonRpcServerCall bound = message.getCall();
+		if (bound == null && !message.hasInvalidParams()) {
+			bound = resolveCall(methods, message.getParams(), mapper);
+		}
+		if (bound == null) {
+			return CompletableFuture.completedFuture((id != null)
+				? JsonRpcResponse.error(version, id, -32602, "Invalid method parameters", null)
+				: null);
+		}
+		return execute(binding, version, id, bound, mapper);
+	}
+
+	/**
+	 * Executes a call that has been resolved already.
+	 *
+	 * In-process transports use this with arguments that
+	 * have never been serialized.
+	 *
+	 * @param binding of the handler
+	 * @param version of the protocol
+	 * @param id of the request (null for notifications)
+	 * @param call the method and its converted arguments
+	 * @param mapper to use for conversion
+	 * @return future of the response, which is null for notifications
+	 */
+	public CompletableFuture<JsonRpcResponse> execute(JsonRpcHandlerBinding binding, final String version, final Object id,
+													  final JsonRpcServerCall call, final ObjectMapper mapper) {
+		// invoke the method
+		Object result = null;
+		Throwable thrown = call.getError();
+		if (thrown == null) {
+			try {
+				result = invoke(binding, call);
+			} catch (Throwable e) {
+				thrown = e;
+			}
+		}
+
+		// wait for asynchronous results
+		if (thrown == null && result != null && call.getMethod().isAsync()) {
+			return ((CompletionStage<?>) result).handle((value, error) ->
+				createResponse(version, id, call, mapper, value, unwrapAsyncError(error)))
+				.toCompletableFuture();
+		}
+
+		return CompletableFuture.completedFuture(
+			createResponse(version, id, call, mapper, result, thrown));
+	}
+
+	/** Creates the response for a finished call (null for notifications) */
+	private JsonRpcResponse createResponse(String version, Object id, JsonRpcServerCall call,
+										   ObjectMapper mapper, Object result, Throwable thrown) {
 		// log errors
 		if(thrown != null) {
-            Throwable realThrown = thrown;
-            if(realThrown instanceof InvocationTargetException) {
-                realThrown = ((InvocationTargetException)realThrown).getTargetException();
-            }
 			if (LOG.isInfoEnabled()) {
-				LOG.info("Error in JSON-RPC call", realThrown);
+				LOG.info("Error in JSON-RPC call", thrown);
 			}
 		}
 		
 		// build response if not a notification
+		JsonRpcResponse response = null;
 		if(id != null) {
-			ObjectNode response = null;
 			
 			if(thrown == null) {
-				response = ProtocolUtils.createSuccessResponse(
-						mapper, version, id, result);
+				response = JsonRpcResponse.success(
+						version, id, result, call.getMethod().getTypes(mapper).getResultWriter());
 			} else {
-				JsonError error = resolveError(thrown, methodArgs);
-				response = ProtocolUtils.createErrorResponse(
-						mapper, version, id,
+				JsonError error = resolveError(thrown, call, mapper);
+				response = JsonRpcResponse.error(
+						version, id,
 						error.getCode(), error.getMessage(), error.getData());
 			}
 
             if (LOG.isTraceEnabled()) {
-                LOG.trace("response " + response.toString());
+                LOG.trace("response " + response.toNode(mapper).toString());
             }
-			
-			connection.sendResponse(response);
 		}
+		return response;
+	}
+
+	/** Strip the wrappers futures put around errors of asynchronous handlers */
+	private static Throwable unwrapAsyncError(Throwable error) {
+		while ((error instanceof CompletionException || error instanceof ExecutionException)
+			&& error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error;
 	}
 	
-	private JsonError resolveError(Throwable thrown, MethodAndArgs methodArgs) {
+	private JsonError resolveError(Throwable thrown, JsonRpcServerCall call, ObjectMapper mapper) {
 		// attempt to resolve the error
 		JsonError error = null;
 
-		// get cause of exception
+		// invokers do not wrap exceptions
 		Throwable e = thrown;
-		if (InvocationTargetException.class.isInstance(e)) {
-			e = InvocationTargetException.class.cast(e).getTargetException();
-		}
+
+		// arguments are bound without nodes, build them for resolvers
+		List<JsonNode> arguments = toNodes(call.getArguments(), mapper);
 
 		// resolve error
 		if (mErrorResolver !=null) {
 			error = mErrorResolver.resolveError(
-				e, methodArgs.method, methodArgs.arguments);
+				e, call.getMethod().getMethod(), arguments);
 		} else {
 			error = DEFAULT_ERRROR_RESOLVER.resolveError(
-				e, methodArgs.method, methodArgs.arguments);
+				e, call.getMethod().getMethod(), arguments);
 		}
 
 		// make sure we have a JsonError
@@ -210,104 +514,472 @@ public class JsonRpcServer {
 		return error;
 	}
 
+	/** Converts bound arguments back to nodes, only done on errors */
+	private static List<JsonNode> toNodes(Object[] arguments, ObjectMapper mapper) {
+		if (arguments == null) {
+			return Collections.emptyList();
+		}
+		List<JsonNode> nodes = new ArrayList<JsonNode>(arguments.length);
+		for (Object argument : arguments) {
+			try {
+				nodes.add(mapper.<JsonNode>valueToTree(argument));
+			} catch (IllegalArgumentException e) {
+				// not serializable, but still at its position
+				nodes.add(mapper.getNodeFactory().nullNode());
+			}
+		}
+		return nodes;
+	}
+
 	/**
-	 * Invokes the given method on the {@code handler} passing
-	 * the given params (after converting them to beans\objects)
-	 * to it.
+	 * Invokes the given call on the bound handler.
 	 *
-	 * @param m the method to invoke
-	 * @param params the params to pass to the method
+	 * @param binding the handler binding
+	 * @param call the method and its converted arguments
 	 * @return the return value (or null if no return)
-	 * @throws IOException on error
-	 * @throws IllegalAccessException on error
-	 * @throws InvocationTargetException on error
+	 * @throws Throwable as thrown by the method
 	 */
-	protected JsonNode invoke(Object handler, Method m, List<JsonNode> params, ObjectMapper mapper)
-		throws IOException,
-		IllegalAccessException,
-		InvocationTargetException {
+	protected Object invoke(JsonRpcHandlerBinding binding, JsonRpcServerCall call)
+		throws Throwable {
 
 		// debug log
 		if (LOG.isTraceEnabled()) {
-			LOG.trace("invoking " + m.getName());
+			LOG.trace("invoking " + call.getMethod().getName());
 		}
 
-		// convert the parameters
-		Object[] convertedParams = new Object[params.size()];
-		Type[] parameterTypes = m.getGenericParameterTypes();
-		
-		for (int i=0; i<parameterTypes.length; i++) {
-		    JsonParser paramJsonParser = mapper.treeAsTokens(params.get(i));
-		    JavaType paramJavaType = TypeFactory.defaultInstance().constructType(parameterTypes[i]);
-			convertedParams[i] = mapper.readValue(paramJsonParser, paramJavaType);
+		// invoke the method
+		return binding.getInvoker(call.getMethod()).invoke(call.getArguments());
+	}
+
+	/**
+	 * Resolves a call with arguments that are Java objects already.
+	 *
+	 * Positional arguments choose the candidate whose parameter
+	 * types accept them, named ones the candidate that has all
+	 * of their names. Arguments are passed on unchanged, so they
+	 * may still need converting where a candidate was chosen
+	 * only by the number of its parameters.
+	 *
+	 * @param methodName the name of the method on the wire
+	 * @param arguments as an array, collection or map (may be null)
+	 * @return the call or null if no method fits
+	 */
+	public JsonRpcServerCall resolveCall(String methodName, Object arguments) {
+		JsonRpcServerMethod[] methods = mDispatchTable.lookup(methodName);
+		if (methods == null) {
+			return null;
+		}
+		if (arguments instanceof Map) {
+			return resolveNamedCall(methods, (Map<?, ?>) arguments);
 		}
+		Object[] values;
+		if (arguments == null) {
+			values = new Object[0];
+		} else if (arguments instanceof Object[]) {
+			values = ((Object[]) arguments).clone();
+		} else if (arguments instanceof Collection) {
+			values = ((Collection<?>) arguments).toArray();
+		} else {
+			return null;
+		}
+		JsonRpcServerMethod byCount = null;
+		int numByCount = 0;
+		for (JsonRpcServerMethod method : methods) {
+			if (method.getParameterCount() != values.length) {
+				continue;
+			}
+			boolean accepted = true;
+			for (int i=0; i<values.length && accepted; i++) {
+				accepted = accepts(method.getParameterClass(i), values[i]);
+			}
+			if (accepted) {
+				return new JsonRpcServerCall(method, values);
+			}
+			byCount = method;
+			numByCount++;
+		}
+		return (numByCount == 1) ? new JsonRpcServerCall(byCount, values) : null;
+	}
 
-		// invoke the method
-		Object result = m.invoke(handler, convertedParams);
-		return (m.getGenericReturnType()!=null) ? mapper.valueToTree(result) : null;
+	/** Resolves named Java arguments to the first candidate that has all the names */
+	private JsonRpcServerCall resolveNamedCall(JsonRpcServerMethod[] methods, Map<?, ?> arguments) {
+		for (JsonRpcServerMethod method : methods) {
+			int numParameters = method.getParameterCount();
+			Object[] values = new Object[numParameters];
+			int numMatchingParams = 0;
+			for (Map.Entry<?, ?> entry : arguments.entrySet()) {
+				int index = method.getParameterIndex(String.valueOf(entry.getKey()));
+				if (index >= 0) {
+					values[index] = entry.getValue();
+					numMatchingParams++;
+				} else if (!mAllowExtraParams) {
+					numMatchingParams = -1;
+					break;
+				}
+			}
+			if (numMatchingParams < 0 || (!mAllowLessParams && numMatchingParams < numParameters)) {
+				continue;
+			}
+			for (int i=0; i<numParameters; i++) {
+				if (values[i] == null) {
+					values[i] = missingValue(method.getParameterClass(i));
+				}
+			}
+			return new JsonRpcServerCall(method, values);
+		}
+		return null;
+	}
+
+	/** Determines whether the given value can be passed for a parameter of the given type */
+	private static boolean accepts(Class<?> clazz, Object value) {
+		if (value == null) {
+			return !clazz.isPrimitive();
+		}
+		return clazz.isPrimitive() ? ClassUtil.wrapperType(clazz).isInstance(value) : clazz.isInstance(value);
 	}
 
 	/**
-	 * Finds the {@link Method} from the supplied {@link Set} that
-	 * best matches the rest of the arguments supplied and returns
-	 * it as a {@link MethodAndArgs} class.
+	 * Returns true if parameters for the given method can be
+	 * bound while parsing, which requires the method to be
+	 * unambiguous.
 	 *
-	 * @param methods the {@link Method}s
-	 * @param paramsNode the {@link JsonNode} passed as the parameters
-	 * @return the {@link MethodAndArgs}
+	 * @param methodName the name of the method on the wire
+	 * @return true if {@link #bindParams} may be used
 	 */
-	private MethodAndArgs findBestMethodByParamsNode(Set<Method> methods, JsonNode paramsNode) {
+	public boolean canBindDirectly(String methodName) {
+		JsonRpcServerMethod[] methods = mDispatchTable.lookup(methodName);
+		return methods != null && methods.length == 1;
+	}
+
+	/**
+	 * Binds the parameters at the current position of the
+	 * parser directly to the single method of the given name.
+	 *
+	 * On return the parser is positioned on the last token
+	 * of the parameters, even if binding failed.
+	 *
+	 * @param methodName the name of the method on the wire
+	 * @param parser positioned on the start of the parameters
+	 * @param mapper to use for conversion
+	 * @return the call or null if the parameters do not fit
+	 * @throws IOException on parse errors
+	 */
+	public JsonRpcServerCall bindParams(String methodName, JsonParser parser, ObjectMapper mapper) throws IOException {
+		JsonRpcServerMethod method = mDispatchTable.lookup(methodName)[0];
+		if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
+			return bindParamsByIndex(method, parser, mapper);
+		} else {
+			return bindParamsByName(method, parser, mapper);
+		}
+	}
+
+	/**
+	 * Resolves buffered parameters to a call, choosing the
+	 * best method among the given candidates.
+	 *
+	 * The choice only depends on the shape of the parameters,
+	 * so it is remembered for each shape seen.
+	 *
+	 * @param methods the candidates
+	 * @param params the buffered parameters (may be null)
+	 * @param mapper to use for conversion
+	 * @return the call or null if no method fits
+	 * @throws IOException on parse errors
+	 */
+	private JsonRpcServerCall resolveCall(JsonRpcServerMethod[] methods, TokenBuffer params, ObjectMapper mapper)
+		throws IOException {
+
+		// determine the shape of the parameters
+		ParamsShape shape;
+		if (params == null) {
+			shape = ParamsShape.empty(methods);
+		} else {
+			JsonParser parser = params.asParser(mapper);
+			try {
+				parser.nextToken();
+				shape = ParamsShape.scan(methods, parser);
+			} finally {
+				parser.close();
+			}
+		}
+
+		// choose a method
+		Resolution resolution = mResolutions.get(shape);
+		if (resolution == null) {
+			resolution = resolve(shape);
+			if (mResolutions.size() >= MAX_RESOLUTIONS) {
+				evictResolution();
+			}
+			mResolutions.put(shape, resolution);
+		}
+		JsonRpcServerMethod method = resolution.method;
+		if (method == null) {
+			return null;
+		}
 
 		// no parameters
-		if (paramsNode==null || paramsNode.isNull()) {
-			return findBestMethodUsingParamIndexes(methods, 0, null);
+		if (params == null) {
+			return bindMissingParams(method, new Object[method.getParameterCount()], 0);
+		}
+
+		// bind the parameters to it
+		JsonParser parser = params.asParser(mapper);
+		try {
+			parser.nextToken();
+			return shape.isNamed()
+				? bindParamsByPosition(resolution, parser, mapper)
+				: bindParamsByIndex(method, parser, mapper);
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Resolves the given parameter shape to a method and,
+	 * for named parameters, to a mapping of their positions.
+	 *
+	 * @param shape the shape of the parameters
+	 * @return the resolution ({@link Resolution#NONE} if no method fits)
+	 */
+	private Resolution resolve(ParamsShape shape) {
+		if (!shape.isNamed()) {
+			JsonRpcServerMethod method = findBestMethodUsingParamIndexes(shape.methods, shape);
+			return (method != null) ? new Resolution(method, null, null) : Resolution.NONE;
+		}
 
-		// array parameters
-		} else if (paramsNode.isArray()) {
-			return findBestMethodUsingParamIndexes(methods, paramsNode.size(), ArrayNode.class.cast(paramsNode));
+		JsonRpcServerMethod method = findBestMethodUsingParamNames(shape.methods, shape);
+		if (method == null) {
+			return Resolution.NONE;
+		}
 
-		// named parameters
-		} else if (paramsNode.isObject()) {
-			Set<String> fieldNames = new HashSet<String>();
-			Iterator<String> itr=paramsNode.fieldNames();
-			while (itr.hasNext()) {
-				fieldNames.add(itr.next());
+		// map positions to parameters, first occurrence wins
+		int numParameters = method.getParameterCount();
+		int numParamNames = shape.size();
+		int[] indexes = new int[numParamNames];
+		boolean[] bound = new boolean[numParameters];
+		int numMatchingParams = 0;
+		for (int i=0; i<numParamNames; i++) {
+			int index = method.getParameterIndex(shape.names[i]);
+			if (index >= 0 && !bound[index]) {
+				bound[index] = true;
+				numMatchingParams++;
+			} else {
+				index = -1;
 			}
-			return findBestMethodUsingParamNames(methods, fieldNames, ObjectNode.class.cast(paramsNode));
+			indexes[i] = index;
+		}
 
+		// check the parameter names
+		if (!mAllowExtraParams && numParamNames>numParameters) {
+			return Resolution.NONE;
+		} else if (!mAllowLessParams && numParamNames<numParameters) {
+			return Resolution.NONE;
+		} else if (!mAllowLessParams && numMatchingParams<numParameters) {
+			return Resolution.NONE;
+		}
+
+		// remember unbound parameters
+		int[] missing = new int[numParameters - numMatchingParams];
+		for (int i=0, j=0; i<numParameters; i++) {
+			if (!bound[i]) {
+				missing[j++] = i;
+			}
 		}
 
-		// unknown params node type
-		throw new IllegalArgumentException("Unknown params node type: "+paramsNode.toString());
+		return new Resolution(method, indexes, missing);
+	}
+
+	/** Make room in the resolution cache */
+	private void evictResolution() {
+		Iterator<ParamsShape> it = mResolutions.keySet().iterator();
+		if (it.hasNext()) {
+			it.next();
+			it.remove();
+		}
 	}
 
 	/**
-	 * Finds the {@link Method} from the supplied {@link Set} that
-	 * best matches the rest of the arguments supplied and returns
-	 * it as a {@link MethodAndArgs} class.
+	 * Binds an array of parameters to the given method.
 	 *
-	 * @param methods the {@link Method}s
-	 * @param paramCount the number of expect parameters
-	 * @param paramNodes the parameters for matching types
-	 * @return the {@link MethodAndArgs}
+	 * @param method to bind to
+	 * @param parser positioned on the start of the array
+	 * @param mapper to use for conversion
+	 * @return the call or null if the parameter count does not fit
+	 * @throws IOException on parse errors
 	 */
-	private MethodAndArgs findBestMethodUsingParamIndexes(
-		Set<Method> methods, int paramCount, ArrayNode paramNodes) {
+	private JsonRpcServerCall bindParamsByIndex(JsonRpcServerMethod method, JsonParser parser, ObjectMapper mapper)
+		throws IOException {
+		JsonStreamContext context = parser.getParsingContext();
+		JsonRpcMethodTypes types = method.getTypes(mapper);
+		int numParameters = method.getParameterCount();
+		Object[] arguments = new Object[numParameters];
+		int numParams = 0;
+		try {
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				if (numParams < numParameters) {
+					arguments[numParams] = types.getParameterReader(numParams).readValue(parser);
+				} else {
+					parser.skipChildren();
+				}
+				numParams++;
+			}
+		} catch (JsonMappingException e) {
+			skipRemaining(parser, context);
+			return new JsonRpcServerCall(method, e);
+		}
+
+		// check the parameter count
+		int paramNumDiff = numParameters-numParams;
+		if (!mAllowExtraParams && paramNumDiff<0
+			|| !mAllowLessParams && paramNumDiff>0) {
+			return null;
+		}
+
+		return bindMissingParams(method, arguments, numParams);
+	}
+
+	/**
+	 * Binds an object of named parameters to the given method.
+	 *
+	 * @param method to bind to
+	 * @param parser positioned on the start of the object
+	 * @param mapper to use for conversion
+	 * @return the call or null if the parameter names do not fit
+	 * @throws IOException on parse errors
+	 */
+	private JsonRpcServerCall bindParamsByName(JsonRpcServerMethod method, JsonParser parser, ObjectMapper mapper)
+		throws IOException {
+		JsonStreamContext context = parser.getParsingContext();
+		JsonRpcMethodTypes types = method.getTypes(mapper);
+		int numParameters = method.getParameterCount();
+		Object[] arguments = new Object[numParameters];
+		boolean[] bound = new boolean[numParameters];
+		int numParamNames = 0;
+		int numMatchingParams = 0;
+		try {
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				int index = method.getParameterIndex(parser.getCurrentName());
+				parser.nextToken();
+				if (index >= 0 && !bound[index]) {
+					arguments[index] = types.getParameterReader(index).readValue(parser);
+					bound[index] = true;
+					numMatchingParams++;
+				} else {
+					parser.skipChildren();
+				}
+				numParamNames++;
+			}
+		} catch (JsonMappingException e) {
+			skipRemaining(parser, context);
+			return new JsonRpcServerCall(method, e);
+		}
+
+		// check the parameter names
+		if (!mAllowExtraParams && numParamNames>numParameters) {
+			return null;
+		} else if (!mAllowLessParams && numParamNames<numParameters) {
+			return null;
+		} else if (!mAllowLessParams && numMatchingParams<numParameters) {
+			return null;
+		}
+
+		// fill unbound parameters
+		for (int i=0; i<numParameters; i++) {
+			if (!bound[i]) {
+				arguments[i] = missingValue(method.getParameterClass(i));
+			}
+		}
+
+		return new JsonRpcServerCall(method, arguments);
+	}
+
+	/**
+	 * Binds an object of named parameters according to
+	 * a resolution for its shape.
+	 *
+	 * @param resolution for the shape of the parameters
+	 * @param parser positioned on the start of the object
+	 * @param mapper to use for conversion
+	 * @return the call
+	 * @throws IOException on parse errors
+	 */
+	private JsonRpcServerCall bindParamsByPosition(Resolution resolution, JsonParser parser, ObjectMapper mapper)
+		throws IOException {
+		JsonRpcServerMethod method = resolution.method;
+		JsonStreamContext context = parser.getParsingContext();
+		JsonRpcMethodTypes types = method.getTypes(mapper);
+		Object[] arguments = new Object[method.getParameterCount()];
+		int position = 0;
+		try {
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				int index = resolution.indexes[position++];
+				parser.nextToken();
+				if (index >= 0) {
+					arguments[index] = types.getParameterReader(index).readValue(parser);
+				} else {
+					parser.skipChildren();
+				}
+			}
+		} catch (JsonMappingException e) {
+			skipRemaining(parser, context);
+			return new JsonRpcServerCall(method, e);
+		}
+
+		// fill unbound parameters
+		for (int index : resolution.missing) {
+			arguments[index] = missingValue(method.getParameterClass(index));
+		}
+
+		return new JsonRpcServerCall(method, arguments);
+	}
+
+	/** Fill arguments from the given index on with missing values */
+	private JsonRpcServerCall bindMissingParams(JsonRpcServerMethod method, Object[] arguments, int from) {
+		for (int i=from; i<arguments.length; i++) {
+			arguments[i] = missingValue(method.getParameterClass(i));
+		}
+		return new JsonRpcServerCall(method, arguments);
+	}
+
+	/** Value passed for missing parameters, as if null was given */
+	private static Object missingValue(Class<?> clazz) {
+		return clazz.isPrimitive() ? ClassUtil.defaultValue(clazz) : null;
+	}
+
+	/** Skip to the end of the given context after a binding error */
+	private static void skipRemaining(JsonParser parser, JsonStreamContext context) throws IOException {
+		JsonStreamContext parent = context.getParent();
+		while (parser.getParsingContext() != parent) {
+			if (parser.nextToken() == null) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Finds the {@link JsonRpcServerMethod} from the supplied
+	 * candidates that best matches the given array parameters.
+	 *
+	 * @param methods the candidates
+	 * @param shape the shape of the parameters
+	 * @return the best method or null
+	 */
+	private JsonRpcServerMethod findBestMethodUsingParamIndexes(
+		JsonRpcServerMethod[] methods, ParamsShape shape) {
 
 		// get param count
-		int numParams = paramNodes!=null && !paramNodes.isNull()
-			? paramNodes.size() : 0;
+		int paramCount = shape.size();
 
 		// determine param count
 		int bestParamNumDiff		= Integer.MAX_VALUE;
-		Set<Method> matchedMethods	= new HashSet<Method>();
+		int numMatched				= 0;
+		JsonRpcServerMethod[] matchedMethods = null;
 
 		// check every method
-		for (Method method : methods) {
+		for (JsonRpcServerMethod method : methods) {
 
-			// get parameter types
-			Class<?>[] paramTypes = method.getParameterTypes();
-			int paramNumDiff = paramTypes.length-paramCount;
+			// get parameter count
+			int paramNumDiff = method.getParameterCount()-paramCount;
 
 			// we've already found a better match
 			if (Math.abs(paramNumDiff)>Math.abs(bestParamNumDiff)) {
@@ -322,35 +994,44 @@ public class JsonRpcServer {
 			// check the parameters
 			} else {
 				if (Math.abs(paramNumDiff)<Math.abs(bestParamNumDiff)) {
-					matchedMethods.clear();
+					numMatched = 0;
+				}
+				// the common single candidate case needs no copy
+				if (methods.length==1) {
+					matchedMethods = methods;
+				} else if (matchedMethods==null) {
+					matchedMethods = new JsonRpcServerMethod[methods.length];
+				}
+				if (matchedMethods!=methods) {
+					matchedMethods[numMatched] = method;
 				}
-				matchedMethods.add(method);
+				numMatched++;
 				bestParamNumDiff = paramNumDiff;
 				continue;
 			}
 		}
 
 		// bail early
-		if (matchedMethods.isEmpty()) {
+		if (numMatched == 0) {
 			return null;
 		}
 
 		// now narrow it down to the best method
 		// based on argument types
-		Method bestMethod = null;
-		if (matchedMethods.size()==1 || numParams==0) {
-			bestMethod = matchedMethods.iterator().next();
+		JsonRpcServerMethod bestMethod = null;
+		if (numMatched==1 || paramCount==0) {
+			bestMethod = matchedMethods[0];
 
 		} else {
 
 			// check the matching methods for
 			// matching parameter types
 			int mostMatches	= -1;
-			for (Method method : matchedMethods) {
-				List<Class<?>> parameterTypes = ReflectionUtil.getParameterTypes(method);
+			for (int m=0; m<numMatched; m++) {
+				JsonRpcServerMethod method = matchedMethods[m];
 				int numMatches = 0;
-				for (int i=0; i<parameterTypes.size() && i<numParams; i++) {
-					if (isMatchingType(paramNodes.get(i), parameterTypes.get(i))) {
+				for (int i=0; i<method.getParameterCount() && i<paramCount; i++) {
+					if (isMatchingType(shape, i, method.getParameterClass(i))) {
 						numMatches++;
 					}
 				}
@@ -361,91 +1042,58 @@ public class JsonRpcServer {
 			}
 		}
 
-		// create return
-		MethodAndArgs ret = new MethodAndArgs();
-		ret.method = bestMethod;
-
-		// now fill arguments
-		int numParameters = bestMethod.getParameterTypes().length;
-		for (int i=0; i<numParameters; i++) {
-			if (i<numParams) {
-				ret.arguments.add(paramNodes.get(i));
-			} else {
-				ret.arguments.add(NullNode.getInstance());
-			}
-		}
-
 		// return the method
-		return ret;
+		return bestMethod;
 	}
 
 	/**
-	 * Finds the {@link Method} from the supplied {@link Set} that
-	 * best matches the rest of the arguments supplied and returns
-	 * it as a {@link MethodAndArgs} class.
+	 * Finds the {@link JsonRpcServerMethod} from the supplied
+	 * candidates that best matches the given named parameters.
 	 *
-	 * @param methods the {@link Method}s
-	 * @param paramNames the parameter names
-	 * @param paramNodes the parameters for matching types
-	 * @return the {@link MethodAndArgs}
+	 * @param methods the candidates
+	 * @param shape the shape of the parameters
+	 * @return the best method or null
 	 */
-	private MethodAndArgs findBestMethodUsingParamNames(
-		Set<Method> methods, Set<String> paramNames, ObjectNode paramNodes) {
+	private JsonRpcServerMethod findBestMethodUsingParamNames(
+		JsonRpcServerMethod[] methods, ParamsShape shape) {
 
 		// determine param count
+		int numParamNames					= shape.size();
 		int maxMatchingParams 				= -1;
 		int maxMatchingParamTypes			= -1;
-		Method bestMethod 					= null;
-		List<JsonRpcParam> bestAnnotations	= null;
+		JsonRpcServerMethod bestMethod 		= null;
 
-		for (Method method : methods) {
+		for (JsonRpcServerMethod method : methods) {
 
-			// get parameter types
-			List<Class<?>> parameterTypes = ReflectionUtil.getParameterTypes(method);
+			// get parameter count
+			int numParameters = method.getParameterCount();
 
 			// bail early if possible
-			if (!mAllowExtraParams && paramNames.size()>parameterTypes.size()) {
+			if (!mAllowExtraParams && numParamNames>numParameters) {
 				continue;
-			} else if (!mAllowLessParams && paramNames.size()<parameterTypes.size()) {
+			} else if (!mAllowLessParams && numParamNames<numParameters) {
 				continue;
 			}
 
-			// list of params
-			List<JsonRpcParam> annotations = new ArrayList<JsonRpcParam>();
-
-			// now try the non-deprecated parameters
-			List<List<JsonRpcParam>> methodAnnotations = ReflectionUtil
-				.getParameterAnnotations(method, JsonRpcParam.class);
-			if (!methodAnnotations.isEmpty()) {
-				for (List<JsonRpcParam> annots : methodAnnotations) {
-					if (annots.size()>0) {
-						annotations.add(annots.get(0));
-					} else {
-						annots.add(null);
-					}
-				}
-			}
-
 			// count the matching params for this method
 			int numMatchingParamTypes = 0;
 			int numMatchingParams = 0;
-			for (int i=0; i<annotations.size(); i++) {
+			for (int i=0; i<numParameters; i++) {
 
 				// skip parameters that didn't have an annotation
-				JsonRpcParam annotation	= annotations.get(i);
-				if (annotation==null) {
+				String paramName = method.getParameterName(i);
+				if (paramName==null) {
 					continue;
 				}
 
 				// check for a match
-				String paramName			= annotation.value();
-				boolean hasParamName 		= paramNames.contains(paramName);
+				int position = shape.indexOf(paramName);
 
-				if (hasParamName && isMatchingType(paramNodes.get(paramName), parameterTypes.get(i))) {
+				if (position>=0 && isMatchingType(shape, position, method.getParameterClass(i))) {
 					numMatchingParamTypes++;
 					numMatchingParams++;
 
-				} else if (hasParamName) {
+				} else if (position>=0) {
 					numMatchingParams++;
 
 				}
@@ -453,9 +1101,9 @@ public class JsonRpcServer {
 
 			// check for exact param matches
 			// bail early if possible
-			if (!mAllowExtraParams && numMatchingParams>parameterTypes.size()) {
+			if (!mAllowExtraParams && numMatchingParams>numParameters) {
 				continue;
-			} else if (!mAllowLessParams && numMatchingParams<parameterTypes.size()) {
+			} else if (!mAllowLessParams && numMatchingParams<numParameters) {
 				continue;
 			}
 
@@ -465,52 +1113,53 @@ public class JsonRpcServer {
 				bestMethod 				= method;
 				maxMatchingParams 		= numMatchingParams;
 				maxMatchingParamTypes 	= numMatchingParamTypes;
-				bestAnnotations 		= annotations;
-			}
-		}
-
-		// bail early
-		if (bestMethod==null) {
-			return null;
-		}
-
-		// create return
-		MethodAndArgs ret = new MethodAndArgs();
-		ret.method = bestMethod;
-
-		// now fill arguments
-		int numParameters = bestMethod.getParameterTypes().length;
-		for (int i=0; i<numParameters; i++) {
-			JsonRpcParam param = bestAnnotations.get(i);
-			if (param!=null && paramNames.contains(param.value())) {
-				ret.arguments.add(paramNodes.get(param.value()));
-			} else {
-				ret.arguments.add(NullNode.getInstance());
 			}
 		}
 
 		// return the method
-		return ret;
+		return bestMethod;
 	}
 
 	/**
-	 * Determines whether or not the given {@link JsonNode} matches
+	 * Determines whether or not the given parameter matches
 	 * the given type.  This method is limitted to a few java types
 	 * only and shouldn't be used to determine with great accuracy
 	 * whether or not the types match.
 	 *
-	 * @param node the {@link JsonNode}
+	 * @param shape the shape of the parameters
+	 * @param position of the parameter in the shape
 	 * @param type the {@link Class}
 	 * @return true if the types match, false otherwise
 	 */
-	private boolean isMatchingType(JsonNode node, Class<?> type) {
-		if (node.isNull()) {
+	private boolean isMatchingType(ParamsShape shape, int position, Class<?> type) {
+		JsonToken token = shape.getToken(position);
+		if (token == JsonToken.START_ARRAY && type.isArray()) {
+			JsonToken element = shape.getElementToken(position);
+			return (element != null)
+				? isMatchingType(element, type.getComponentType())
+				: false;
+		}
+		return isMatchingType(token, type);
+	}
+
+	/**
+	 * Determines whether or not a value starting with the
+	 * given token matches the given type.
+	 *
+	 * @param token the first token of the value
+	 * @param type the {@link Class}
+	 * @return true if the types match, false otherwise
+	 */
+	private boolean isMatchingType(JsonToken token, Class<?> type) {
+		switch (token) {
+		case VALUE_NULL:
 			return true;
 
-		} else if (node.isTextual()) {
+		case VALUE_STRING:
 			return String.class.isAssignableFrom(type);
 
-		} else if (node.isNumber()) {
+		case VALUE_NUMBER_INT:
+		case VALUE_NUMBER_FLOAT:
 			return Number.class.isAssignableFrom(type)
 				|| short.class.isAssignableFrom(type)
 				|| int.class.isAssignableFrom(type)
@@ -518,41 +1167,189 @@ public class JsonRpcServer {
 				|| float.class.isAssignableFrom(type)
 				|| double.class.isAssignableFrom(type);
 
-		} else if (node.isArray() && type.isArray()) {
-			return (node.size()>0)
-				? isMatchingType(node.get(0), type.getComponentType())
-				: false;
-
-		} else if (node.isArray()) {
+		case START_ARRAY:
 			return type.isArray() || Collection.class.isAssignableFrom(type);
 
-		} else if (node.isBinary()) {
+		case VALUE_EMBEDDED_OBJECT:
 			return byte[].class.isAssignableFrom(type)
 				|| Byte[].class.isAssignableFrom(type)
 				|| char[].class.isAssignableFrom(type)
 				|| Character[].class.isAssignableFrom(type);
 
-		} else if (node.isBoolean()) {
+		case VALUE_TRUE:
+		case VALUE_FALSE:
 			return boolean.class.isAssignableFrom(type)
 				|| Boolean.class.isAssignableFrom(type);
 
-		} else if (node.isObject() || node.isPojo()) {
+		case START_OBJECT:
 			return !type.isPrimitive()
 				&& !String.class.isAssignableFrom(type)
 				&& !Number.class.isAssignableFrom(type)
 				&& !Boolean.class.isAssignableFrom(type);
+
+		default:
+			// not sure if it's a matching type
+			return false;
+		}
+	}
+
+	/**
+	 * Shape of request parameters for the {@code findXXX} methods.
+	 *
+	 * Records the first token of each parameter (and of the first
+	 * element for arrays) plus the names of named parameters.
+	 *
+	 * Together with the candidates this is all that overload
+	 * resolution looks at, so shapes serve as keys for caching it.
+	 */
+	private static final class ParamsShape {
+		private static final JsonToken[] NO_TOKENS = new JsonToken[0];
+
+		private final JsonRpcServerMethod[] methods;
+		private final String[] names;
+		private final JsonToken[] tokens;
+		private final JsonToken[] elementTokens;
+		private final int size;
+		private final int hash;
+
+		private ParamsShape(JsonRpcServerMethod[] methods, String[] names,
+							JsonToken[] tokens, JsonToken[] elementTokens, int size) {
+			this.methods = methods;
+			this.names = names;
+			this.tokens = tokens;
+			this.elementTokens = elementTokens;
+			this.size = size;
+			this.hash = ((System.identityHashCode(methods) * 31
+				+ Arrays.hashCode(names)) * 31
+				+ Arrays.hashCode(tokens)) * 31
+				+ Arrays.hashCode(elementTokens);
+		}
+
+		/** Shape of absent parameters */
+		private static ParamsShape empty(JsonRpcServerMethod[] methods) {
+			return new ParamsShape(methods, null, NO_TOKENS, NO_TOKENS, 0);
+		}
+
+		/** Scan parameters, the parser being positioned on their start */
+		private static ParamsShape scan(JsonRpcServerMethod[] methods, JsonParser parser) throws IOException {
+			boolean named = parser.getCurrentToken() == JsonToken.START_OBJECT;
+			List<String> names = named ? new ArrayList<String>() : null;
+			List<JsonToken> tokens = new ArrayList<JsonToken>();
+			List<JsonToken> elementTokens = new ArrayList<JsonToken>();
+			JsonToken token;
+			while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != JsonToken.END_OBJECT) {
+				if (named) {
+					names.add(parser.getCurrentName());
+					token = parser.nextToken();
+				}
+				tokens.add(token);
+				if (token == JsonToken.START_ARRAY) {
+					JsonToken element = parser.nextToken();
+					elementTokens.add(element != JsonToken.END_ARRAY ? element : null);
+					if (element != JsonToken.END_ARRAY) {
+						parser.skipChildren();
+						skipToEndOfArray(parser);
+					}
+				} else {
+					elementTokens.add(null);
+					parser.skipChildren();
+				}
+			}
+			int size = tokens.size();
+			return new ParamsShape(
+				methods,
+				named ? names.toArray(new String[size]) : null,
+				tokens.toArray(new JsonToken[size]),
+				elementTokens.toArray(new JsonToken[size]),
+				size);
+		}
+
+		/** Skip the remaining elements of the current array */
+		private static void skipToEndOfArray(JsonParser parser) throws IOException {
+			JsonToken token;
+			while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+				parser.skipChildren();
+			}
+		}
+
+		private boolean isNamed() {
+			return names != null;
 		}
 
-		// not sure if it's a matching type
-		return false;
+		private int size() {
+			return size;
+		}
+
+		private JsonToken getToken(int position) {
+			return tokens[position];
+		}
+
+		private JsonToken getElementToken(int position) {
+			return elementTokens[position];
+		}
+
+		private int indexOf(String name) {
+			for (int i=0; i<size; i++) {
+				if (names[i].equals(name)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof ParamsShape)) {
+				return false;
+			}
+			ParamsShape other = (ParamsShape) o;
+			return methods == other.methods
+				&& hash == other.hash
+				&& Arrays.equals(names, other.names)
+				&& Arrays.equals(tokens, other.tokens)
+				&& Arrays.equals(elementTokens, other.elementTokens);
+		}
+	}
+
+	/**
+	 * Outcome of overload resolution for one parameter shape.
+	 */
+	private static final class Resolution {
+		private static final Resolution NONE = new Resolution(null, null, null);
+
+		/** The chosen method (null if none fits) */
+		private final JsonRpcServerMethod method;
+		/** Parameter index for each named position (-1 to skip) */
+		private final int[] indexes;
+		/** Parameters not given by name */
+		private final int[] missing;
+
+		private Resolution(JsonRpcServerMethod method, int[] indexes, int[] missing) {
+			this.method = method;
+			this.indexes = indexes;
+			this.missing = missing;
+		}
 	}
 
 	/**
-	 * Simple inner class for the {@code findXXX} methods.
+	 * Sets the executor used to run the elements of batch
+	 * requests in parallel. Defaults to an executor shared by
+	 * all servers that starts a thread per element, see
+	 * {@link better.jsonrpc.util.ExecutorUtil#newPerCallExecutor()},
+	 * as handlers may block.
+	 *
+	 * @param batchExecutor the batchExecutor to set
 	 */
-	private static class MethodAndArgs {
-		private Method method = null;
-		private List<JsonNode> arguments = new ArrayList<JsonNode>();
+	public void setBatchExecutor(Executor batchExecutor) {
+		this.mBatchExecutor = batchExecutor;
 	}
 
 	/**
@@ -575,6 +1372,7 @@ public class JsonRpcServer {
 	 */
 	public void setAllowExtraParams(boolean allowExtraParams) {
 		this.mAllowExtraParams = allowExtraParams;
+		mResolutions.clear();
 	}
 
 	/**
@@ -585,6 +1383,7 @@ public class JsonRpcServer {
 	 */
 	public void setAllowLessParams(boolean allowLessParams) {
 		this.mAllowLessParams = allowLessParams;
+		mResolutions.clear();
 	}
 
 	/**
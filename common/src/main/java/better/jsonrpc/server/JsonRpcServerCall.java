@@ -0,0 +1,55 @@
+package better.jsonrpc.server;
+
+/**
+ * A resolved call on the server
+ *
+ * Produced when request parameters have been bound to
+ * a specific method, either directly from the parser or
+ * from buffered parameters.
+ *
+ * If binding the arguments failed the error is recorded
+ * so that it can be reported like an error of the method.
+ */
+public class JsonRpcServerCall {
+
+    /** The method to call */
+    private final JsonRpcServerMethod mMethod;
+
+    /** Converted arguments (null if binding failed) */
+    private final Object[] mArguments;
+
+    /** Error that occurred during binding */
+    private final Throwable mError;
+
+    /** Construct a successfully bound call */
+    public JsonRpcServerCall(JsonRpcServerMethod method, Object[] arguments) {
+        this(method, arguments, null);
+    }
+
+    /** Construct a call that failed to bind */
+    public JsonRpcServerCall(JsonRpcServerMethod method, Throwable error) {
+        this(method, null, error);
+    }
+
+    private JsonRpcServerCall(JsonRpcServerMethod method, Object[] arguments, Throwable error) {
+        mMethod = method;
+        mArguments = arguments;
+        mError = error;
+    }
+
+    /** @return the method to call */
+    public JsonRpcServerMethod getMethod() {
+        return mMethod;
+    }
+
+    /** @return the converted arguments */
+    public Object[] getArguments() {
+        return mArguments;
+    }
+
+    /** @return the binding error or null */
+    public Throwable getError() {
+        return mError;
+    }
+
+}
@@ -0,0 +1,273 @@
+package better.jsonrpc.server;
+
+import better.jsonrpc.annotations.JsonRpcParam;
+import better.jsonrpc.core.JsonRpcMethodTypes;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pre-analysed server method
+ *
+ * Holds everything the server needs to know about a method
+ * so that none of it has to be rediscovered for each request.
+ *
+ * Methods are either analysed by reflection or described by
+ * a generated {@link JsonRpcDispatcher}, in which case the
+ * reflected method is only looked up if something asks for it.
+ *
+ * Instances are immutable and may be shared between threads.
+ */
+public class JsonRpcServerMethod {
+
+    /** Index of the method in its dispatch table */
+    private final int mIndex;
+
+    /** Name of the method on the wire */
+    private final String mName;
+
+    /** Protocol interface the method was found through */
+    private final Class<?> mInterface;
+
+    /** Interface declaring the method */
+    private final Class<?> mDeclaringClass;
+
+    /** Name of the method in Java */
+    private final String mJavaName;
+
+    /** The reflected method (looked up on demand for described methods) */
+    private volatile Method mMethod;
+
+    /** Raw parameter types */
+    private final Class<?>[] mParameterClasses;
+
+    /** Parameter names from {@link JsonRpcParam} (entries may be null) */
+    private final String[] mParameterNames;
+
+    /** Parameter indexes by name (only annotated parameters) */
+    private final Map<String, Integer> mParameterIndexes;
+
+    /** True if the method returns a future */
+    private final boolean mAsync;
+
+    /** Source of the types of the method */
+    private final JsonRpcMethodTypes.Resolver mResolver;
+
+    /** Resolved types by object mapper */
+    private final JsonRpcMethodTypes.Cache mTypes;
+
+    /** Generated dispatcher describing the method (null if analysed by reflection) */
+    private final JsonRpcDispatcher mDispatcher;
+
+    /** Index of the method in the methods of its dispatcher */
+    private final int mDispatcherIndex;
+
+    /**
+     * Analyse the given method
+     * @param index of the method in its dispatch table
+     * @param name of the method on the wire
+     * @param method to analyse
+     */
+    public JsonRpcServerMethod(int index, String name, Method method) {
+        this(index, name, method.getDeclaringClass(), method);
+    }
+
+    /**
+     * Analyse the given method
+     * @param index of the method in its dispatch table
+     * @param name of the method on the wire
+     * @param protocolInterface the method was found through
+     * @param method to analyse
+     */
+    public JsonRpcServerMethod(int index, String name, Class<?> protocolInterface, Method method) {
+        mIndex = index;
+        mName = name;
+        mInterface = protocolInterface;
+        mDeclaringClass = method.getDeclaringClass();
+        mJavaName = method.getName();
+        mMethod = method;
+        mParameterClasses = method.getParameterTypes();
+
+        // collect parameter names
+        Annotation[][] annotations = method.getParameterAnnotations();
+        Map<String, Integer> indexes = new HashMap<String, Integer>();
+        mParameterNames = new String[annotations.length];
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof JsonRpcParam) {
+                    String paramName = ((JsonRpcParam) annotation).value();
+                    mParameterNames[i] = paramName;
+                    indexes.put(paramName, i);
+                    break;
+                }
+            }
+        }
+        mParameterIndexes = Collections.unmodifiableMap(indexes);
+
+        mAsync = JsonRpcMethodTypes.isAsync(method);
+        mResolver = null;
+        mTypes = new JsonRpcMethodTypes.Cache(method);
+        mDispatcher = null;
+        mDispatcherIndex = -1;
+    }
+
+    /**
+     * Describe a method without reflection, for generated dispatchers
+     *
+     * The description is not part of a dispatch table yet, which
+     * adds copies of it with an index of their own.
+     *
+     * @param name of the method on the wire
+     * @param protocolInterface the method is found through
+     * @param declaringClass of the method
+     * @param javaName of the method
+     * @param parameterClasses raw parameter types
+     * @param parameterNames from {@link JsonRpcParam} (entries may be null)
+     * @param async true if the method returns a future
+     * @param resolver constructing the types of the method
+     */
+    public JsonRpcServerMethod(String name, Class<?> protocolInterface, Class<?> declaringClass, String javaName,
+                               Class<?>[] parameterClasses, String[] parameterNames,
+                               boolean async, JsonRpcMethodTypes.Resolver resolver) {
+        mIndex = -1;
+        mName = name;
+        mInterface = protocolInterface;
+        mDeclaringClass = declaringClass;
+        mJavaName = javaName;
+        mParameterClasses = parameterClasses;
+        mParameterNames = parameterNames;
+        Map<String, Integer> indexes = new HashMap<String, Integer>();
+        for (int i = 0; i < parameterNames.length; i++) {
+            if (parameterNames[i] != null) {
+                indexes.put(parameterNames[i], i);
+            }
+        }
+        mParameterIndexes = Collections.unmodifiableMap(indexes);
+        mAsync = async;
+        mResolver = resolver;
+        mTypes = new JsonRpcMethodTypes.Cache(resolver);
+        mDispatcher = null;
+        mDispatcherIndex = -1;
+    }
+
+    /** Copy a description into a dispatch table */
+    JsonRpcServerMethod(int index, JsonRpcServerMethod description,
+                        JsonRpcDispatcher dispatcher, int dispatcherIndex) {
+        mIndex = index;
+        mName = description.mName;
+        mInterface = description.mInterface;
+        mDeclaringClass = description.mDeclaringClass;
+        mJavaName = description.mJavaName;
+        mParameterClasses = description.mParameterClasses;
+        mParameterNames = description.mParameterNames;
+        mParameterIndexes = description.mParameterIndexes;
+        mAsync = description.mAsync;
+        mResolver = description.mResolver;
+        // types are cached per table, like those of reflected methods
+        mTypes = new JsonRpcMethodTypes.Cache(description.mResolver);
+        mDispatcher = dispatcher;
+        mDispatcherIndex = dispatcherIndex;
+    }
+
+    /** @return the index of this method in its dispatch table */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    /** @return the name of this method on the wire */
+    public String getName() {
+        return mName;
+    }
+
+    /** @return the protocol interface this method was found through */
+    public Class<?> getInterface() {
+        return mInterface;
+    }
+
+    /** @return the interface declaring this method */
+    public Class<?> getDeclaringClass() {
+        return mDeclaringClass;
+    }
+
+    /** @return the name of this method in Java */
+    public String getJavaName() {
+        return mJavaName;
+    }
+
+    /**
+     * Return the reflected method
+     *
+     * Described methods look it up on first use.
+     *
+     * @return the reflected method
+     * @throws IllegalStateException if the method does not exist
+     */
+    public Method getMethod() {
+        Method method = mMethod;
+        if (method == null) {
+            try {
+                method = mDeclaringClass.getMethod(mJavaName, mParameterClasses);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("Generated code for " + mInterface.getName()
+                        + " is out of date, no method " + mJavaName, e);
+            }
+            mMethod = method;
+        }
+        return method;
+    }
+
+    /** @return the dispatcher describing this method or null if it was analysed by reflection */
+    public JsonRpcDispatcher getDispatcher() {
+        return mDispatcher;
+    }
+
+    /** @return the index of this method in the methods of its dispatcher */
+    public int getDispatcherIndex() {
+        return mDispatcherIndex;
+    }
+
+    /** @return the number of parameters */
+    public int getParameterCount() {
+        return mParameterClasses.length;
+    }
+
+    /** @return the raw type of the given parameter */
+    public Class<?> getParameterClass(int index) {
+        return mParameterClasses[index];
+    }
+
+    /** @return the annotated name of the given parameter or null */
+    public String getParameterName(int index) {
+        return mParameterNames[index];
+    }
+
+    /** @return the index of the parameter with the given name or -1 */
+    public int getParameterIndex(String name) {
+        Integer index = mParameterIndexes.get(name);
+        return (index == null) ? -1 : index;
+    }
+
+    /** @return true if this method returns a future to be waited for */
+    public boolean isAsync() {
+        return mAsync;
+    }
+
+    /**
+     * Return the types of this method as resolved by the given mapper
+     * @param mapper to resolve with
+     * @return the resolved types
+     */
+    public JsonRpcMethodTypes getTypes(ObjectMapper mapper) {
+        return mTypes.get(mapper);
+    }
+
+    @Override
+    public String toString() {
+        return mName + "/" + mParameterClasses.length;
+    }
+
+}
@@ -0,0 +1,100 @@
+package better.jsonrpc.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utilities for executors.
+ *
+ * Virtual threads are looked up reflectively so that
+ * the library keeps running on Java 8.
+ */
+public abstract class ExecutorUtil {
+
+	/** Factory for virtual-thread-per-task executors (null before Java 21) */
+	private static final Method VIRTUAL_EXECUTOR_FACTORY = findVirtualExecutorFactory();
+
+	/**
+	 * @return true if the runtime supports virtual threads
+	 */
+	public static boolean isVirtualThreadsAvailable() {
+		return VIRTUAL_EXECUTOR_FACTORY != null;
+	}
+
+	/**
+	 * Creates an executor starting a virtual thread per task.
+	 *
+	 * @return the executor or null if virtual threads are not available
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (VIRTUAL_EXECUTOR_FACTORY == null) {
+			return null;
+		}
+		try {
+			return (ExecutorService) VIRTUAL_EXECUTOR_FACTORY.invoke(null);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Could not create virtual thread executor", e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Could not create virtual thread executor", e);
+		}
+	}
+
+	/**
+	 * Creates an executor running each task on its own thread.
+	 *
+	 * Uses virtual threads where available and a cached pool
+	 * of platform threads otherwise. Blocking calls on these
+	 * executors are cheap on Java 21 and later.
+	 *
+	 * Threads are daemons either way, so idle executors
+	 * never keep the JVM from exiting.
+	 *
+	 * @return the executor
+	 */
+	public static ExecutorService newPerCallExecutor() {
+		return newPerCallExecutor("jsonrpc-worker");
+	}
+
+	/**
+	 * Creates an executor running each task on its own thread.
+	 *
+	 * @param name prefix for the names of platform threads
+	 * @return the executor
+	 * @see #newPerCallExecutor()
+	 */
+	public static ExecutorService newPerCallExecutor(String name) {
+		ExecutorService executor = newVirtualThreadPerTaskExecutor();
+		return (executor != null) ? executor : Executors.newCachedThreadPool(newDaemonThreadFactory(name));
+	}
+
+	/**
+	 * Creates a factory of daemon threads named after the given prefix.
+	 *
+	 * @param name prefix, followed by a number for each thread
+	 * @return the factory
+	 */
+	public static ThreadFactory newDaemonThreadFactory(final String name) {
+		final AtomicInteger counter = new AtomicInteger();
+		return task -> {
+			Thread thread = new Thread(task, name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	private static Method findVirtualExecutorFactory() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			// present but failing on 19 and 20 without preview features
+			((ExecutorService) factory.invoke(null)).shutdown();
+			return factory;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,331 @@
+package better.jsonrpc.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timer based on a hashed timing wheel
+ *
+ * Timeouts are kept in a ring of buckets that a single worker
+ * thread advances once per tick, expiring the due entries of the
+ * current bucket. Adding and cancelling a timeout is O(1) and
+ * costs one small object, which makes this suitable for very
+ * large numbers of timeouts that mostly get cancelled.
+ *
+ * Expiry is accurate to about one tick. All times are measured
+ * with {@link System#nanoTime()}, so wall clock changes have
+ * no effect.
+ *
+ * Tasks run on the worker thread and should be short.
+ */
+public class HashedWheelTimer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    /** Maximum number of new timeouts to file per tick */
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    private static final int STATE_INIT = 0;
+    private static final int STATE_STARTED = 1;
+    private static final int STATE_STOPPED = 2;
+
+    private static final int ENTRY_PENDING = 0;
+    private static final int ENTRY_CANCELLED = 1;
+    private static final int ENTRY_EXPIRED = 2;
+
+    /** A scheduled timeout */
+    public interface Timeout {
+        /** Cancel the timeout, returning false if it has expired or was cancelled already */
+        boolean cancel();
+        /** @return true if the timeout has been cancelled */
+        boolean isCancelled();
+        /** @return true if the timeout has expired */
+        boolean isExpired();
+    }
+
+    /** Name of the worker thread */
+    private final String mName;
+
+    /** Duration of one tick */
+    private final long mTickNanos;
+
+    /** The wheel */
+    private final Bucket[] mWheel;
+    /** Mask for turning ticks into wheel indexes */
+    private final int mMask;
+
+    /** Timeouts waiting to be filed into the wheel */
+    private final Queue<Entry> mPending = new ConcurrentLinkedQueue<Entry>();
+    /** Timeouts waiting to be removed from the wheel */
+    private final Queue<Entry> mCancelled = new ConcurrentLinkedQueue<Entry>();
+
+    /** Lifecycle state */
+    private final AtomicInteger mState = new AtomicInteger(STATE_INIT);
+    /** Released once the start time is known */
+    private final CountDownLatch mStartLatch = new CountDownLatch(1);
+    /** Time the worker started at */
+    private volatile long mStartTime;
+
+    /** The worker thread */
+    private final Thread mWorker;
+
+    /** Current tick (worker only) */
+    private long mTick;
+
+    /**
+     * Create a timer
+     *
+     * The worker thread is started when the first timeout is added.
+     *
+     * @param name of the worker thread
+     * @param tickDuration duration of one tick
+     * @param unit of the tick duration
+     * @param ticksPerWheel number of buckets, rounded up to a power of two
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive");
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            throw new IllegalArgumentException("Ticks per wheel must be in (0, 2^30]");
+        }
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        mName = name;
+        mTickNanos = unit.toNanos(tickDuration);
+        mWheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            mWheel[i] = new Bucket();
+        }
+        mMask = size - 1;
+        mWorker = new Thread(this::run, name);
+        mWorker.setDaemon(true);
+    }
+
+    /**
+     * Schedule the given task
+     * @param task to run on expiry
+     * @param delay until expiry
+     * @param unit of the delay
+     * @return handle for cancelling the timeout
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        start();
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(delay, 0)) - mStartTime;
+        Entry entry = new Entry(task, deadline);
+        mPending.add(entry);
+        return entry;
+    }
+
+    /**
+     * Stop the timer
+     *
+     * Timeouts that have not expired yet are dropped.
+     */
+    public void stop() {
+        if (mState.getAndSet(STATE_STOPPED) == STATE_STARTED) {
+            mWorker.interrupt();
+        }
+        mStartLatch.countDown();
+    }
+
+    /** Start the worker if it is not running yet */
+    private void start() {
+        switch (mState.get()) {
+            case STATE_INIT:
+                if (mState.compareAndSet(STATE_INIT, STATE_STARTED)) {
+                    mWorker.start();
+                }
+                break;
+            case STATE_STARTED:
+                break;
+            default:
+                throw new IllegalStateException("Timer " + mName + " has been stopped");
+        }
+        // wait until the worker has determined the start time
+        try {
+            mStartLatch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Main loop of the worker */
+    private void run() {
+        long startTime = System.nanoTime();
+        // zero means not started
+        mStartTime = (startTime == 0) ? 1 : startTime;
+        mStartLatch.countDown();
+
+        while (mState.get() == STATE_STARTED) {
+            long deadline = waitForNextTick();
+            if (deadline > 0) {
+                removeCancelled();
+                transferPending();
+                mWheel[(int) (mTick & mMask)].expire(deadline);
+                mTick++;
+            }
+        }
+    }
+
+    /** Sleep until the next tick, returning the current time relative to the start */
+    private long waitForNextTick() {
+        long deadline = mTickNanos * (mTick + 1);
+        while (true) {
+            long current = System.nanoTime() - mStartTime;
+            long sleepMillis = (deadline - current + 999999) / 1000000;
+            if (sleepMillis <= 0) {
+                return current;
+            }
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                if (mState.get() == STATE_STOPPED) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    /** File new timeouts into their buckets */
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Entry entry = mPending.poll();
+            if (entry == null) {
+                break;
+            }
+            if (entry.isCancelled()) {
+                continue;
+            }
+            long ticks = entry.mDeadline / mTickNanos;
+            entry.mRemainingRounds = (ticks - mTick) / mWheel.length;
+            // timeouts that are due already go into the current bucket
+            long tick = Math.max(ticks, mTick);
+            mWheel[(int) (tick & mMask)].add(entry);
+        }
+    }
+
+    /** Remove cancelled timeouts from their buckets */
+    private void removeCancelled() {
+        Entry entry;
+        while ((entry = mCancelled.poll()) != null) {
+            if (entry.mBucket != null) {
+                entry.mBucket.remove(entry);
+            }
+        }
+    }
+
+    /** One slot of the wheel, a doubly linked list owned by the worker */
+    private static final class Bucket {
+        private Entry mHead;
+        private Entry mTail;
+
+        private void add(Entry entry) {
+            entry.mBucket = this;
+            if (mHead == null) {
+                mHead = mTail = entry;
+            } else {
+                mTail.mNext = entry;
+                entry.mPrev = mTail;
+                mTail = entry;
+            }
+        }
+
+        private Entry remove(Entry entry) {
+            Entry next = entry.mNext;
+            if (entry.mPrev != null) {
+                entry.mPrev.mNext = next;
+            }
+            if (entry.mNext != null) {
+                entry.mNext.mPrev = entry.mPrev;
+            }
+            if (entry == mHead) {
+                mHead = next;
+            }
+            if (entry == mTail) {
+                mTail = entry.mPrev;
+            }
+            entry.mPrev = null;
+            entry.mNext = null;
+            entry.mBucket = null;
+            return next;
+        }
+
+        /** Expire all entries due by the given deadline */
+        private void expire(long deadline) {
+            Entry entry = mHead;
+            while (entry != null) {
+                if (entry.mRemainingRounds <= 0 && entry.mDeadline <= deadline) {
+                    Entry next = remove(entry);
+                    entry.expire();
+                    entry = next;
+                } else if (entry.isCancelled()) {
+                    entry = remove(entry);
+                } else {
+                    if (entry.mRemainingRounds > 0) {
+                        entry.mRemainingRounds--;
+                    }
+                    entry = entry.mNext;
+                }
+            }
+        }
+    }
+
+    /** A timeout in the wheel */
+    private final class Entry implements Timeout {
+        private final Runnable mTask;
+        private final long mDeadline;
+        private final AtomicInteger mEntryState = new AtomicInteger(ENTRY_PENDING);
+
+        /** Remaining rotations of the wheel (worker only) */
+        private long mRemainingRounds;
+        /** Bucket and neighbours (worker only) */
+        private Bucket mBucket;
+        private Entry mPrev;
+        private Entry mNext;
+
+        private Entry(Runnable task, long deadline) {
+            mTask = task;
+            mDeadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!mEntryState.compareAndSet(ENTRY_PENDING, ENTRY_CANCELLED)) {
+                return false;
+            }
+            mCancelled.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mEntryState.get() == ENTRY_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return mEntryState.get() == ENTRY_EXPIRED;
+        }
+
+        private void expire() {
+            if (!mEntryState.compareAndSet(ENTRY_PENDING, ENTRY_EXPIRED)) {
+                return;
+            }
+            try {
+                mTask.run();
+            } catch (Throwable t) {
+                LOG.error("Exception in timeout task of " + mName, t);
+            }
+        }
+    }
+
+}
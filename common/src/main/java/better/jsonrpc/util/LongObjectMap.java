@@ -0,0 +1,246 @@
+package better.jsonrpc.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hash map from primitive longs to objects
+ *
+ * Uses open addressing with linear probing, so keys are never
+ * boxed and entries cost no objects of their own. Removal shifts
+ * following entries back instead of leaving tombstones.
+ *
+ * Not thread-safe.
+ *
+ * @param <V> type of values
+ */
+public class LongObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    /** Keys, zero marks a free slot */
+    private long[] mKeys;
+    /** Values, null in free slots */
+    private Object[] mValues;
+    /** Mask for turning hashes into slot indexes */
+    private int mMask;
+    /** Number of entries in the slots */
+    private int mSize;
+    /** Number of entries that triggers growing */
+    private int mThreshold;
+
+    /** Value of the zero key, which can not live in the slots */
+    private V mZeroValue;
+    /** True if the zero key is present */
+    private boolean mHasZero;
+
+    /** Create an empty map */
+    public LongObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Create an empty map
+     * @param expectedSize number of entries to make room for
+     */
+    public LongObjectMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /** @return the number of entries */
+    public int size() {
+        return mHasZero ? mSize + 1 : mSize;
+    }
+
+    /** @return true if there are no entries */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Get the value for the given key
+     * @param key to look up
+     * @return the value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0) {
+            return mZeroValue;
+        }
+        long[] keys = mKeys;
+        int mask = mMask;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return (V) mValues[i];
+            }
+            if (k == 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Associate the given key with the given value
+     * @param key to store under
+     * @param value to store (not null)
+     * @return the previous value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        if (key == 0) {
+            V previous = mZeroValue;
+            mZeroValue = value;
+            mHasZero = true;
+            return previous;
+        }
+        long[] keys = mKeys;
+        int mask = mMask;
+        int i = slot(key, mask);
+        for (; keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = (V) mValues[i];
+                mValues[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        mValues[i] = value;
+        if (++mSize > mThreshold) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Remove the given key
+     * @param key to remove
+     * @return the removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == 0) {
+            V previous = mZeroValue;
+            mZeroValue = null;
+            mHasZero = false;
+            return previous;
+        }
+        long[] keys = mKeys;
+        int mask = mMask;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                V previous = (V) mValues[i];
+                shiftBack(i);
+                mSize--;
+                return previous;
+            }
+            if (k == 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Remove the given key if it maps to the given value
+     * @param key to remove
+     * @param value expected value
+     * @return true if the entry was removed
+     */
+    public boolean remove(long key, V value) {
+        if (value == null || get(key) != value) {
+            return false;
+        }
+        remove(key);
+        return true;
+    }
+
+    /** Remove all entries */
+    public void clear() {
+        Arrays.fill(mKeys, 0);
+        Arrays.fill(mValues, null);
+        mSize = 0;
+        mZeroValue = null;
+        mHasZero = false;
+    }
+
+    /**
+     * Add all values to the given list
+     * @param list to add to
+     */
+    @SuppressWarnings("unchecked")
+    public void collectValues(List<? super V> list) {
+        if (mHasZero) {
+            list.add(mZeroValue);
+        }
+        Object[] values = mValues;
+        for (Object value : values) {
+            if (value != null) {
+                list.add((V) value);
+            }
+        }
+    }
+
+    /** Close the gap at the given slot by moving displaced entries back */
+    private void shiftBack(int gap) {
+        long[] keys = mKeys;
+        Object[] values = mValues;
+        int mask = mMask;
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            long k = keys[i];
+            if (k == 0) {
+                break;
+            }
+            int home = slot(k, mask);
+            // move the entry if its home is not between the gap and its slot
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = k;
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = 0;
+        values[gap] = null;
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new Object[capacity];
+        mMask = capacity - 1;
+        mThreshold = capacity * 3 / 4;
+    }
+
+    private void rehash(int capacity) {
+        long[] keys = mKeys;
+        Object[] values = mValues;
+        allocate(capacity);
+        int mask = mMask;
+        for (int j = 0; j < keys.length; j++) {
+            long k = keys[j];
+            if (k != 0) {
+                int i = slot(k, mask);
+                while (mKeys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                mKeys[i] = k;
+                mValues[i] = values[j];
+            }
+        }
+    }
+
+    /** Spread the key, sequential keys would otherwise cluster */
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+}
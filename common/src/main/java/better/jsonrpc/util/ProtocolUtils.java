@@ -1,9 +1,13 @@
 package better.jsonrpc.util;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 
 public class ProtocolUtils {
@@ -11,7 +15,7 @@ public class ProtocolUtils {
 	/**
 	 * Parses an ID.
 	 * @param node
-	 * @return
+	 * @return an Integer, Long, BigDecimal, Double or String, or null for a missing or null id
 	 */
 	public static Object parseId(JsonNode node) {
 		if (node==null || node.isNull()) {
@@ -21,17 +25,71 @@ public class ProtocolUtils {
 		} else if (node.isFloatingPointNumber()) {
 			return node.asDouble();
 		} else if (node.isInt()) {
-			return node.asInt();
-		} else if (node.isIntegralNumber()) {
-			return node.asInt();
+			return node.intValue();
 		} else if (node.isLong()) {
-			return node.asLong();
+			return node.longValue();
+		} else if (node.isIntegralNumber()) {
+			return node.decimalValue();
 		} else if (node.isTextual()) {
 			return node.asText();
 		}
 		throw new IllegalArgumentException("Unknown id type");
 	}
+
+	/**
+	 * Parses an ID from the current token of a parser.
+	 * @param parser positioned on the id value
+	 * @return an Integer, Long, BigDecimal, Double or String, or null for a null id,
+	 *         the same as {@link #parseId(JsonNode)}
+	 * @throws IOException on parse errors
+	 */
+	public static Object parseId(JsonParser parser) throws IOException {
+		JsonToken token = parser.getCurrentToken();
+		if (token==null || token==JsonToken.VALUE_NULL) {
+			return null;
+		} else if (token==JsonToken.VALUE_NUMBER_FLOAT) {
+			return parser.getDoubleValue();
+		} else if (token==JsonToken.VALUE_NUMBER_INT) {
+			switch (parser.getNumberType()) {
+				case INT:
+					return parser.getIntValue();
+				case LONG:
+					return parser.getLongValue();
+				default:
+					return parser.getDecimalValue();
+			}
+		} else if (token==JsonToken.VALUE_STRING) {
+			return parser.getText();
+		}
+		throw new IllegalArgumentException("Unknown id type");
+	}
 	
+	/**
+	 * Writes an ID field, using the same representation as the
+	 * tree-building methods below.
+	 * @param generator positioned inside the response object
+	 * @param id the id
+	 * @throws IOException on write errors
+	 */
+	public static void writeId(JsonGenerator generator, Object id) throws IOException {
+		generator.writeFieldName("id");
+		if (id == null) {
+			generator.writeNull();
+		} else if (Integer.class.isInstance(id)) {
+			generator.writeNumber(Integer.class.cast(id).intValue());
+		} else if (Long.class.isInstance(id)) {
+			generator.writeNumber(Long.class.cast(id).longValue());
+		} else if (Float.class.isInstance(id)) {
+			generator.writeNumber(Float.class.cast(id).floatValue());
+		} else if (Double.class.isInstance(id)) {
+			generator.writeNumber(Double.class.cast(id).doubleValue());
+		} else if (BigDecimal.class.isInstance(id)) {
+			generator.writeNumber(BigDecimal.class.cast(id));
+		} else {
+			generator.writeString(String.class.cast(id));
+		}
+	}
+
 	/**
 	 * Convenience method for creating an error response.
 	 *
@@ -3,6 +3,7 @@ package better.jsonrpc.util;
 import better.jsonrpc.annotations.JsonRpcInterface;
 import better.jsonrpc.annotations.JsonRpcMethod;
 import better.jsonrpc.client.JsonRpcClient;
+import better.jsonrpc.client.JsonRpcClientMethod;
 import better.jsonrpc.core.JsonRpcTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -103,6 +104,35 @@ public abstract class ProxyUtil {
 		});
 	}
 
+	/**
+	 * Determines the method name prefix of the given interface
+	 * from its {@link JsonRpcInterface} annotation.
+	 * @param proxyInterface the interface
+	 * @return the prefix (empty if there is none)
+	 */
+	public static String getMethodPrefix(Class<?> proxyInterface) {
+		JsonRpcInterface interAnno = proxyInterface.getAnnotation(JsonRpcInterface.class);
+		if (interAnno != null && !interAnno.prefix().isEmpty()) {
+			return interAnno.prefix();
+		}
+		return "";
+	}
+
+	/**
+	 * Determines the name of the given method on the wire,
+	 * honoring its {@link JsonRpcMethod} annotation.
+	 * @param prefix the prefix of the interface
+	 * @param method the method
+	 * @return the name
+	 */
+	public static String getMethodName(String prefix, Method method) {
+		JsonRpcMethod methodAnno = method.getAnnotation(JsonRpcMethod.class);
+		if (methodAnno != null && !methodAnno.name().isEmpty()) {
+			return prefix + methodAnno.name();
+		}
+		return prefix + method.getName();
+	}
+
 	/**
 	 * Creates a {@link Proxy} of the given proxyInterface
 	 * that uses the given {@link JsonRpcClient}.
@@ -138,14 +168,8 @@ public abstract class ProxyUtil {
 		final boolean useNamedParams,
 		final JsonRpcTransport connection) {
 
-        String methodPrefix = "";
-        JsonRpcInterface interAnno = proxyInterface.getAnnotation(JsonRpcInterface.class);
-        if(interAnno != null) {
-            if(!interAnno.prefix().isEmpty()) {
-                methodPrefix = interAnno.prefix();
-            }
-        }
-        final String finalPrefix = methodPrefix;
+		// describe all methods up front
+		final Map<Method, JsonRpcClientMethod> methods = JsonRpcClientMethod.describe(proxyInterface);
 
 		// create and return the proxy
 		return (T)Proxy.newProxyInstance(
@@ -154,26 +178,37 @@ public abstract class ProxyUtil {
 			new InvocationHandler() {
 				public Object invoke(Object proxy, Method method, Object[] args)
 					throws Throwable {
-					JsonRpcClient client = connection.getClient();
-                    String methodName = finalPrefix + method.getName();
-                    JsonRpcMethod methodAnno = method.getAnnotation(JsonRpcMethod.class);
-                    if(methodAnno != null) {
-                        if(!methodAnno.name().isEmpty()) {
-                            methodName = finalPrefix + methodAnno.name();
-                        }
-                    }
-					Object arguments = ReflectionUtil.parseArguments(method, args, useNamedParams);
-                    boolean isNotification = ReflectionUtil.isNotification(method);
-					if(isNotification) {
-						client.invokeNotification(methodName, arguments, connection);
-						return null;
-					} else {
-						return client.invokeMethod(
-								methodName, arguments,
-								method.getGenericReturnType(), connection);
+					JsonRpcClientMethod call = methods.get(method);
+					if(call == null) {
+						return invokeLocally(proxy, proxyInterface, method, args);
 					}
+					return call.invoke(connection, args, useNamedParams);
 				}
 			});
 	}
 
+	/**
+	 * Answers the methods of {@link Object} for a client or batch proxy.
+	 * Proxies are equal only to themselves.
+	 * @param proxy the proxy
+	 * @param proxyInterface the interface it implements
+	 * @param method the method
+	 * @param args the arguments
+	 * @return the result
+	 */
+	public static Object invokeLocally(Object proxy, Class<?> proxyInterface, Method method, Object[] args) {
+		String name = method.getName();
+		if (name.equals("equals") && args != null && args.length == 1) {
+			return proxy == args[0];
+		}
+		if (name.equals("hashCode") && args == null) {
+			return System.identityHashCode(proxy);
+		}
+		if (name.equals("toString") && args == null) {
+			return "JSON-RPC proxy for " + proxyInterface.getName()
+				+ "@" + Integer.toHexString(System.identityHashCode(proxy));
+		}
+		throw new UnsupportedOperationException("Method " + method + " can not be called on a JSON-RPC proxy");
+	}
+
 }
@@ -12,29 +12,31 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Utilities for reflection.
  */
 public abstract class ReflectionUtil {
 
-	private static Map<String, Set<Method>> methodCache
-		= new HashMap<>();
+	private static final Map<String, Set<Method>> methodCache
+		= new ConcurrentHashMap<>();
 
-	private static Map<Method, List<Class<?>>> parameterTypeCache
-		= new HashMap<>();
+	private static final Map<Method, List<Class<?>>> parameterTypeCache
+		= new ConcurrentHashMap<>();
 
-	private static Map<Class, List<Annotation>> classAnnotationCache
-			= new HashMap<>();
+	private static final Map<Class, List<Annotation>> classAnnotationCache
+			= new ConcurrentHashMap<>();
 
-	private static Map<Method, List<Annotation>> methodAnnotationCache
-		= new HashMap<>();
+	private static final Map<Method, List<Annotation>> methodAnnotationCache
+		= new ConcurrentHashMap<>();
 
-	private static Map<Method, List<List<Annotation>>> methodParamAnnotationCache
-		= new HashMap<>();
+	private static final Map<Method, List<List<Annotation>>> methodParamAnnotationCache
+		= new ConcurrentHashMap<>();
 
 	/**
 	 * Finds methods with the given name on the given class.
@@ -48,8 +50,9 @@ public abstract class ReflectionUtil {
 			sb.append(clazz.getName()).append("::");
 		}
 		String cacheKey = sb.append(name).toString();
-		if (methodCache.containsKey(cacheKey)) {
-			return methodCache.get(cacheKey);
+		Set<Method> cached = methodCache.get(cacheKey);
+		if (cached != null) {
+			return cached;
 		}
 		Set<Method> methods = new HashSet<Method>();
 		for (Class<?> clazz : clazzes) {
@@ -84,8 +87,9 @@ public abstract class ReflectionUtil {
 	 * @return the parameter types
 	 */
 	public static List<Class<?>> getParameterTypes(Method method) {
-		if (parameterTypeCache.containsKey(method)) {
-			return parameterTypeCache.get(method);
+		List<Class<?>> cached = parameterTypeCache.get(method);
+		if (cached != null) {
+			return cached;
 		}
 		List<Class<?>> types = new ArrayList<>();
 		types.addAll(Arrays.asList(method.getParameterTypes()));
@@ -101,8 +105,9 @@ public abstract class ReflectionUtil {
 	 * @return the {@link Annotation}s
 	 */
 	public static List<Annotation> getAnnotations(Class<?> clazz) {
-		if (classAnnotationCache.containsKey(clazz)) {
-			return classAnnotationCache.get(clazz);
+		List<Annotation> cached = classAnnotationCache.get(clazz);
+		if (cached != null) {
+			return cached;
 		}
 		List<Annotation> annotations = new ArrayList<>();
 		annotations.addAll(Arrays.asList(clazz.getAnnotations()));
@@ -118,8 +123,9 @@ public abstract class ReflectionUtil {
 	 * @return the {@link Annotation}s
 	 */
 	public static List<Annotation> getAnnotations(Method method) {
-		if (methodAnnotationCache.containsKey(method)) {
-			return methodAnnotationCache.get(method);
+		List<Annotation> cached = methodAnnotationCache.get(method);
+		if (cached != null) {
+			return cached;
 		}
 		List<Annotation> annotations = new ArrayList<>();
 		annotations.addAll(Arrays.asList(method.getAnnotations()));
@@ -209,8 +215,9 @@ public abstract class ReflectionUtil {
 	 * @return the {@link Annotation}s
 	 */
 	public static List<List<Annotation>> getParameterAnnotations(Method method) {
-		if (methodParamAnnotationCache.containsKey(method)) {
-			return methodParamAnnotationCache.get(method);
+		List<List<Annotation>> cached = methodParamAnnotationCache.get(method);
+		if (cached != null) {
+			return cached;
 		}
 		List<List<Annotation>> annotations = new ArrayList<>();
 		for (Annotation[] paramAnnotations : method.getParameterAnnotations()) {
@@ -256,7 +263,7 @@ public abstract class ReflectionUtil {
 	 */
 	public static Object parseArguments(Method method, Object[] arguments, boolean useNamedParams) {
 		if (useNamedParams) {
-			Map<String, Object> namedParams = new HashMap<>();
+			Map<String, Object> namedParams = new LinkedHashMap<>();
 			Annotation[][] paramAnnotations = method.getParameterAnnotations();
 			for (int i=0; i<paramAnnotations.length; i++) {
 				Annotation[] ann = paramAnnotations[i];
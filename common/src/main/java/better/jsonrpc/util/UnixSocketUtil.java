@@ -0,0 +1,133 @@
+package better.jsonrpc.util;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Utilities for Unix domain sockets.
+ *
+ * These are supported by socket channels from Java 16 on,
+ * the API is looked up reflectively so that the library
+ * keeps running on Java 8. Client channels need no help,
+ * {@link java.nio.channels.SocketChannel#open(SocketAddress)}
+ * accepts Unix addresses as they are.
+ */
+public abstract class UnixSocketUtil {
+
+	private static final String ADDRESS_CLASS = "java.net.UnixDomainSocketAddress";
+
+	/** UnixDomainSocketAddress.of(Path) (null before Java 16) */
+	private static final Method ADDRESS_FACTORY;
+
+	/** UnixDomainSocketAddress.getPath() (null before Java 16) */
+	private static final Method ADDRESS_PATH;
+
+	/** ServerSocketChannel.open(ProtocolFamily) (null before Java 16) */
+	private static final Method SERVER_FACTORY;
+
+	/** StandardProtocolFamily.UNIX (null before Java 16) */
+	private static final ProtocolFamily UNIX;
+
+	static {
+		Method addressFactory = null;
+		Method addressPath = null;
+		Method serverFactory = null;
+		ProtocolFamily unix = null;
+		try {
+			Class<?> addressClass = Class.forName(ADDRESS_CLASS);
+			addressFactory = addressClass.getMethod("of", Path.class);
+			addressPath = addressClass.getMethod("getPath");
+			serverFactory = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+			unix = StandardProtocolFamily.valueOf("UNIX");
+		} catch (ReflectiveOperationException | IllegalArgumentException e) {
+			addressFactory = null;
+		}
+		boolean available = addressFactory != null;
+		ADDRESS_FACTORY = available ? addressFactory : null;
+		ADDRESS_PATH = available ? addressPath : null;
+		SERVER_FACTORY = available ? serverFactory : null;
+		UNIX = available ? unix : null;
+	}
+
+	/**
+	 * @return true if the runtime supports Unix domain socket channels
+	 */
+	public static boolean isAvailable() {
+		return ADDRESS_FACTORY != null;
+	}
+
+	/**
+	 * Creates the address of a socket file.
+	 *
+	 * @param path of the socket file
+	 * @return the address
+	 * @throws UnsupportedOperationException if Unix sockets are not available
+	 */
+	public static SocketAddress getAddress(Path path) {
+		checkAvailable();
+		return (SocketAddress) invoke(ADDRESS_FACTORY, null, path);
+	}
+
+	/**
+	 * @param address to check
+	 * @return true if the address is a Unix domain socket address
+	 */
+	public static boolean isUnixAddress(SocketAddress address) {
+		return address != null && address.getClass().getName().equals(ADDRESS_CLASS);
+	}
+
+	/**
+	 * Returns the socket file of a Unix domain socket address.
+	 *
+	 * @param address as checked by {@link #isUnixAddress(SocketAddress)}
+	 * @return the path of the socket file
+	 */
+	public static Path getPath(SocketAddress address) {
+		checkAvailable();
+		return (Path) invoke(ADDRESS_PATH, address);
+	}
+
+	/**
+	 * Opens an unbound server channel for Unix domain sockets.
+	 *
+	 * @return the channel
+	 * @throws IOException if the channel can not be opened
+	 * @throws UnsupportedOperationException if Unix sockets are not available
+	 */
+	public static ServerSocketChannel openServerChannel() throws IOException {
+		checkAvailable();
+		try {
+			return (ServerSocketChannel) SERVER_FACTORY.invoke(null, UNIX);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException("Could not open Unix socket channel", e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Could not open Unix socket channel", e);
+		}
+	}
+
+	private static void checkAvailable() {
+		if (!isAvailable()) {
+			throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later");
+		}
+	}
+
+	private static Object invoke(Method method, Object target, Object... args) {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Could not call " + method.getName(), e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Could not call " + method.getName(), e);
+		}
+	}
+
+}
@@ -8,6 +8,7 @@ import better.jsonrpc.test.simple.rpc.SimpleException;
 import java.io.IOException;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
 public class SimpleRpcServer implements ISimpleServer {
 
@@ -25,6 +26,28 @@ public class SimpleRpcServer implements ISimpleServer {
         return a + b;
     }
 
+    @Override
+    public int add(int a, int b, int c) {
+        return a + b + c;
+    }
+
+    @Override
+    public String add(String a, String b) {
+        return a + b;
+    }
+
+    @Override
+    public CompletableFuture<Integer> addAsync(final int a, final int b) {
+        return CompletableFuture.supplyAsync(() -> a + b);
+    }
+
+    @Override
+    public CompletableFuture<Void> failAsync(final String message) {
+        CompletableFuture<Void> future = new CompletableFuture<Void>();
+        new Thread(() -> future.completeExceptionally(new SimpleException(message))).start();
+        return future;
+    }
+
     @Override
     public int mul(int a, int b) {
         return a * b;
@@ -1,19 +1,82 @@
 package better.jsonrpc.test.simple;
 
 import better.jsonrpc.client.JsonRpcClient;
+import better.jsonrpc.client.JsonRpcClientBatch;
+import better.jsonrpc.client.JsonRpcClientRequest;
+import better.jsonrpc.client.JsonRpcClientStub;
+import better.jsonrpc.core.JsonRpcConnectedTransport;
 import better.jsonrpc.core.JsonRpcExecutorTransport;
+import better.jsonrpc.core.JsonRpcLocalTransport;
+import better.jsonrpc.core.JsonRpcMethodTypes;
+import better.jsonrpc.core.JsonRpcResponse;
+import better.jsonrpc.core.JsonRpcStreamTransport;
+import better.jsonrpc.core.JsonRpcTransport;
+import better.jsonrpc.exception.JsonRpcDisconnect;
 import better.jsonrpc.exception.JsonRpcException;
 import better.jsonrpc.exception.JsonRpcTimeout;
+import better.jsonrpc.nio.JsonRpcNioAcceptor;
+import better.jsonrpc.nio.JsonRpcNioSelectorPool;
+import better.jsonrpc.nio.JsonRpcNioTransport;
+import better.jsonrpc.nio.JsonRpcSharedMemoryTransport;
+import better.jsonrpc.server.JsonRpcDispatchTable;
+import better.jsonrpc.server.JsonRpcDispatcher;
+import better.jsonrpc.server.JsonRpcHandlerBinding;
+import better.jsonrpc.server.JsonRpcInvoker;
 import better.jsonrpc.server.JsonRpcServer;
+import better.jsonrpc.server.JsonRpcServerMethod;
 import better.jsonrpc.test.simple.model.SimpleAddress;
 import better.jsonrpc.test.simple.model.SimplePerson;
 import better.jsonrpc.test.simple.rpc.ISimpleServer;
+import better.jsonrpc.test.simple.rpc.ISimpleTypes;
+import better.jsonrpc.util.ExecutorUtil;
+import better.jsonrpc.util.HashedWheelTimer;
+import better.jsonrpc.util.ProtocolUtils;
+import better.jsonrpc.util.ProxyUtil;
+import better.jsonrpc.util.ReflectionUtil;
+import better.jsonrpc.util.UnixSocketUtil;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 /**
  * A simple functional test of the whole library in default configuration
@@ -58,6 +121,158 @@ public class SimpleTest {
         Assert.assertEquals(666, proxy.add(600, proxy.add(60, 6)));
     }
 
+    @Test
+    public void testOverloads() {
+        Assert.assertEquals(5, proxy.add(2, 3));
+        Assert.assertEquals(6, proxy.add(1, 2, 3));
+        Assert.assertEquals("23", proxy.add("2", "3"));
+    }
+
+    @Test
+    public void testNamedOverloads() {
+        ISimpleServer named = ProxyUtil.createClientProxy(
+                ISimpleServer.class.getClassLoader(), ISimpleServer.class, true, connectionB);
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(5, named.add(2, 3));
+            Assert.assertEquals(6, named.add(1, 2, 3));
+            Assert.assertEquals("23", named.add("2", "3"));
+        }
+    }
+
+    @Test
+    public void testNamedNullArgument() throws Exception {
+        Method add = ISimpleServer.class.getMethod("add", String.class, String.class);
+        Object params = ReflectionUtil.parseArguments(add, new Object[] {null, "3"}, true);
+        Map<?, ?> named = (Map<?, ?>) params;
+        Assert.assertEquals(Arrays.asList("a", "b"), new ArrayList<Object>(named.keySet()));
+        Assert.assertNull(named.get("a"));
+        Assert.assertEquals("3", named.get("b"));
+    }
+
+    @Test
+    public void testAsyncProxy() throws Exception {
+        CompletableFuture<Integer> sum = proxy.addAsync(2, 3);
+        CompletableFuture<Void> failure = proxy.failAsync("boom");
+        Assert.assertEquals(Integer.valueOf(5), sum.get());
+        try {
+            failure.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertEquals(1000, ((JsonRpcException) e.getCause()).getCode());
+            Assert.assertEquals("boom", e.getCause().getMessage());
+        }
+        Assert.assertEquals(36, client.invokeMethodAsync("mul", new Object[] {6, 6}, int.class, connectionB).get());
+    }
+
+    /** Future type proxies can not provide */
+    public interface ICustomFuture<T> extends CompletionStage<T> {
+    }
+
+    /** Protocol returning such futures */
+    public interface ICustomFutureServer {
+        ICustomFuture<Integer> addAsync(int a, int b);
+    }
+
+    @Test
+    public void testUnsupportedFutureType() {
+        try {
+            connectionB.makeProxy(ICustomFutureServer.class);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testResultMismatch() throws Throwable {
+        // blocking and asynchronous calls fail alike
+        try {
+            client.invokeMethod("mul", new Object[] {6, 6}, SimplePerson.class, connectionB);
+            Assert.fail();
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            client.invokeMethodAsync("mul", new Object[] {6, 6}, SimplePerson.class, connectionB).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testNumericIds() throws Exception {
+        List<JsonRpcExecutorTransport> connections = JsonRpcExecutorTransport.createExecutorConnectionPair();
+        connections.get(0).bindServer(server, new SimpleRpcServer());
+        JsonRpcClient numericClient = new JsonRpcClient();
+        numericClient.setNumericIds(true);
+        connections.get(1).bindClient(numericClient);
+        ISimpleServer numeric = connections.get(1).makeProxy(ISimpleServer.class);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i + 1, numeric.add(i, 1));
+        }
+        Assert.assertEquals(Integer.valueOf(5), numeric.addAsync(2, 3).get());
+
+        // tree and stream parsing agree on ids
+        ObjectMapper mapper = new ObjectMapper();
+        for (String id : new String[] {"23", "4294967296", "123456789012345678901234567890", "1.5", "\"a\""}) {
+            JsonParser parser = mapper.getFactory().createParser(id);
+            parser.nextToken();
+            Assert.assertEquals(ProtocolUtils.parseId(parser), ProtocolUtils.parseId(mapper.readTree(id)));
+            parser.close();
+        }
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        List<JsonRpcExecutorTransport> connections = JsonRpcExecutorTransport.createExecutorConnectionPair();
+        connections.get(0).bindServer(server, new SimpleRpcServer());
+        JsonRpcClient coalescingClient = new JsonRpcClient();
+        coalescingClient.setCoalescingWindow(20);
+        coalescingClient.setCoalescingLimit(8);
+        connections.get(1).bindClient(coalescingClient);
+        ISimpleServer coalesced = connections.get(1).makeProxy(ISimpleServer.class);
+        List<CompletableFuture<Integer>> sums = new ArrayList<CompletableFuture<Integer>>();
+        for (int i = 0; i < 20; i++) {
+            sums.add(coalesced.addAsync(i, 1));
+        }
+        coalesced.ping();
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(Integer.valueOf(i + 1), sums.get(i).get());
+        }
+    }
+
+    @Test
+    public void testBatchBuilder() throws Exception {
+        JsonRpcClientBatch batch = client.createBatch(connectionB);
+        ISimpleServer batched = batch.getProxy(ISimpleServer.class);
+        CompletableFuture<Integer> sum = batch.call(() -> batched.add(2, 3));
+        CompletableFuture<String> concat = batch.call(() -> batched.add("2", "3"));
+        CompletableFuture<Void> ping = batch.run(() -> batched.ping());
+        CompletableFuture<Integer> asyncSum = batched.addAsync(4, 5);
+        CompletableFuture<Void> failure = batch.run(() -> batched.throwTranslatedRuntimeException());
+        CompletableFuture<Object> product = batch.add("mul", new Object[] {6, 6}, int.class);
+        // answered by the proxy itself
+        Assert.assertEquals(batched, batched);
+        Assert.assertEquals(System.identityHashCode(batched), batched.hashCode());
+        Assert.assertTrue(batched.toString().contains(ISimpleServer.class.getName()));
+        Assert.assertEquals(6, batch.size());
+        Assert.assertFalse(sum.isDone());
+        batch.send().get();
+        Assert.assertEquals(Integer.valueOf(5), sum.get());
+        Assert.assertEquals("23", concat.get());
+        Assert.assertNull(ping.get());
+        Assert.assertEquals(Integer.valueOf(9), asyncSum.get());
+        Assert.assertEquals(36, product.get());
+        try {
+            failure.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertEquals(2342, ((JsonRpcException) e.getCause()).getCode());
+            Assert.assertEquals("TranslatedRuntimeException", e.getCause().getMessage());
+        }
+    }
+
     @Test
     public void testDate() {
         // get date
@@ -95,6 +310,43 @@ public class SimpleTest {
         proxy.timeout(5000);
     }
 
+    @Test
+    public void testAsyncTimeout() throws Exception {
+        SilentTransport silent = new SilentTransport();
+        JsonRpcClient silentClient = new JsonRpcClient();
+        HashedWheelTimer timer = new HashedWheelTimer("test-timeouts", 10, TimeUnit.MILLISECONDS, 64);
+        silentClient.setTimer(timer);
+        silentClient.setRequestTimeout(50);
+        silent.bindClient(silentClient);
+        try {
+            // a continuation that blocks does not hold up the timer
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<String> threads = new CopyOnWriteArrayList<String>();
+            CompletableFuture<Object> slow = silentClient.invokeMethodAsync("ping", null, void.class, silent)
+                    .handle((result, error) -> {
+                        threads.add(Thread.currentThread().getName());
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return error;
+                    });
+            CompletableFuture<Object> other = silentClient.invokeMethodAsync("ping", null, void.class, silent);
+            try {
+                other.get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof JsonRpcTimeout);
+            }
+            release.countDown();
+            Assert.assertTrue(slow.get(5, TimeUnit.SECONDS) instanceof JsonRpcTimeout);
+            Assert.assertNotEquals("test-timeouts", threads.get(0));
+        } finally {
+            timer.stop();
+        }
+    }
+
     @Test
     public void testSequentialCalls() {
         for(int i = 0; i < 1000; i++) {
@@ -124,6 +376,27 @@ public class SimpleTest {
         }
     }
 
+    @Test
+    public void testErrorResolverArguments() throws Exception {
+        final List<JsonNode> resolved = new CopyOnWriteArrayList<JsonNode>();
+        JsonRpcServer resolvingServer = new JsonRpcServer(ISimpleServer.class);
+        resolvingServer.setErrorResolver((t, method, arguments) -> {
+            resolved.addAll(arguments);
+            return null;
+        });
+        List<JsonRpcExecutorTransport> connections = JsonRpcExecutorTransport.createExecutorConnectionPair();
+        connections.get(0).bindServer(resolvingServer, new SimpleRpcServer());
+        connections.get(1).bindClient(new JsonRpcClient());
+        try {
+            connections.get(1).makeProxy(ISimpleServer.class).throwSimpleException("resolved");
+            Assert.fail();
+        } catch (JsonRpcException e) {
+            Assert.assertEquals("resolved", e.getMessage());
+        }
+        Assert.assertEquals(1, resolved.size());
+        Assert.assertEquals("resolved", resolved.get(0).asText());
+    }
+
     @Test(expected = JsonRpcException.class)
     public void testException() throws Exception {
         proxy.throwException();
@@ -200,4 +473,619 @@ public class SimpleTest {
         }
     }
 
+    @Test
+    public void testBatch() throws Exception {
+        RecordingTransport transport = new RecordingTransport();
+        String batch = "["
+                + "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"add\",\"params\":[2,3]},"
+                + "{\"jsonrpc\":\"2.0\",\"method\":\"ping\"},"
+                + "{\"jsonrpc\":\"2.0\",\"id\":\"2\",\"method\":\"mul\",\"params\":[6,6]},"
+                + "{\"jsonrpc\":\"2.0\",\"id\":\"3\",\"method\":\"unknown\"},"
+                + "1]";
+        transport.handle(batch).join();
+        Assert.assertEquals(4, transport.responses.size());
+        Assert.assertEquals(5, transport.responses.get(0).getResult());
+        Assert.assertEquals(36, transport.responses.get(1).getResult());
+        Assert.assertTrue(transport.responses.get(2).isError());
+        Assert.assertTrue(transport.responses.get(3).isError());
+
+        // empty batches get a single error
+        transport.responses.clear();
+        transport.handle("[]").join();
+        Assert.assertEquals(1, transport.responses.size());
+        Assert.assertTrue(transport.responses.get(0).isError());
+    }
+
+    @Test
+    public void testAsyncHandler() throws Exception {
+        RecordingTransport transport = new RecordingTransport();
+        transport.handle("{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"addAsync\",\"params\":[2,3]}").join();
+        transport.handle("{\"jsonrpc\":\"2.0\",\"id\":\"2\",\"method\":\"failAsync\",\"params\":[\"boom\"]}").join();
+        Assert.assertEquals(2, transport.responses.size());
+        Assert.assertEquals(5, transport.responses.get(0).getResult());
+        Assert.assertTrue(transport.responses.get(1).isError());
+        Assert.assertEquals(1000, transport.responses.get(1).toNode(transport.getMapper()).get("error").get("code").asInt());
+    }
+
+    @Test
+    public void testDisconnect() throws Exception {
+        SilentTransport silent = new SilentTransport();
+        JsonRpcClient silentClient = new JsonRpcClient();
+        silent.bindClient(silentClient);
+        CompletableFuture<Object> pending = silentClient.invokeMethodAsync("ping", null, void.class, silent);
+        // calls on other connections are unaffected
+        Assert.assertEquals(5, proxy.add(2, 3));
+        Assert.assertFalse(pending.isDone());
+        silent.close();
+        try {
+            pending.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof JsonRpcDisconnect);
+            Assert.assertEquals(0, e.getCause().getStackTrace().length);
+        }
+    }
+
+    @Test
+    public void testRequestEncoding() throws Throwable {
+        SilentTransport silent = new SilentTransport();
+        JsonRpcClient silentClient = new JsonRpcClient();
+        silent.bindClient(silentClient);
+        SimplePerson person = new SimplePerson("Alice", "Archer");
+        silentClient.invokeNotification("extractAddress", new Object[] {person}, silent);
+        silentClient.invokeNotification("ping", null, silent);
+        JsonRpcClientRequest extract = silent.requests.get(0);
+        JsonRpcClientRequest ping = silent.requests.get(1);
+        // the tree is derived from the streamed form
+        Assert.assertEquals(silent.getMapper().readTree(extract.toByteArray()), extract.getRequest());
+        Assert.assertEquals("Alice", extract.getRequest().get("params").get(0).get("firstName").asText());
+        Assert.assertEquals("{\"jsonrpc\":\"2.0\",\"method\":\"ping\",\"params\":[]}",
+                new String(ping.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void testResponseDecoding() throws Exception {
+        SilentTransport silent = new SilentTransport();
+        JsonRpcClient silentClient = new JsonRpcClient();
+        silentClient.setNumericIds(true);
+        silent.bindClient(silentClient);
+        CompletableFuture<Object> first = silentClient.invokeMethodAsync("getPerson", null, SimplePerson.class, silent);
+        CompletableFuture<Object> second = silentClient.invokeMethodAsync("getPerson", null, SimplePerson.class, silent);
+        CompletableFuture<Object> third = silentClient.invokeMethodAsync("getPerson", null, SimplePerson.class, silent);
+        long firstId = silent.requests.get(0).getNumericId();
+        long secondId = silent.requests.get(1).getNumericId();
+        long thirdId = silent.requests.get(2).getNumericId();
+        // bound directly, buffered because the id comes last, and a type mismatch
+        silent.receive("[{\"jsonrpc\":\"2.0\",\"id\":" + firstId
+                + ",\"result\":{\"firstName\":\"Alice\",\"lastName\":\"Archer\"}},"
+                + "{\"jsonrpc\":\"2.0\",\"result\":{\"firstName\":\"Bob\",\"lastName\":\"Baker\"},"
+                + "\"id\":" + secondId + "},"
+                + "{\"jsonrpc\":\"2.0\",\"id\":" + thirdId + ",\"result\":[1,2,3]}]");
+        Assert.assertEquals("Alice", ((SimplePerson) first.get()).getFirstName());
+        Assert.assertEquals("Baker", ((SimplePerson) second.get()).getLastName());
+        try {
+            third.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testObjectMethods() {
+        SilentTransport silent = new SilentTransport();
+        silent.bindClient(new JsonRpcClient());
+        ISimpleServer silentProxy = silent.makeProxy(ISimpleServer.class);
+        ISimpleServer otherProxy = silent.makeProxy(ISimpleServer.class);
+        // answered by the proxy itself
+        Assert.assertEquals(silentProxy, silentProxy);
+        Assert.assertNotEquals(silentProxy, otherProxy);
+        Assert.assertEquals(System.identityHashCode(silentProxy), silentProxy.hashCode());
+        Assert.assertTrue(silentProxy.toString().contains(ISimpleServer.class.getName()));
+        Assert.assertTrue(silent.requests.isEmpty());
+    }
+
+    @Test
+    public void testGeneratedCode() throws Throwable {
+        // ISimpleServer is processed at build time
+        Assert.assertTrue(proxy instanceof JsonRpcClientStub);
+        JsonRpcHandlerBinding binding = server.bind(new SimpleRpcServer());
+        JsonRpcInvoker invoker = binding.getInvoker(server.getDispatchTable().lookup("mul")[0]);
+        Assert.assertTrue(invoker.getClass().getName().startsWith(
+                ISimpleServer.class.getName() + JsonRpcDispatcher.CLASS_SUFFIX));
+        Assert.assertEquals(42, invoker.invoke(new Object[] {6, 7}));
+    }
+
+    @Test
+    public void testGeneratedDescriptions() throws Exception {
+        // ISimpleTypes is processed at build time
+        JsonRpcServer typesServer = new JsonRpcServer(ISimpleTypes.class);
+        JsonRpcDispatchTable table = typesServer.getDispatchTable();
+        ObjectMapper mapper = new ObjectMapper();
+        Assert.assertEquals(5, table.getAllMethods().length);
+        for (JsonRpcServerMethod method : table.getAllMethods()) {
+            Assert.assertNotNull(method.getDispatcher());
+            // generated types are the ones reflection finds
+            JsonRpcMethodTypes reflected = new JsonRpcMethodTypes(method.getMethod(), mapper);
+            JsonRpcMethodTypes generated = method.getTypes(mapper);
+            for (int i = 0; i < method.getParameterCount(); i++) {
+                Assert.assertEquals(reflected.getParameterType(i), generated.getParameterType(i));
+            }
+            Assert.assertEquals(reflected.getReturnType(), generated.getReturnType());
+        }
+        Assert.assertEquals("sumAll", table.lookup("types.sum")[0].getJavaName());
+        Assert.assertNull(table.lookup("sum"));
+        Assert.assertNull(table.lookup("sumAll"));
+        Assert.assertEquals(0, table.lookup("types.touch")[0].getParameterIndex("what"));
+
+        CompletableFuture<String> touched = new CompletableFuture<String>();
+        List<JsonRpcExecutorTransport> connections = JsonRpcExecutorTransport.createExecutorConnectionPair();
+        connections.get(0).bindServer(typesServer, new ISimpleTypes() {
+            public int sumAll(List<Integer> values) {
+                return values.stream().mapToInt(Integer::intValue).sum();
+            }
+            public Map<String, List<Integer>> group(Map<String, ? extends Number> values) {
+                Map<String, List<Integer>> groups = new HashMap<String, List<Integer>>();
+                values.forEach((key, value) -> groups.put(key, Arrays.asList(value.intValue())));
+                return groups;
+            }
+            public <T extends Number> T first(List<T> values) {
+                return values.get(0);
+            }
+            public int[][] transpose(int[][] matrix) {
+                int[][] transposed = new int[matrix[0].length][matrix.length];
+                for (int i = 0; i < matrix.length; i++) {
+                    for (int j = 0; j < matrix[i].length; j++) {
+                        transposed[j][i] = matrix[i][j];
+                    }
+                }
+                return transposed;
+            }
+            public void touch(String what) {
+                touched.complete(what);
+            }
+        });
+        JsonRpcClient typesClient = new JsonRpcClient();
+        typesClient.setRequestTimeout(5000);
+        connections.get(1).bindClient(typesClient);
+        ISimpleTypes types = connections.get(1).makeProxy(ISimpleTypes.class);
+        Assert.assertTrue(types instanceof JsonRpcClientStub);
+        Assert.assertEquals(6, types.sumAll(Arrays.asList(1, 2, 3)));
+        Assert.assertEquals(Arrays.asList(2), types.group(Collections.singletonMap("x", 2.5)).get("x"));
+        Assert.assertEquals(7, types.first(Arrays.asList(7, 8)).intValue());
+        Assert.assertArrayEquals(new int[][] {{1, 3}, {2, 4}}, types.transpose(new int[][] {{1, 2}, {3, 4}}));
+        types.touch("fnord");
+        Assert.assertEquals("fnord", touched.get(5, TimeUnit.SECONDS));
+    }
+
+    /** Protocol without generated code */
+    public interface IPlainServer {
+        long scale(long value, double factor);
+        void count(int[] counter);
+        String join(String[] parts, char separator);
+    }
+
+    /** Protocol the invoker classes can not see */
+    interface IHiddenServer {
+        int negate(int value);
+    }
+
+    @Test
+    public void testCompiledInvokers() throws Throwable {
+        IPlainServer plain = new IPlainServer() {
+            public long scale(long value, double factor) {
+                return (long) (value * factor);
+            }
+            public void count(int[] counter) {
+                counter[0]++;
+            }
+            public String join(String[] parts, char separator) {
+                return String.join(String.valueOf(separator), parts);
+            }
+        };
+        JsonRpcServer plainServer = new JsonRpcServer(IPlainServer.class);
+        JsonRpcHandlerBinding binding = plainServer.bind(plain);
+        JsonRpcInvoker scale = binding.getInvoker(plainServer.getDispatchTable().lookup("scale")[0]);
+        JsonRpcInvoker count = binding.getInvoker(plainServer.getDispatchTable().lookup("count")[0]);
+        JsonRpcInvoker join = binding.getInvoker(plainServer.getDispatchTable().lookup("join")[0]);
+        // one class per method
+        Assert.assertTrue(scale.getClass().getName().startsWith("better.jsonrpc.server.JsonRpcCompiledInvoker$"));
+        Assert.assertNotSame(scale.getClass(), count.getClass());
+        Assert.assertEquals(21L, scale.invoke(new Object[] {42L, 0.5}));
+        int[] counter = new int[1];
+        Assert.assertNull(count.invoke(new Object[] {counter}));
+        Assert.assertEquals(1, counter[0]);
+        Assert.assertEquals("a-b", join.invoke(new Object[] {new String[] {"a", "b"}, '-'}));
+        // classes are made once per method
+        Assert.assertSame(scale.getClass(), plainServer.bind(plain).getInvoker(
+                plainServer.getDispatchTable().lookup("scale")[0]).getClass());
+
+        // not public, falls back to method handles
+        JsonRpcServer hiddenServer = new JsonRpcServer(IHiddenServer.class);
+        JsonRpcInvoker negate = hiddenServer.bind((IHiddenServer) value -> -value)
+                .getInvoker(hiddenServer.getDispatchTable().lookup("negate")[0]);
+        Assert.assertFalse(negate.getClass().getName().startsWith("better.jsonrpc.server.JsonRpcCompiledInvoker$"));
+        Assert.assertEquals(-5, negate.invoke(new Object[] {5}));
+    }
+
+    @Test
+    public void testLocalTransport() throws Exception {
+        SimplePerson person = new SimplePerson("Alice", "Archer");
+        SimpleAddress address = new SimpleAddress();
+        address.setCity("Aberdeen");
+        address.setStreet("Archer Alley");
+        address.setNumber("23e");
+        person.setAddress(address);
+
+        ISimpleServer shared = makeLocalProxy(JsonRpcLocalTransport.SHARE);
+        Assert.assertSame(address, shared.extractAddress(person));
+        Assert.assertEquals(5, shared.add(2, 3));
+        Assert.assertEquals("ab", shared.add("a", "b"));
+        Assert.assertEquals(Integer.valueOf(42), shared.addAsync(40, 2).get());
+
+        ISimpleServer copying = makeLocalProxy(JsonRpcLocalTransport.COPY);
+        SimpleAddress copy = copying.extractAddress(person);
+        Assert.assertNotSame(address, copy);
+        Assert.assertTrue(address.equals(copy));
+        try {
+            copying.throwSimpleException("Local");
+            Assert.fail();
+        } catch (JsonRpcException e) {
+            Assert.assertEquals(1000, e.getCode());
+            Assert.assertEquals("Local", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testPerCallExecutor() throws Exception {
+        ExecutorService executor = ExecutorUtil.newPerCallExecutor();
+        List<JsonRpcExecutorTransport> connections =
+                JsonRpcExecutorTransport.createExecutorConnectionPair(new ObjectMapper(), executor);
+        connections.get(0).bindServer(server, new SimpleRpcServer());
+        JsonRpcClient blockingClient = new JsonRpcClient();
+        connections.get(1).bindClient(blockingClient);
+        ISimpleServer blocking = connections.get(1).makeProxy(ISimpleServer.class);
+        // every caller blocks a thread of its own
+        List<Future<Integer>> sums = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < 200; i++) {
+            final int a = i;
+            sums.add(executor.submit(() -> blocking.add(a, 1)));
+        }
+        for (int i = 0; i < 200; i++) {
+            Assert.assertEquals(Integer.valueOf(i + 1), sums.get(i).get());
+        }
+        // never keeps the JVM alive
+        Assert.assertTrue(executor.submit(() -> Thread.currentThread().isDaemon()).get());
+        executor.shutdown();
+        Thread thread = ExecutorUtil.newDaemonThreadFactory("test-worker").newThread(() -> { });
+        Assert.assertTrue(thread.isDaemon());
+        Assert.assertEquals("test-worker-1", thread.getName());
+    }
+
+    @Test
+    public void testNioTransport() throws Exception {
+        checkNioTransport(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @Test
+    public void testUnixSocketTransport() throws Exception {
+        Assume.assumeTrue(UnixSocketUtil.isAvailable());
+        Path directory = Files.createTempDirectory("jsonrpc");
+        Path socket = directory.resolve("test.sock");
+        try {
+            checkNioTransport(UnixSocketUtil.getAddress(socket));
+            Assert.assertFalse(Files.exists(socket));
+        } finally {
+            Files.deleteIfExists(socket);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testSharedMemoryTransport() throws Exception {
+        Path directory = createRingDirectory();
+        try {
+            // small rings to wrap around often
+            JsonRpcSharedMemoryTransport serverSide =
+                    JsonRpcSharedMemoryTransport.create(directory, 4096, new ObjectMapper(), null);
+            JsonRpcSharedMemoryTransport clientSide = JsonRpcSharedMemoryTransport.attach(directory, new ObjectMapper());
+            JsonRpcClient shmClient = new JsonRpcClient();
+            shmClient.setRequestTimeout(5000);
+            clientSide.bindClient(shmClient);
+            clientSide.start();
+            ISimpleServer shm = clientSide.makeProxy(ISimpleServer.class);
+
+            // waits in the ring until the other side has started
+            CompletableFuture<Integer> early = shm.addAsync(1, 1);
+            serverSide.bindServer(server, new SimpleRpcServer());
+            serverSide.start();
+            Assert.assertEquals(Integer.valueOf(2), early.get());
+
+            // messages close to half the ring
+            checkRoundTrips(shm, 1800);
+
+            clientSide.disconnect();
+            awaitDisconnect(serverSide::isConnected);
+        } finally {
+            deleteRingDirectory(directory);
+        }
+    }
+
+    @Test
+    public void testSharedMemoryPeerFailure() throws Throwable {
+        Path directory = createRingDirectory();
+        try {
+            // nobody ever reads what we send
+            JsonRpcSharedMemoryTransport lonely =
+                    JsonRpcSharedMemoryTransport.create(directory, 1024, new ObjectMapper(), null);
+            lonely.setPeerTimeout(100);
+            CountDownLatch closed = new CountDownLatch(1);
+            lonely.addListener(new JsonRpcConnectedTransport.Listener() {
+                public void onOpen(JsonRpcTransport connection) {
+                }
+                public void onClose(JsonRpcTransport connection) {
+                    closed.countDown();
+                }
+            });
+            JsonRpcClient lonelyClient = new JsonRpcClient();
+            lonely.bindClient(lonelyClient);
+            lonely.start();
+            // fills the ring, then gives up instead of blocking
+            for (int i = 0; i < 1000 && lonely.isConnected(); i++) {
+                lonelyClient.invokeNotification("ping", null, lonely);
+            }
+            Assert.assertTrue(closed.await(5, TimeUnit.SECONDS));
+            Assert.assertFalse(lonely.isConnected());
+        } finally {
+            deleteRingDirectory(directory);
+        }
+
+        directory = createRingDirectory();
+        try {
+            JsonRpcSharedMemoryTransport victim = JsonRpcSharedMemoryTransport.create(directory, new ObjectMapper());
+            CountDownLatch closed = new CountDownLatch(1);
+            victim.addListener(new JsonRpcConnectedTransport.Listener() {
+                public void onOpen(JsonRpcTransport connection) {
+                }
+                public void onClose(JsonRpcTransport connection) {
+                    closed.countDown();
+                }
+            });
+            victim.start();
+            // a frame claiming more than the ring holds, written where the other side would
+            try (FileChannel ring = FileChannel.open(directory.resolve("attacher.ring"), StandardOpenOption.WRITE)) {
+                ring.write((ByteBuffer) ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE).flip(), 256);
+                ring.write((ByteBuffer) ByteBuffer.allocate(8).putLong(8).flip(), 64);
+            }
+            Assert.assertTrue(closed.await(5, TimeUnit.SECONDS));
+            Assert.assertFalse(victim.isConnected());
+        } finally {
+            deleteRingDirectory(directory);
+        }
+    }
+
+    /** Create a directory for rings, on a tmpfs if there is one */
+    private static Path createRingDirectory() throws IOException {
+        Path tmpfs = Paths.get("/dev/shm");
+        return Files.isDirectory(tmpfs) ? Files.createTempDirectory(tmpfs, "jsonrpc")
+                : Files.createTempDirectory("jsonrpc");
+    }
+
+    private static void deleteRingDirectory(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testStreamTransport() throws Exception {
+        for (JsonRpcStreamTransport.Framing framing : JsonRpcStreamTransport.Framing.values()) {
+            checkStreamTransport(framing);
+        }
+
+        // other headers and blank lines between messages are ignored
+        String body = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"add\",\"params\":[2,3]}";
+        String input = "\r\nContent-Type: application/vscode-jsonrpc; charset=utf-8\r\n"
+                + "content-length: " + body.length() + "\r\n\r\n" + body;
+        String response = readStreamOutput(input, JsonRpcStreamTransport.Framing.CONTENT_LENGTH);
+        Assert.assertTrue(response.startsWith("Content-Length: "));
+        Assert.assertTrue(response.contains("\"result\":5"));
+    }
+
+    @Test
+    public void testStreamTransportMalformed() throws Exception {
+        // a malformed line loses only itself
+        String request = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"add\",\"params\":[2,3]}";
+        String response = readStreamOutput("{\"jsonrpc\":\n\n" + request + "\n",
+                JsonRpcStreamTransport.Framing.NEWLINE);
+        Assert.assertTrue(response.contains("\"result\":5"));
+
+        // a negative length ends the connection instead of passing for the end of input
+        response = readStreamOutput("Content-Length: -1\r\n\r\n" + request,
+                JsonRpcStreamTransport.Framing.CONTENT_LENGTH);
+        Assert.assertEquals("", response);
+    }
+
+    private static String readStreamOutput(String input, JsonRpcStreamTransport.Framing framing) throws Exception {
+        CompletableFuture<String> output = new CompletableFuture<String>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                output.complete(new String(toByteArray(), StandardCharsets.UTF_8));
+            }
+        };
+        JsonRpcStreamTransport raw = new JsonRpcStreamTransport(new ObjectMapper(),
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), bytes, framing, Runnable::run);
+        raw.bindServer(server, new SimpleRpcServer());
+        raw.start();
+        return output.get(5, TimeUnit.SECONDS);
+    }
+
+    private static void checkStreamTransport(JsonRpcStreamTransport.Framing framing) throws Exception {
+        PipedOutputStream toServer = new PipedOutputStream();
+        PipedOutputStream toClient = new PipedOutputStream();
+        JsonRpcStreamTransport serverSide = new JsonRpcStreamTransport(new ObjectMapper(),
+                new PipedInputStream(toServer, 1 << 16), toClient, framing);
+        JsonRpcStreamTransport clientSide = new JsonRpcStreamTransport(new ObjectMapper(),
+                new PipedInputStream(toClient, 1 << 16), toServer, framing);
+        serverSide.bindServer(server, new SimpleRpcServer());
+        JsonRpcClient streamClient = new JsonRpcClient();
+        streamClient.setRequestTimeout(5000);
+        clientSide.bindClient(streamClient);
+        serverSide.start();
+        clientSide.start();
+        ISimpleServer stream = clientSide.makeProxy(ISimpleServer.class);
+
+        // larger than the pipe buffers
+        checkRoundTrips(stream, 1 << 17);
+
+        clientSide.disconnect();
+        awaitDisconnect(serverSide::isConnected);
+    }
+
+    private static void checkNioTransport(SocketAddress bindAddress) throws Exception {
+        JsonRpcNioSelectorPool pool = new JsonRpcNioSelectorPool();
+        try {
+            CompletableFuture<JsonRpcTransport> serverClosed = new CompletableFuture<JsonRpcTransport>();
+            JsonRpcNioAcceptor acceptor = new JsonRpcNioAcceptor(pool, new ObjectMapper(), connection -> {
+                connection.bindServer(server, new SimpleRpcServer());
+                connection.addListener(new JsonRpcConnectedTransport.Listener() {
+                    public void onOpen(JsonRpcTransport connection) {
+                    }
+                    public void onClose(JsonRpcTransport connection) {
+                        serverClosed.complete(connection);
+                    }
+                });
+            });
+            SocketAddress address = acceptor.bind(bindAddress);
+
+            JsonRpcNioTransport connection = new JsonRpcNioTransport(new ObjectMapper(), pool);
+            JsonRpcClient nioClient = new JsonRpcClient();
+            nioClient.setRequestTimeout(5000);
+            connection.bindClient(nioClient);
+            connection.connect(address);
+            ISimpleServer nio = connection.makeProxy(ISimpleServer.class);
+
+            // larger than the pooled buffers in both directions
+            checkRoundTrips(nio, 3 * JsonRpcNioSelectorPool.DEFAULT_BUFFER_SIZE);
+
+            connection.disconnect();
+            Assert.assertFalse(connection.isConnected());
+            Assert.assertFalse(((JsonRpcNioTransport) serverClosed.get(5, TimeUnit.SECONDS)).isConnected());
+            acceptor.close();
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Exercise a connected proxy: a call, a pile of concurrent calls, and
+     * text of the given length in both directions
+     */
+    private static void checkRoundTrips(ISimpleServer proxy, int textLength) throws Exception {
+        Assert.assertEquals(5, proxy.add(2, 3));
+        List<CompletableFuture<Integer>> sums = new ArrayList<CompletableFuture<Integer>>();
+        for (int i = 0; i < 500; i++) {
+            sums.add(proxy.addAsync(i, 1));
+        }
+        for (int i = 0; i < 500; i++) {
+            Assert.assertEquals(Integer.valueOf(i + 1), sums.get(i).get());
+        }
+        StringBuilder text = new StringBuilder();
+        while (text.length() < textLength) {
+            text.append("fnord\n");
+        }
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(text.toString(), proxy.toString(text.toString()));
+        }
+    }
+
+    /** Wait for a transport to notice that its peer went away */
+    private static void awaitDisconnect(BooleanSupplier connected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (connected.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(connected.getAsBoolean());
+    }
+
+    private static ISimpleServer makeLocalProxy(JsonRpcLocalTransport.CopyPolicy copyPolicy) {
+        List<JsonRpcLocalTransport> connections = JsonRpcLocalTransport.createLocalConnectionPair(
+                new ObjectMapper(), Executors.newCachedThreadPool(), copyPolicy);
+        connections.get(0).bindServer(new JsonRpcServer(ISimpleServer.class), new SimpleRpcServer());
+        JsonRpcClient localClient = new JsonRpcClient();
+        localClient.setRequestTimeout(500);
+        connections.get(1).bindClient(localClient);
+        return connections.get(1).makeProxy(ISimpleServer.class);
+    }
+
+    /** Connected transport that never answers */
+    private static class SilentTransport extends JsonRpcConnectedTransport {
+        final List<JsonRpcClientRequest> requests = new CopyOnWriteArrayList<JsonRpcClientRequest>();
+        SilentTransport() {
+            super(new ObjectMapper(), true);
+        }
+        void close() {
+            onClose();
+        }
+        void receive(String message) throws IOException {
+            JsonParser parser = getMapper().getFactory().createParser(message);
+            try {
+                handleMessage(parser);
+            } finally {
+                parser.close();
+            }
+        }
+        @Override
+        public void sendRequest(JsonRpcClientRequest request) {
+            requests.add(request);
+        }
+        @Override
+        public void sendNotification(JsonRpcClientRequest request) {
+            requests.add(request);
+        }
+        @Override
+        public void sendResponse(ObjectNode response) {
+        }
+    }
+
+    /** Transport recording the responses of the server */
+    private static class RecordingTransport extends JsonRpcTransport {
+        final List<JsonRpcResponse> responses = new CopyOnWriteArrayList<JsonRpcResponse>();
+        RecordingTransport() {
+            super(new ObjectMapper());
+        }
+        CompletableFuture<Void> handle(String message) throws IOException {
+            JsonParser parser = getMapper().getFactory().createParser(message);
+            try {
+                return server.handleRequest(new SimpleRpcServer(), parser, this);
+            } finally {
+                parser.close();
+            }
+        }
+        @Override
+        public void sendRequest(JsonRpcClientRequest request) {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        public void sendNotification(JsonRpcClientRequest request) {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        public void sendResponse(ObjectNode response) {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        public void sendResponse(JsonRpcResponse response) {
+            responses.add(response);
+        }
+        @Override
+        public void sendBatchResponse(List<JsonRpcResponse> batch) {
+            responses.addAll(batch);
+        }
+    }
+
 }
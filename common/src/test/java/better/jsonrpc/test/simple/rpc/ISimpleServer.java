@@ -1,5 +1,7 @@
 package better.jsonrpc.test.simple.rpc;
 
+import better.jsonrpc.annotations.JsonRpcInterface;
+import better.jsonrpc.annotations.JsonRpcParam;
 import better.jsonrpc.annotations.JsonRpcTranslateException;
 import better.jsonrpc.annotations.JsonRpcTranslateExceptions;
 import better.jsonrpc.test.simple.model.SimpleAddress;
@@ -7,7 +9,9 @@ import better.jsonrpc.test.simple.model.SimplePerson;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
+@JsonRpcInterface
 @JsonRpcTranslateException(
     exception = SimpleException.class, code = 1000
 )
@@ -17,9 +21,14 @@ public interface ISimpleServer {
 
     String toString(Object object);
 
-    int add(int a, int b);
+    int add(@JsonRpcParam("a") int a, @JsonRpcParam("b") int b);
+    int add(@JsonRpcParam("a") int a, @JsonRpcParam("b") int b, @JsonRpcParam("c") int c);
+    String add(@JsonRpcParam("a") String a, @JsonRpcParam("b") String b);
     int mul(int a, int b);
 
+    CompletableFuture<Integer> addAsync(int a, int b);
+    CompletableFuture<Void> failAsync(String message);
+
     Date inOneHour(Date from);
 
     void timeout(long msecsToBlock);
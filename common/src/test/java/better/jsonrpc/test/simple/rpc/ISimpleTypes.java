@@ -0,0 +1,26 @@
+package better.jsonrpc.test.simple.rpc;
+
+import better.jsonrpc.annotations.JsonRpcInterface;
+import better.jsonrpc.annotations.JsonRpcMethod;
+import better.jsonrpc.annotations.JsonRpcNotification;
+import better.jsonrpc.annotations.JsonRpcParam;
+
+import java.util.List;
+import java.util.Map;
+
+@JsonRpcInterface(prefix = "types.")
+public interface ISimpleTypes {
+
+    @JsonRpcMethod(name = "sum")
+    int sumAll(List<Integer> values);
+
+    Map<String, List<Integer>> group(Map<String, ? extends Number> values);
+
+    <T extends Number> T first(List<T> values);
+
+    int[][] transpose(int[][] matrix);
+
+    @JsonRpcNotification
+    void touch(@JsonRpcParam("what") String what);
+
+}
@@ -0,0 +1,139 @@
+package better.jsonrpc.test.util;
+
+import better.jsonrpc.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests of the timing wheel used for request timeouts
+ */
+public class HashedWheelTimerTest {
+
+    /** Duration of a tick */
+    private static final long TICK = 10;
+
+    /** A small wheel, so that longer timeouts take several rounds */
+    private HashedWheelTimer mTimer;
+
+    @Before
+    public void before() {
+        mTimer = new HashedWheelTimer("test-timer", TICK, TimeUnit.MILLISECONDS, 4);
+    }
+
+    @After
+    public void after() {
+        mTimer.stop();
+    }
+
+    @Test
+    public void testNeverEarly() throws Exception {
+        // deadlines between ticks are rounded up, never down
+        for (long delay : new long[] {0, 1, 15, 25, 39}) {
+            final CountDownLatch latch = new CountDownLatch(1);
+            long start = System.nanoTime();
+            HashedWheelTimer.Timeout timeout = mTimer.newTimeout(latch::countDown, delay, TimeUnit.MILLISECONDS);
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Assert.assertTrue("expired after " + elapsed + " of " + delay + " msecs", elapsed >= delay);
+            Assert.assertTrue(timeout.isExpired());
+            Assert.assertFalse(timeout.isCancelled());
+        }
+    }
+
+    @Test
+    public void testMultipleRounds() throws Exception {
+        // one round of the wheel takes 4 ticks
+        final long delay = 13 * TICK;
+        final CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        HashedWheelTimer.Timeout timeout = mTimer.newTimeout(latch::countDown, delay, TimeUnit.MILLISECONDS);
+        // still pending after passing its bucket once
+        Assert.assertFalse(latch.await(5 * TICK, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(timeout.isExpired());
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("expired after " + elapsed + " msecs", elapsed >= delay);
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        final List<Integer> order = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch latch = new CountDownLatch(3);
+        mTimer.newTimeout(() -> { order.add(3); latch.countDown(); }, 9 * TICK, TimeUnit.MILLISECONDS);
+        mTimer.newTimeout(() -> { order.add(1); latch.countDown(); }, TICK, TimeUnit.MILLISECONDS);
+        mTimer.newTimeout(() -> { order.add(2); latch.countDown(); }, 5 * TICK, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, (int) order.get(0));
+        Assert.assertEquals(2, (int) order.get(1));
+        Assert.assertEquals(3, (int) order.get(2));
+    }
+
+    @Test
+    public void testCancelBeforeExpiry() throws Exception {
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final CountDownLatch other = new CountDownLatch(1);
+        HashedWheelTimer.Timeout timeout = mTimer.newTimeout(cancelled::countDown, 3 * TICK, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(timeout.cancel());
+        Assert.assertFalse(timeout.cancel());
+        Assert.assertTrue(timeout.isCancelled());
+        // a later timeout expiring shows that the wheel went past
+        mTimer.newTimeout(other::countDown, 6 * TICK, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(other.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, cancelled.getCount());
+        Assert.assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    public void testCancelAfterExpiry() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        HashedWheelTimer.Timeout timeout = mTimer.newTimeout(latch::countDown, TICK, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(timeout.cancel());
+        Assert.assertTrue(timeout.isExpired());
+        Assert.assertFalse(timeout.isCancelled());
+    }
+
+    @Test
+    public void testFailingTask() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mTimer.newTimeout(() -> { throw new RuntimeException("Test exception"); }, TICK, TimeUnit.MILLISECONDS);
+        mTimer.newTimeout(latch::countDown, 2 * TICK, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        HashedWheelTimer.Timeout timeout = mTimer.newTimeout(latch::countDown, 3 * TICK, TimeUnit.MILLISECONDS);
+        mTimer.stop();
+        // pending timeouts are dropped
+        Assert.assertFalse(latch.await(10 * TICK, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(timeout.isExpired());
+        try {
+            mTimer.newTimeout(latch::countDown, TICK, TimeUnit.MILLISECONDS);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testStopUnstarted() {
+        HashedWheelTimer timer = new HashedWheelTimer("unstarted-timer", TICK, TimeUnit.MILLISECONDS, 4);
+        timer.stop();
+        try {
+            timer.newTimeout(() -> { }, TICK, TimeUnit.MILLISECONDS);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+}
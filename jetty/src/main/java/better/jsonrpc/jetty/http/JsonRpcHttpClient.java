@@ -3,12 +3,18 @@ package better.jsonrpc.jetty.http;
 import better.jsonrpc.client.JsonRpcClientRequest;
 import better.jsonrpc.core.JsonRpcTransport;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.io.ByteArrayBuffer;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Collections;
+import java.util.List;
 
 public class JsonRpcHttpClient extends JsonRpcTransport {
 
@@ -31,11 +37,15 @@ public class JsonRpcHttpClient extends JsonRpcTransport {
 
     private void sendHttpRequest(JsonRpcClientRequest rpcRequest) throws IOException {
         // serialize the request
-        ObjectNode requestNode = rpcRequest.getRequest();
-        byte[] data = getMapper().writeValueAsBytes(requestNode);
+        byte[] data = rpcRequest.toByteArray();
+        // perform the exchange
+        sendHttpRequest(data, Collections.singletonList(rpcRequest));
+    }
+
+    private void sendHttpRequest(byte[] data, List<JsonRpcClientRequest> rpcRequests) throws IOException {
         ByteArrayBuffer bytes = new ByteArrayBuffer(data);
         // build the HTTP exchange
-        JsonRpcHttpExchange exchange = new JsonRpcHttpExchange(this, rpcRequest);
+        JsonRpcHttpExchange exchange = new JsonRpcHttpExchange(this, rpcRequests);
         exchange.setMethod("POST");
         exchange.setURI(mUri);
         exchange.setRequestContent(bytes);
@@ -44,6 +54,16 @@ public class JsonRpcHttpClient extends JsonRpcTransport {
         mClient.send(exchange);
     }
 
+    /** Handle the content of a response, which may be a single response or a batch */
+    void handleResponseContent(byte[] content) throws IOException {
+        JsonParser parser = getMapper().getFactory().createParser(content);
+        try {
+            handleMessage(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
     @Override
     public void sendRequest(JsonRpcClientRequest request) throws IOException {
         sendHttpRequest(request);
@@ -54,6 +74,31 @@ public class JsonRpcHttpClient extends JsonRpcTransport {
         sendHttpRequest(notification);
     }
 
+    @Override
+    public void sendBatch(List<JsonRpcClientRequest> requests) throws IOException {
+        // serialize all requests into one array
+        JsonFactory factory = getMapper().getFactory();
+        ByteArrayBuilder buffer = new ByteArrayBuilder(factory._getBufferRecycler());
+        byte[] data;
+        try {
+            JsonGenerator generator = factory.createGenerator(buffer);
+            try {
+                generator.writeStartArray();
+                for(JsonRpcClientRequest request: requests) {
+                    request.writeTo(generator);
+                }
+                generator.writeEndArray();
+            } finally {
+                generator.close();
+            }
+            data = buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+        // and post them in one go
+        sendHttpRequest(data, requests);
+    }
+
     @Override
     public void sendResponse(ObjectNode response) throws IOException {
         throw new RuntimeException("Can't send a JSON-RPC response on an HTTP transport");
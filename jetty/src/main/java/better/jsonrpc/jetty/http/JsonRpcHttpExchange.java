@@ -2,23 +2,25 @@ package better.jsonrpc.jetty.http;
 
 import better.jsonrpc.client.JsonRpcClientRequest;
 import better.jsonrpc.exception.JsonRpcProtocolError;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.eclipse.jetty.client.ContentExchange;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Represents a single JSON-RPC HTTP exchange
+ *
+ * An exchange carries either a single request or a batch.
  */
 public class JsonRpcHttpExchange extends ContentExchange {
 
     private JsonRpcHttpClient mClient;
 
-    private JsonRpcClientRequest mRequest;
+    private List<JsonRpcClientRequest> mRequests;
 
-    public JsonRpcHttpExchange(JsonRpcHttpClient client, JsonRpcClientRequest request) {
+    public JsonRpcHttpExchange(JsonRpcHttpClient client, List<JsonRpcClientRequest> requests) {
         mClient = client;
-        mRequest = request;
+        mRequests = requests;
     }
 
     @Override
@@ -26,29 +28,51 @@ public class JsonRpcHttpExchange extends ContentExchange {
         super.onResponseComplete();
         if(getResponseStatus() == 200) {
             byte[] bytes = getResponseContentBytes();
-            ObjectNode response = mClient.getMapper().readValue(bytes, ObjectNode.class);
-            mClient.getClient().handleResponse(response, mClient);
+            try {
+                // notifications get an empty body
+                if(bytes != null && bytes.length > 0) {
+                    mClient.handleResponseContent(bytes);
+                }
+            } finally {
+                // whatever the body did not answer would only time out
+                failRequests(new JsonRpcProtocolError("No response in HTTP body"));
+            }
         } else {
-            mRequest.handleLocalException(new JsonRpcProtocolError("Bad HTTP status code " + getResponseStatus()));
+            failRequests(new JsonRpcProtocolError("Bad HTTP status code " + getResponseStatus()));
+        }
+    }
+
+    /** Fail requests that are still outstanding, answered ones stay as they are */
+    private void failRequests(JsonRpcProtocolError error) {
+        for(JsonRpcClientRequest request: mRequests) {
+            if(!request.isNotification()) {
+                request.handleLocalException(error);
+            }
         }
     }
 
     @Override
     protected void onConnectionFailed(Throwable x) {
         super.onConnectionFailed(x);
-        mRequest.handleDisconnect();
+        for(JsonRpcClientRequest request: mRequests) {
+            request.handleDisconnect();
+        }
     }
 
     @Override
     protected void onException(Throwable x) {
         super.onException(x);
-        mRequest.handleLocalException(x);
+        for(JsonRpcClientRequest request: mRequests) {
+            request.handleLocalException(x);
+        }
     }
 
     @Override
     protected void onExpire() {
         super.onExpire();
-        mRequest.handleTimeout();
+        for(JsonRpcClientRequest request: mRequests) {
+            request.handleTimeout();
+        }
     }
 
 }
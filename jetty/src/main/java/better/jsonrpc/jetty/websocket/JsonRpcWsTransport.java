@@ -2,14 +2,29 @@ package better.jsonrpc.jetty.websocket;
 
 import better.jsonrpc.client.JsonRpcClientRequest;
 import better.jsonrpc.core.JsonRpcConnectedTransport;
+import better.jsonrpc.core.JsonRpcResponse;
+import better.jsonrpc.util.ExecutorUtil;
+import better.jsonrpc.util.HashedWheelTimer;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.SegmentedStringWriter;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.eclipse.jetty.websocket.WebSocket;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class JsonRpcWsTransport extends JsonRpcConnectedTransport
         implements WebSocket, WebSocket.OnTextMessage, WebSocket.OnBinaryMessage {
@@ -18,6 +33,22 @@ public class JsonRpcWsTransport extends JsonRpcConnectedTransport
     private static final byte[] KEEPALIVE_REQUEST_BINARY = new byte[] {'k'};
     private static final String KEEPALIVE_RESPONSE_STRING = "a";
     private static final byte[] KEEPALIVE_RESPONSE_BINARY = new byte[] {'a'};
+
+    /** Default executor for writers, shared by all connections */
+    private static final Executor WRITERS = ExecutorUtil.newPerCallExecutor("jsonrpc-ws-writer");
+
+    /** Timer for coalescing delays shared by all connections, created on first use */
+    private static HashedWheelTimer sDefaultTimer;
+
+    /** Interface of backpressure listeners */
+    public interface WritabilityListener {
+        /**
+         * Called when the outbound queue crosses a watermark
+         * @param connection whose queue changed
+         * @param writable false above the high watermark, true once back at the low watermark
+         */
+        void onWritabilityChanged(JsonRpcWsTransport connection, boolean writable);
+    }
 	
 	/** Currently active websocket connection */
 	private Connection mConnection;
@@ -45,6 +76,39 @@ public class JsonRpcWsTransport extends JsonRpcConnectedTransport
 
     /** Whether to answer keep-alive requests */
     private boolean mAnswerKeepAlives = false;
+
+    /** Queued bytes above which the connection stops being writable */
+    private long mHighWatermark = 1 << 20;
+
+    /** Queued bytes at which the connection becomes writable again */
+    private long mLowWatermark = 1 << 18;
+
+    /** Milliseconds to collect messages before writing (0 to write at once) */
+    private long mCoalescingDelay = 0;
+
+    /** Executor running the writer */
+    private Executor mWriteExecutor = WRITERS;
+
+    /** Timer for coalescing delays (null for the shared one) */
+    private volatile HashedWheelTimer mTimer;
+
+    /** Messages waiting for the writer, String or byte[] */
+    private final ConcurrentLinkedQueue<Object> mOutbound = new ConcurrentLinkedQueue<Object>();
+
+    /** Size of the queued messages (chars of text, bytes of binary messages) */
+    private final AtomicLong mOutboundBytes = new AtomicLong();
+
+    /** Whether a writer is running or scheduled */
+    private final AtomicBoolean mWriterScheduled = new AtomicBoolean();
+
+    /** Whether the queue is below the high watermark (changed under mWritabilityLock) */
+    private volatile boolean mWritable = true;
+
+    /** Orders writability changes and their notifications */
+    private final Object mWritabilityLock = new Object();
+
+    /** Writability listeners */
+    private final Vector<WritabilityListener> mWritabilityListeners = new Vector<WritabilityListener>();
 	
 	public JsonRpcWsTransport(ObjectMapper mapper, boolean connected) {
 		super(mapper, connected);
@@ -117,6 +181,95 @@ public class JsonRpcWsTransport extends JsonRpcConnectedTransport
         this.mAnswerKeepAlives = answerKeepAlives;
     }
 
+    public long getHighWatermark() {
+        return mHighWatermark;
+    }
+
+    public void setHighWatermark(long highWatermark) {
+        this.mHighWatermark = highWatermark;
+    }
+
+    public long getLowWatermark() {
+        return mLowWatermark;
+    }
+
+    public void setLowWatermark(long lowWatermark) {
+        this.mLowWatermark = lowWatermark;
+    }
+
+    public long getCoalescingDelay() {
+        return mCoalescingDelay;
+    }
+
+    /**
+     * Set how long messages are collected before the writer starts
+     *
+     * Jetty still writes each message as a frame of its own, the
+     * delay only lets one writer handle a burst of them in turn.
+     *
+     * @param coalescingDelay in milliseconds (0 to write at once)
+     */
+    public void setCoalescingDelay(long coalescingDelay) {
+        this.mCoalescingDelay = coalescingDelay;
+    }
+
+    /**
+     * Returns the timer shared by all connections by default
+     *
+     * Only created once a connection coalesces writes. Ticks every
+     * msec, as coalescing delays are short.
+     */
+    public static synchronized HashedWheelTimer getDefaultTimer() {
+        if(sDefaultTimer == null) {
+            sDefaultTimer = new HashedWheelTimer("jsonrpc-ws-coalescing", 1, TimeUnit.MILLISECONDS, 512);
+        }
+        return sDefaultTimer;
+    }
+
+    /**
+     * Returns the timer used for coalescing delays
+     */
+    public HashedWheelTimer getTimer() {
+        HashedWheelTimer timer = mTimer;
+        return timer != null ? timer : getDefaultTimer();
+    }
+
+    /**
+     * Set the timer used for coalescing delays
+     * @param timer to use, null for the shared one
+     */
+    public void setTimer(HashedWheelTimer timer) {
+        this.mTimer = timer;
+    }
+
+    public Executor getWriteExecutor() {
+        return mWriteExecutor;
+    }
+
+    public void setWriteExecutor(Executor writeExecutor) {
+        this.mWriteExecutor = writeExecutor;
+    }
+
+    /**
+     * @return false while the outbound queue is above the high watermark
+     */
+    public boolean isWritable() {
+        return mWritable;
+    }
+
+    /** @return the size of queued messages */
+    public long getQueuedBytes() {
+        return mOutboundBytes.get();
+    }
+
+    public void addWritabilityListener(WritabilityListener l) {
+        mWritabilityListeners.add(l);
+    }
+
+    public void removeWritabilityListener(WritabilityListener l) {
+        mWritabilityListeners.remove(l);
+    }
+
 	public boolean isConnected() {
 		return mConnection != null && mConnection.isOpen();
 	}
@@ -127,20 +280,134 @@ public class JsonRpcWsTransport extends JsonRpcConnectedTransport
 		}
 	}
 	
+    /**
+     * Queue a text message for the writer
+     * @param data to send
+     * @throws IOException if the connection is closed
+     */
 	public void transmit(String data) throws IOException {
-		if(mConnection != null && mConnection.isOpen()) {
-			mConnection.sendMessage(data);
-		} else {
-            throw new IOException("Trying to transmit data on a closed transport");
-        }
+        enqueue(data, data.length());
 	}
 
+    /**
+     * Queue a binary message for the writer
+     *
+     * The data is copied, the caller may reuse the array.
+     *
+     * @param data to send
+     * @param offset of the message in data
+     * @param length of the message
+     * @throws IOException if the connection is closed
+     */
     public void transmit(byte[] data, int offset, int length) throws IOException {
-        if(mConnection != null && mConnection.isOpen()) {
-            mConnection.sendMessage(data, offset, length);
-        } else {
+        enqueue(Arrays.copyOfRange(data, offset, offset + length), length);
+    }
+
+    /** Queue a message (String or byte[]) and make sure a writer is coming */
+    private void enqueue(Object message, int size) throws IOException {
+        if(!isConnected()) {
             throw new IOException("Trying to transmit data on a closed transport");
         }
+        mOutbound.add(message);
+        if(mOutboundBytes.addAndGet(size) > mHighWatermark && mWritable) {
+            updateWritability();
+        }
+        scheduleWriter();
+    }
+
+    /** Start a writer unless one is running or scheduled */
+    private void scheduleWriter() {
+        if(!mWriterScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delay = mCoalescingDelay;
+        if(delay > 0) {
+            // let more messages pile up for this writer
+            getTimer().newTimeout(this::startWriter, delay, TimeUnit.MILLISECONDS);
+        } else {
+            startWriter();
+        }
+    }
+
+    private void startWriter() {
+        try {
+            mWriteExecutor.execute(this::writeQueued);
+        } catch (RejectedExecutionException e) {
+            LOG.error("[" + mTransportId + "] could not start writer", e);
+            mWriterScheduled.set(false);
+        }
+    }
+
+    /** Write queued messages, as the only writer of this connection */
+    private void writeQueued() {
+        try {
+            Object message;
+            while((message = mOutbound.poll()) != null) {
+                Connection connection = mConnection;
+                if(connection == null || !connection.isOpen()) {
+                    discardQueued(message);
+                    break;
+                }
+                if(message instanceof String) {
+                    connection.sendMessage((String)message);
+                } else {
+                    byte[] data = (byte[])message;
+                    connection.sendMessage(data, 0, data.length);
+                }
+                if(mOutboundBytes.addAndGet(-sizeOf(message)) <= mLowWatermark && !mWritable) {
+                    updateWritability();
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("[" + mTransportId + "] exception writing message", e);
+            disconnect();
+        } finally {
+            mWriterScheduled.set(false);
+        }
+        // messages queued while we were finishing
+        if(!mOutbound.isEmpty()) {
+            scheduleWriter();
+        }
+    }
+
+    /** Drop the given and all queued messages */
+    private void discardQueued(Object message) {
+        while(message != null) {
+            mOutboundBytes.addAndGet(-sizeOf(message));
+            message = mOutbound.poll();
+        }
+        updateWritability();
+    }
+
+    private static int sizeOf(Object message) {
+        return (message instanceof String) ? ((String)message).length() : ((byte[])message).length;
+    }
+
+    /**
+     * Bring writability in line with the queued bytes, telling listeners
+     *
+     * The counter is read again after each change, so a change based
+     * on a count that a concurrent writer or producer has moved past
+     * is undone before returning.
+     */
+    private void updateWritability() {
+        synchronized (mWritabilityLock) {
+            while(true) {
+                long queued = mOutboundBytes.get();
+                boolean writable;
+                if(mWritable && queued > mHighWatermark) {
+                    writable = false;
+                } else if(!mWritable && queued <= mLowWatermark) {
+                    writable = true;
+                } else {
+                    return;
+                }
+                mWritable = writable;
+                for(WritabilityListener l: mWritabilityListeners) {
+                    l.onWritabilityChanged(this, writable);
+                }
+            }
+        }
     }
 
     public void transmit(JsonNode node) throws IOException {
@@ -149,7 +416,7 @@ public class JsonRpcWsTransport extends JsonRpcConnectedTransport
         }
         if(mSendBinaryMessages) {
             byte[] data = getMapper().writeValueAsBytes(node);
-            transmit(data, 0, data.length);
+            enqueue(data, data.length);
         } else {
             String data = getMapper().writeValueAsString(node);
             transmit(data);
@@ -173,29 +440,14 @@ public class JsonRpcWsTransport extends JsonRpcConnectedTransport
         }
 		super.onClose();
 		mConnection = null;
+        discardQueued(mOutbound.poll());
 	}
 
-    private void onMessage(JsonNode message) {
-        if(LOG.isTraceEnabled()) {
-            LOG.trace("[" + mTransportId + "] received \"" + message.toString() + "\"");
-        }
-        if(message.isObject()) {
-            ObjectNode messageObj = ObjectNode.class.cast(message);
-
-            // requests and notifications
-            if(messageObj.has("method")) {
-                if(messageObj.has("id")) {
-                    handleRequest(messageObj);
-                } else {
-                    handleNotification(messageObj);
-                }
-            }
-            // responses
-            if(messageObj.has("result") || messageObj.has("error")) {
-                if(messageObj.has("id")) {
-                    handleResponse(messageObj);
-                }
-            }
+    private void onMessage(JsonParser parser) throws IOException {
+        try {
+            handleMessage(parser);
+        } finally {
+            parser.close();
         }
     }
 	
@@ -214,9 +466,11 @@ public class JsonRpcWsTransport extends JsonRpcConnectedTransport
                 }
             }
             // handle normal payload
+            if(LOG.isTraceEnabled()) {
+                LOG.trace("[" + mTransportId + "] received \"" + data + "\"");
+            }
             try {
-                JsonNode node = getMapper().readTree(data);
-                onMessage(node);
+                onMessage(getMapper().getFactory().createParser(data));
             } catch (IOException e) {
                 LOG.error("Exception handling message", e);
             }
@@ -243,11 +497,11 @@ public class JsonRpcWsTransport extends JsonRpcConnectedTransport
                 return;
             }
             // handle normal payload
-            InputStream is = new ByteArrayInputStream(data, offset, length);
+            if(LOG.isTraceEnabled()) {
+                LOG.trace("[" + mTransportId + "] received " + length + " bytes");
+            }
             try {
-                JsonNode node = getMapper().readTree(is);
-                onMessage(node);
-                is.close();
+                onMessage(getMapper().getFactory().createParser(data, offset, length));
             } catch (IOException e) {
                 LOG.error("Exception handling message", e);
             }
@@ -273,18 +527,83 @@ public class JsonRpcWsTransport extends JsonRpcConnectedTransport
     }
 	
 	@Override
-	public void sendRequest(JsonRpcClientRequest request) throws IOException {
-        transmit(request.getRequest());
+	public void sendRequest(final JsonRpcClientRequest request) throws IOException {
+        transmit(request::writeTo);
 	}
 
     @Override
-    public void sendNotification(JsonRpcClientRequest notification) throws IOException {
-        transmit(notification.getRequest());
+    public void sendNotification(final JsonRpcClientRequest notification) throws IOException {
+        transmit(notification::writeTo);
+    }
+
+    @Override
+    public void sendBatch(final List<JsonRpcClientRequest> requests) throws IOException {
+        transmit(generator -> {
+            generator.writeStartArray();
+            for(JsonRpcClientRequest request: requests) {
+                request.writeTo(generator);
+            }
+            generator.writeEndArray();
+        });
     }
 
 	@Override
 	public void sendResponse(ObjectNode response) throws IOException {
         transmit(response);
 	}
+
+    @Override
+    public void sendResponse(final JsonRpcResponse response) throws IOException {
+        transmit(generator -> response.writeTo(generator, getMapper()));
+    }
+
+    @Override
+    public void sendBatchResponse(final List<JsonRpcResponse> responses) throws IOException {
+        transmit(generator -> {
+            generator.writeStartArray();
+            for(JsonRpcResponse response: responses) {
+                response.writeTo(generator, getMapper());
+            }
+            generator.writeEndArray();
+        });
+    }
+
+    /** Content written directly to a generator */
+    private interface Content {
+        void writeTo(JsonGenerator generator) throws IOException;
+    }
+
+    /** Serialize the given content into a message and transmit it */
+    private void transmit(Content content) throws IOException {
+        JsonFactory factory = getMapper().getFactory();
+        if(mSendBinaryMessages) {
+            ByteArrayBuilder buffer = new ByteArrayBuilder(factory._getBufferRecycler());
+            JsonGenerator generator = factory.createGenerator(buffer);
+            try {
+                content.writeTo(generator);
+            } finally {
+                generator.close();
+            }
+            byte[] data = buffer.toByteArray();
+            buffer.release();
+            if(LOG.isTraceEnabled()) {
+                LOG.trace("[" + mTransportId + "] transmitting " + data.length + " bytes");
+            }
+            enqueue(data, data.length);
+        } else {
+            SegmentedStringWriter buffer = new SegmentedStringWriter(factory._getBufferRecycler());
+            JsonGenerator generator = factory.createGenerator(buffer);
+            try {
+                content.writeTo(generator);
+            } finally {
+                generator.close();
+            }
+            String data = buffer.getAndClear();
+            if(LOG.isTraceEnabled()) {
+                LOG.trace("[" + mTransportId + "] transmitting \"" + data + "\"");
+            }
+            transmit(data);
+        }
+    }
 	
 }
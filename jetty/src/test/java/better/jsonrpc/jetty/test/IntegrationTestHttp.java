@@ -19,8 +19,11 @@ import org.junit.Test;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -184,4 +187,19 @@ public class IntegrationTestHttp {
         Assert.assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testCoalescedCalls() throws Exception {
+        mRpcClient.setCoalescingWindow(20);
+        mRpcClient.setCoalescingLimit(16);
+        List<CompletableFuture<Object>> sums = new ArrayList<CompletableFuture<Object>>();
+        for(int i = 0; i < 40; i++) {
+            sums.add(mRpcClient.invokeMethodAsync("simple.add", new Object[] {i, 1}, int.class, mRpcHttpClient));
+        }
+        for(int i = 0; i < 40; i++) {
+            Assert.assertEquals(i + 1, sums.get(i).get());
+        }
+        // blocking calls are coalesced as well
+        Assert.assertEquals(5, mProxy.add(2, 3));
+    }
+
 }
@@ -18,8 +18,11 @@ import org.junit.Test;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -188,4 +191,62 @@ public class IntegrationTestWs {
         Assert.assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testQueuedWrites() throws InterruptedException {
+        List<Boolean> changes = new CopyOnWriteArrayList<Boolean>();
+        mWsClient.addWritabilityListener((connection, writable) -> changes.add(writable));
+        // tiny watermarks so that concurrent calls cross them
+        mWsClient.setHighWatermark(256);
+        mWsClient.setLowWatermark(0);
+        mWsClient.setCoalescingDelay(2);
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(20);
+        for(int i = 0; i < 500; i++) {
+            executor.execute(this::testPojo);
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        // the writer accounts for a message after the answer may have arrived
+        long deadline = System.currentTimeMillis() + 5000;
+        while((mWsClient.getQueuedBytes() > 0 || !mWsClient.isWritable())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(changes.contains(false));
+        Assert.assertEquals(Boolean.TRUE, changes.get(changes.size() - 1));
+        Assert.assertTrue(mWsClient.isWritable());
+        Assert.assertEquals(0, mWsClient.getQueuedBytes());
+    }
+
+    @Test
+    public void testWritabilityWithBlockedWriter() throws Exception {
+        List<Boolean> changes = new CopyOnWriteArrayList<Boolean>();
+        mWsClient.addWritabilityListener((connection, writable) -> changes.add(writable));
+        // writers only run when we let them
+        List<Runnable> writers = new CopyOnWriteArrayList<Runnable>();
+        mWsClient.setWriteExecutor(writers::add);
+        mWsClient.setHighWatermark(100);
+        mWsClient.setLowWatermark(0);
+        String ping = "{\"jsonrpc\":\"2.0\",\"method\":\"ping\"}";
+        for(int i = 0; i < 4; i++) {
+            mWsClient.transmit(ping);
+        }
+        Assert.assertEquals(4 * ping.length(), mWsClient.getQueuedBytes());
+        Assert.assertFalse(mWsClient.isWritable());
+        Assert.assertEquals(1, writers.size());
+        // draining makes the connection writable again
+        writers.remove(0).run();
+        Assert.assertEquals(0, mWsClient.getQueuedBytes());
+        Assert.assertTrue(mWsClient.isWritable());
+        Assert.assertEquals(Arrays.asList(false, true), changes);
+        // a producer crossing the watermark again while the writer is held
+        for(int i = 0; i < 4; i++) {
+            mWsClient.transmit(ping);
+        }
+        Assert.assertFalse(mWsClient.isWritable());
+        writers.remove(0).run();
+        Assert.assertTrue(mWsClient.isWritable());
+        Assert.assertEquals(Arrays.asList(false, true, false, true), changes);
+        Assert.assertTrue(writers.isEmpty());
+    }
+
 }
@@ -0,0 +1,623 @@
+package better.jsonrpc.processor;
+
+import better.jsonrpc.annotations.JsonRpcInterface;
+import better.jsonrpc.annotations.JsonRpcMethod;
+import better.jsonrpc.annotations.JsonRpcNotification;
+import better.jsonrpc.annotations.JsonRpcParam;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Annotation processor generating code for JSON-RPC interfaces
+ *
+ * For every interface annotated with {@link JsonRpcInterface}
+ * two classes are generated next to it:
+ *
+ * <ul>
+ *     <li>{@code <Interface>_JsonRpcDispatcher}, a server dispatcher
+ *     describing the methods, finding them with a switch on their
+ *     wire name and creating invokers that cast the arguments to
+ *     the parameter types and call handler methods directly</li>
+ *     <li>{@code <Interface>_JsonRpcStub}, a client stub
+ *     implementing the interface without a dynamic proxy</li>
+ * </ul>
+ *
+ * The server and {@code JsonRpcTransport.makeProxy} pick these up
+ * by name. Wire names, parameter names and notifications are taken
+ * from the annotations at build time, and the generic parameter and
+ * return types are constructed with the type factory of the mapper,
+ * so neither side reflects on the methods of the interface.
+ *
+ * No stub is generated for interfaces with methods returning a
+ * future that is not a supertype of {@code CompletableFuture},
+ * as proxies can not return those either.
+ */
+public class JsonRpcProcessor extends AbstractProcessor {
+
+    /** Must match {@code JsonRpcDispatcher.CLASS_SUFFIX} */
+    private static final String DISPATCHER_SUFFIX = "_JsonRpcDispatcher";
+
+    /** Must match {@code JsonRpcClientStub.CLASS_SUFFIX} */
+    private static final String STUB_SUFFIX = "_JsonRpcStub";
+
+    private Elements mElements;
+    private Types mTypes;
+    private Filer mFiler;
+    private Messager mMessager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        mElements = processingEnv.getElementUtils();
+        mTypes = processingEnv.getTypeUtils();
+        mFiler = processingEnv.getFiler();
+        mMessager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(JsonRpcInterface.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(JsonRpcInterface.class)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                mMessager.printMessage(Diagnostic.Kind.WARNING,
+                        "@JsonRpcInterface on a non-interface, no code generated", element);
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            if (!isAccessible(type)) {
+                mMessager.printMessage(Diagnostic.Kind.WARNING,
+                        "Private JSON-RPC interface, no code generated", element);
+                continue;
+            }
+            try {
+                List<ExecutableElement> methods = collectMethods(type);
+                writeDispatcher(type, methods);
+                if (checkFutures(methods)) {
+                    writeStub(type, methods);
+                }
+            } catch (IOException e) {
+                mMessager.printMessage(Diagnostic.Kind.ERROR,
+                        "Could not generate JSON-RPC code: " + e.getMessage(), element);
+            }
+        }
+        return false;
+    }
+
+    /** Collect the methods a proxy of the given interface would forward */
+    private List<ExecutableElement> collectMethods(TypeElement type) {
+        List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+        for (ExecutableElement method : ElementFilter.methodsIn(mElements.getAllMembers(type))) {
+            Set<Modifier> modifiers = method.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.PRIVATE)) {
+                continue;
+            }
+            TypeElement owner = (TypeElement) method.getEnclosingElement();
+            if (owner.getKind() != ElementKind.INTERFACE || isObjectMethod(method)) {
+                continue;
+            }
+            methods.add(method);
+        }
+        return methods;
+    }
+
+    /** Determine whether proxies can return the futures of all methods, warning about those they can not */
+    private boolean checkFutures(List<ExecutableElement> methods) {
+        TypeMirror completableFuture = mTypes.erasure(
+                mElements.getTypeElement("java.util.concurrent.CompletableFuture").asType());
+        boolean supported = true;
+        for (ExecutableElement method : methods) {
+            if (isAsync(method) && !mTypes.isAssignable(completableFuture, mTypes.erasure(method.getReturnType()))) {
+                mMessager.printMessage(Diagnostic.Kind.WARNING,
+                        "Future type is not a supertype of CompletableFuture, no stub generated", method);
+                supported = false;
+            }
+        }
+        return supported;
+    }
+
+    private void writeDispatcher(TypeElement type, List<ExecutableElement> methods) throws IOException {
+        String packageName = getPackageName(type);
+        String className = getSimpleBinaryName(type) + DISPATCHER_SUFFIX;
+        String interfaceName = mTypes.erasure(type.asType()).toString();
+        String prefix = getPrefix(type);
+
+        StringBuilder out = new StringBuilder();
+        writeHeader(out, packageName, type);
+        out.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        out.append("public final class ").append(className)
+                .append(" implements better.jsonrpc.server.JsonRpcDispatcher {\n\n");
+
+        out.append("    private static final better.jsonrpc.server.JsonRpcServerMethod[] METHODS = {");
+        for (int index = 0; index < methods.size(); index++) {
+            ExecutableElement method = methods.get(index);
+            List<? extends VariableElement> parameters = method.getParameters();
+            out.append(index > 0 ? ",\n" : "\n");
+            out.append("        new better.jsonrpc.server.JsonRpcServerMethod(")
+                    .append(mElements.getConstantExpression(prefix + getName(method))).append(", ")
+                    .append(interfaceName).append(".class, ")
+                    .append(mTypes.erasure(method.getEnclosingElement().asType())).append(".class, ")
+                    .append(mElements.getConstantExpression(method.getSimpleName().toString())).append(",\n");
+            out.append("                new Class<?>[] {");
+            for (int i = 0; i < parameters.size(); i++) {
+                if (i > 0) {
+                    out.append(", ");
+                }
+                out.append(mTypes.erasure(parameters.get(i).asType())).append(".class");
+            }
+            out.append("},\n");
+            out.append("                new String[] {");
+            for (int i = 0; i < parameters.size(); i++) {
+                if (i > 0) {
+                    out.append(", ");
+                }
+                String paramName = getParamName(parameters.get(i));
+                out.append(paramName == null ? "null" : mElements.getConstantExpression(paramName));
+            }
+            out.append("},\n");
+            out.append("                ").append(isAsync(method)).append(",\n");
+            out.append("                ").append(formatResolver(method, "                        ")).append(")");
+        }
+        out.append("\n    };\n\n");
+
+        out.append("    @Override\n");
+        out.append("    public better.jsonrpc.server.JsonRpcServerMethod[] getMethods() {\n");
+        out.append("        return METHODS;\n");
+        out.append("    }\n\n");
+
+        // overloads share the case of their first method
+        Map<String, Integer> firstIndexes = new LinkedHashMap<String, Integer>();
+        for (int index = 0; index < methods.size(); index++) {
+            String name = prefix + getName(methods.get(index));
+            if (!firstIndexes.containsKey(name)) {
+                firstIndexes.put(name, index);
+            }
+        }
+        out.append("    @Override\n");
+        out.append("    public int find(String name) {\n");
+        out.append("        switch (name) {\n");
+        for (Map.Entry<String, Integer> entry : firstIndexes.entrySet()) {
+            out.append("            case ").append(mElements.getConstantExpression(entry.getKey())).append(":\n");
+            out.append("                return ").append(entry.getValue()).append(";\n");
+        }
+        out.append("            default:\n");
+        out.append("                return -1;\n");
+        out.append("        }\n");
+        out.append("    }\n\n");
+
+        out.append("    @Override\n");
+        out.append("    public better.jsonrpc.server.JsonRpcInvoker getInvoker(Object handler, int index) {\n");
+        out.append("        final ").append(interfaceName).append(" target = (").append(interfaceName).append(") handler;\n");
+        out.append("        switch (index) {\n");
+        for (int index = 0; index < methods.size(); index++) {
+            ExecutableElement method = methods.get(index);
+            out.append("            case ").append(index).append(":\n");
+            out.append("                return arguments -> ");
+            boolean isVoid = method.getReturnType().getKind() == TypeKind.VOID;
+            if (isVoid) {
+                out.append("{\n                    ");
+            }
+            out.append("target.").append(method.getSimpleName()).append("(");
+            List<? extends VariableElement> parameters = method.getParameters();
+            for (int i = 0; i < parameters.size(); i++) {
+                if (i > 0) {
+                    out.append(", ");
+                }
+                out.append(castFromObject(mTypes.erasure(parameters.get(i).asType()), "arguments[" + i + "]"));
+            }
+            out.append(")");
+            if (isVoid) {
+                out.append(";\n                    return null;\n                };\n");
+            } else {
+                out.append(";\n");
+            }
+        }
+        out.append("            default:\n");
+        out.append("                return null;\n");
+        out.append("        }\n");
+        out.append("    }\n\n");
+        out.append("}\n");
+
+        writeSource(type, packageName, className, out);
+    }
+
+    private void writeStub(TypeElement type, List<ExecutableElement> methods) throws IOException {
+        String packageName = getPackageName(type);
+        String className = getSimpleBinaryName(type) + STUB_SUFFIX;
+        String typeParameters = formatTypeParameters(type.getTypeParameters());
+        String typeArguments = formatTypeArguments(type.getTypeParameters());
+        DeclaredType declaredType = (DeclaredType) type.asType();
+
+        StringBuilder out = new StringBuilder();
+        writeHeader(out, packageName, type);
+        out.append("@SuppressWarnings(\"unchecked\")\n");
+        out.append("public class ").append(className).append(typeParameters)
+                .append(" extends better.jsonrpc.client.JsonRpcClientStub")
+                .append(" implements ").append(type.getQualifiedName()).append(typeArguments).append(" {\n\n");
+
+        String prefix = getPrefix(type);
+        for (int index = 0; index < methods.size(); index++) {
+            ExecutableElement method = methods.get(index);
+            String[] paramNames = getParamNames(method);
+            out.append("    private static final better.jsonrpc.client.JsonRpcClientMethod METHOD_").append(index)
+                    .append(" =\n");
+            out.append("            new better.jsonrpc.client.JsonRpcClientMethod(")
+                    .append(mElements.getConstantExpression(prefix + getName(method))).append(", ")
+                    .append(method.getAnnotation(JsonRpcNotification.class) != null).append(", ")
+                    .append(isAsync(method)).append(", ");
+            if (paramNames == null) {
+                out.append("null");
+            } else {
+                out.append("new String[] {");
+                for (int i = 0; i < paramNames.length; i++) {
+                    if (i > 0) {
+                        out.append(", ");
+                    }
+                    out.append(mElements.getConstantExpression(paramNames[i]));
+                }
+                out.append("}");
+            }
+            out.append(",\n");
+            out.append("                    ").append(formatResolver(method, "                            ")).append(");\n\n");
+        }
+
+        out.append("    public ").append(className).append("(better.jsonrpc.core.JsonRpcTransport connection) {\n");
+        out.append("        this(connection, false);\n");
+        out.append("    }\n\n");
+        out.append("    public ").append(className)
+                .append("(better.jsonrpc.core.JsonRpcTransport connection, boolean useNamedParams) {\n");
+        out.append("        super(connection, useNamedParams);\n");
+        out.append("    }\n");
+
+        for (int index = 0; index < methods.size(); index++) {
+            ExecutableElement method = methods.get(index);
+            ExecutableType member = (ExecutableType) mTypes.asMemberOf(declaredType, method);
+            List<? extends TypeMirror> parameterTypes = member.getParameterTypes();
+            List<? extends VariableElement> parameters = method.getParameters();
+            TypeMirror returnType = member.getReturnType();
+
+            out.append("\n    @Override\n");
+            out.append("    public ");
+            String methodTypeParameters = formatTypeParameters(method.getTypeParameters());
+            if (!methodTypeParameters.isEmpty()) {
+                out.append(methodTypeParameters).append(" ");
+            }
+            out.append(returnType).append(" ").append(method.getSimpleName()).append("(");
+            for (int i = 0; i < parameters.size(); i++) {
+                if (i > 0) {
+                    out.append(", ");
+                }
+                TypeMirror parameterType = parameterTypes.get(i);
+                if (method.isVarArgs() && i == parameters.size() - 1) {
+                    out.append(((ArrayType) parameterType).getComponentType()).append("...");
+                } else {
+                    out.append(parameterType);
+                }
+                out.append(" p").append(i);
+            }
+            out.append(")");
+            List<TypeMirror> thrown = getRethrownTypes(member.getThrownTypes());
+            if (!thrown.isEmpty()) {
+                out.append(" throws ");
+                for (int i = 0; i < thrown.size(); i++) {
+                    if (i > 0) {
+                        out.append(", ");
+                    }
+                    out.append(thrown.get(i));
+                }
+            }
+            out.append(" {\n");
+
+            StringBuilder call = new StringBuilder("callRemote(METHOD_").append(index).append(", ");
+            if (parameters.isEmpty()) {
+                call.append("null)");
+            } else {
+                call.append("new Object[] {");
+                for (int i = 0; i < parameters.size(); i++) {
+                    if (i > 0) {
+                        call.append(", ");
+                    }
+                    call.append("p").append(i);
+                }
+                call.append("})");
+            }
+
+            out.append("        try {\n");
+            if (returnType.getKind() == TypeKind.VOID) {
+                out.append("            ").append(call).append(";\n");
+            } else {
+                out.append("            return ").append(castFromObject(returnType, call.toString())).append(";\n");
+            }
+            out.append("        } catch (RuntimeException | Error e) {\n");
+            out.append("            throw e;\n");
+            out.append("        }");
+            boolean throwsAll = false;
+            for (TypeMirror exception : thrown) {
+                out.append(" catch (").append(mTypes.erasure(exception)).append(" e) {\n");
+                out.append("            throw e;\n");
+                out.append("        }");
+                throwsAll |= isThrowable(exception);
+            }
+            if (!throwsAll) {
+                out.append(" catch (Throwable t) {\n");
+                out.append("            throw new java.lang.reflect.UndeclaredThrowableException(t);\n");
+                out.append("        }");
+            }
+            out.append("\n    }\n");
+        }
+        out.append("\n}\n");
+
+        writeSource(type, packageName, className, out);
+    }
+
+    /**
+     * Determine which declared exceptions need their own catch clause
+     *
+     * Runtime exceptions and errors are rethrown anyway, and subtypes
+     * of other declared exceptions would be unreachable.
+     */
+    private List<TypeMirror> getRethrownTypes(List<? extends TypeMirror> thrownTypes) {
+        TypeMirror runtimeException = mElements.getTypeElement("java.lang.RuntimeException").asType();
+        TypeMirror error = mElements.getTypeElement("java.lang.Error").asType();
+        List<TypeMirror> rethrown = new ArrayList<TypeMirror>();
+        for (TypeMirror thrown : thrownTypes) {
+            TypeMirror erased = mTypes.erasure(thrown);
+            if (mTypes.isSubtype(erased, runtimeException) || mTypes.isSubtype(erased, error)) {
+                continue;
+            }
+            boolean covered = false;
+            for (TypeMirror other : thrownTypes) {
+                TypeMirror otherErased = mTypes.erasure(other);
+                if (!mTypes.isSameType(erased, otherErased) && mTypes.isSubtype(erased, otherErased)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                rethrown.add(thrown);
+            }
+        }
+        return rethrown;
+    }
+
+    private boolean isThrowable(TypeMirror type) {
+        return mTypes.isSameType(mTypes.erasure(type),
+                mElements.getTypeElement("java.lang.Throwable").asType());
+    }
+
+    /** Produce an expression casting the given Object expression to the given type */
+    private String castFromObject(TypeMirror type, String expression) {
+        if (type.getKind().isPrimitive()) {
+            TypeMirror boxed = mTypes.boxedClass((PrimitiveType) type).asType();
+            return "(" + type + ") (" + boxed + ") " + expression;
+        }
+        if (type.toString().equals("java.lang.Object")) {
+            return expression;
+        }
+        return "(" + type + ") " + expression;
+    }
+
+    /**
+     * Produce a resolver constructing the generic types of the method
+     *
+     * Uses the types as declared, the way reflection sees them,
+     * followed by the return type.
+     */
+    private String formatResolver(ExecutableElement method, String indent) {
+        StringBuilder out = new StringBuilder("typeFactory -> new com.fasterxml.jackson.databind.JavaType[] {");
+        for (VariableElement parameter : method.getParameters()) {
+            out.append("\n").append(indent).append(formatJavaType(parameter.asType())).append(",");
+        }
+        out.append("\n").append(indent).append(formatJavaType(method.getReturnType())).append("}");
+        return out.toString();
+    }
+
+    /**
+     * Produce an expression constructing the given type with a {@code typeFactory}
+     *
+     * Type variables become their erasure and wildcards their
+     * upper bound, as when resolving them without bindings.
+     */
+    private String formatJavaType(TypeMirror type) {
+        switch (type.getKind()) {
+            case ARRAY:
+                return "typeFactory.constructArrayType(" + formatJavaType(((ArrayType) type).getComponentType()) + ")";
+            case DECLARED:
+                List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+                if (arguments.isEmpty()) {
+                    break;
+                }
+                StringBuilder out = new StringBuilder("typeFactory.constructParametricType(")
+                        .append(mTypes.erasure(type)).append(".class");
+                for (TypeMirror argument : arguments) {
+                    out.append(", ").append(formatJavaType(argument));
+                }
+                return out.append(")").toString();
+            case WILDCARD:
+                TypeMirror bound = ((WildcardType) type).getExtendsBound();
+                return (bound != null) ? formatJavaType(bound) : "typeFactory.constructType(Object.class)";
+            default:
+                break;
+        }
+        return "typeFactory.constructType(" + mTypes.erasure(type) + ".class)";
+    }
+
+    /** Determine whether the method returns a future */
+    private boolean isAsync(ExecutableElement method) {
+        TypeMirror completionStage = mTypes.erasure(
+                mElements.getTypeElement("java.util.concurrent.CompletionStage").asType());
+        return mTypes.isSubtype(mTypes.erasure(method.getReturnType()), completionStage);
+    }
+
+    /** Determine the method prefix of the given interface */
+    private static String getPrefix(TypeElement type) {
+        JsonRpcInterface annotation = type.getAnnotation(JsonRpcInterface.class);
+        return (annotation != null) ? annotation.prefix() : "";
+    }
+
+    /** Determine the unprefixed wire name of the given method */
+    private static String getName(ExecutableElement method) {
+        JsonRpcMethod annotation = method.getAnnotation(JsonRpcMethod.class);
+        if (annotation != null && !annotation.name().isEmpty()) {
+            return annotation.name();
+        }
+        return method.getSimpleName().toString();
+    }
+
+    /** Determine the name given by {@link JsonRpcParam}, null if there is none */
+    private static String getParamName(VariableElement parameter) {
+        JsonRpcParam annotation = parameter.getAnnotation(JsonRpcParam.class);
+        return (annotation != null) ? annotation.value() : null;
+    }
+
+    /** Collect the names given by {@link JsonRpcParam}, null if any is missing */
+    private static String[] getParamNames(ExecutableElement method) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        String[] names = new String[parameters.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = getParamName(parameters.get(i));
+            if (names[i] == null) {
+                return null;
+            }
+        }
+        return names;
+    }
+
+    /** Determine whether the method is one of the public methods of Object */
+    private boolean isObjectMethod(ExecutableElement method) {
+        String name = method.getSimpleName().toString();
+        List<? extends VariableElement> parameters = method.getParameters();
+        if (parameters.isEmpty()) {
+            return name.equals("hashCode") || name.equals("toString");
+        }
+        return parameters.size() == 1 && name.equals("equals")
+                && mTypes.isSameType(parameters.get(0).asType(),
+                        mElements.getTypeElement("java.lang.Object").asType());
+    }
+
+    /** Determine whether generated code in the same package can use the given type */
+    private static boolean isAccessible(TypeElement type) {
+        Element element = type;
+        while (element != null && element.getKind() != ElementKind.PACKAGE) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private String getPackageName(TypeElement type) {
+        PackageElement packageElement = mElements.getPackageOf(type);
+        return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+    }
+
+    /** Binary name without the package, so nested interfaces keep their dollar signs */
+    private String getSimpleBinaryName(TypeElement type) {
+        String binaryName = mElements.getBinaryName(type).toString();
+        String packageName = getPackageName(type);
+        return packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+    }
+
+    private static String formatTypeParameters(List<? extends TypeParameterElement> typeParameters) {
+        if (typeParameters.isEmpty()) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder("<");
+        for (int i = 0; i < typeParameters.size(); i++) {
+            TypeParameterElement typeParameter = typeParameters.get(i);
+            if (i > 0) {
+                out.append(", ");
+            }
+            out.append(typeParameter.getSimpleName());
+            List<? extends TypeMirror> bounds = typeParameter.getBounds();
+            String separator = " extends ";
+            for (TypeMirror bound : bounds) {
+                if (bound.toString().equals("java.lang.Object")) {
+                    continue;
+                }
+                out.append(separator).append(bound);
+                separator = " & ";
+            }
+        }
+        return out.append(">").toString();
+    }
+
+    private static String formatTypeArguments(List<? extends TypeParameterElement> typeParameters) {
+        if (typeParameters.isEmpty()) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder("<");
+        for (int i = 0; i < typeParameters.size(); i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            out.append(typeParameters.get(i).getSimpleName());
+        }
+        return out.append(">").toString();
+    }
+
+    private static void writeHeader(StringBuilder out, String packageName, TypeElement type) {
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("/**\n");
+        out.append(" * Generated by ").append(JsonRpcProcessor.class.getName())
+                .append(" for {@link ").append(type.getQualifiedName()).append("}\n");
+        out.append(" */\n");
+    }
+
+    private void writeSource(TypeElement type, String packageName, String className, CharSequence source)
+            throws IOException {
+        String name = packageName.isEmpty() ? className : packageName + "." + className;
+        JavaFileObject file = mFiler.createSourceFile(name, type);
+        Writer writer = file.openWriter();
+        try {
+            writer.write(source.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+}
@@ -3,9 +3,10 @@ package better.jsonrpc.servlet;
 import better.jsonrpc.core.JsonRpcTransport;
 import better.jsonrpc.server.JsonRpcServer;
 import better.jsonrpc.util.Base64;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -13,6 +14,8 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLDecoder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class JsonRpcHttp {
 
@@ -40,11 +43,28 @@ public class JsonRpcHttp {
         } else {
             throw new ServletException("Method " + requestMethod + " not supported");
         }
-        // read the request
-        ObjectNode request = mapper.readValue(requestStream, ObjectNode.class);
-        // let the server process the request
-        JsonRpcTransport transport = new JsonRpcHttpServletTransport(mapper, req, resp);
-        server.handleRequest(handler, request, transport);
+        // let the server read and process the request
+        CompletableFuture<Void> done;
+        JsonParser request = mapper.getFactory().createParser(requestStream);
+        try {
+            JsonRpcTransport transport = new JsonRpcHttpServletTransport(mapper, req, resp);
+            done = server.handleRequest(handler, request, transport);
+        } finally {
+            request.close();
+        }
+        // wait for asynchronous handlers, releasing the thread if possible
+        if(!done.isDone()) {
+            if(req.isAsyncSupported()) {
+                final AsyncContext context = req.startAsync();
+                done.whenComplete((result, error) -> context.complete());
+            } else {
+                try {
+                    done.join();
+                } catch (CompletionException e) {
+                    throw new ServletException(e.getCause());
+                }
+            }
+        }
     }
 
     private static InputStream createInputStream(HttpServletRequest request)
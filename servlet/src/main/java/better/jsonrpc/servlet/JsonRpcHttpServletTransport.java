@@ -1,7 +1,9 @@
 package better.jsonrpc.servlet;
 
 import better.jsonrpc.client.JsonRpcClientRequest;
+import better.jsonrpc.core.JsonRpcResponse;
 import better.jsonrpc.core.JsonRpcTransport;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
@@ -9,6 +11,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
 
 public class JsonRpcHttpServletTransport extends JsonRpcTransport {
 
@@ -29,6 +32,34 @@ public class JsonRpcHttpServletTransport extends JsonRpcTransport {
         mResponse.setStatus(HttpServletResponse.SC_OK);
     }
 
+    @Override
+    public void sendResponse(JsonRpcResponse response) throws IOException {
+        ObjectMapper mapper = getMapper();
+        JsonGenerator generator = mapper.getFactory().createGenerator(mResponse.getOutputStream());
+        try {
+            response.writeTo(generator, mapper);
+        } finally {
+            generator.close();
+        }
+        mResponse.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Override
+    public void sendBatchResponse(List<JsonRpcResponse> responses) throws IOException {
+        ObjectMapper mapper = getMapper();
+        JsonGenerator generator = mapper.getFactory().createGenerator(mResponse.getOutputStream());
+        try {
+            generator.writeStartArray();
+            for(JsonRpcResponse response: responses) {
+                response.writeTo(generator, mapper);
+            }
+            generator.writeEndArray();
+        } finally {
+            generator.close();
+        }
+        mResponse.setStatus(HttpServletResponse.SC_OK);
+    }
+
     @Override
     public void sendRequest(JsonRpcClientRequest request) throws IOException {
         mResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);